@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Items shaped like those of real tables, shared by the benchmarks.
+ */
+class BenchmarkItems {
+
+    static final int WIDE_ATTRIBUTES = 50;
+
+    /**
+     * returns a scan page of count wide items, numbered from first
+     */
+    static ScanResult widePage(int first, int count) {
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(
+                count);
+        for (int i = first; i < first + count; i++) {
+            items.add(wideItem(i));
+        }
+        return new ScanResult().withItems(items);
+    }
+
+    /**
+     * An item like a denormalized record: a key, then string, number, flag
+     * and binary attributes. Names are new strings for every item, as they
+     * are when a page is unmarshalled.
+     */
+    static Map<String, AttributeValue> wideItem(int i) {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put(new String("id"), new AttributeValue("customer#" + i));
+        for (int a = 0; a < WIDE_ATTRIBUTES; a++) {
+            String name = new String("attribute_" + a);
+            switch (a % 4) {
+            case 0:
+                item.put(name, new AttributeValue("value " + a + " of item "
+                        + i + " \u00e9t\u00e9"));
+                break;
+            case 1:
+                item.put(name, new AttributeValue().withN(Integer.toString(i
+                        * a)));
+                break;
+            case 2:
+                item.put(name, new AttributeValue().withBOOL(a % 3 == 0));
+                break;
+            default:
+                item.put(name, new AttributeValue().withB(ByteBuffer
+                        .wrap(new byte[32])));
+            }
+        }
+        return item;
+    }
+
+    /**
+     * An item like a document: a list of order maps, each with a list of
+     * line maps and a set of tags.
+     */
+    static Map<String, AttributeValue> nestedItem(int i) {
+        List<AttributeValue> orders = new ArrayList<AttributeValue>();
+        for (int o = 0; o < 5; o++) {
+            List<AttributeValue> lines = new ArrayList<AttributeValue>();
+            for (int l = 0; l < 4; l++) {
+                Map<String, AttributeValue> line = new HashMap<String, AttributeValue>();
+                line.put(new String("sku"), new AttributeValue("SKU-" + l));
+                line.put(new String("quantity"), new AttributeValue()
+                        .withN(Integer.toString(l + 1)));
+                line.put(new String("price"),
+                        new AttributeValue().withN("19.99"));
+                lines.add(new AttributeValue().withM(line));
+            }
+            Map<String, AttributeValue> order = new HashMap<String, AttributeValue>();
+            order.put(new String("orderId"), new AttributeValue("order-" + i
+                    + "-" + o));
+            order.put(new String("lines"), new AttributeValue().withL(lines));
+            order.put(new String("tags"),
+                    new AttributeValue().withSS("gift", "express", "\u4f1a\u5458"));
+            orders.add(new AttributeValue().withM(order));
+        }
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put(new String("id"), new AttributeValue("customer#" + i));
+        item.put(new String("orders"), new AttributeValue().withL(orders));
+        return item;
+    }
+}
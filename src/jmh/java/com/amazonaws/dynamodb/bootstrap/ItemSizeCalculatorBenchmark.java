@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Measures ItemSizeCalculator on a scan page of wide items, with many
+ * top-level attributes, and of nested items, with maps and lists several
+ * levels deep. Run with -prof gc to see the allocation per item.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemSizeCalculatorBenchmark {
+
+    private static final int PAGE_ITEMS = 100;
+
+    private ScanResult widePage;
+    private ScanResult nestedPage;
+
+    @Setup
+    public void setUp() {
+        List<Map<String, AttributeValue>> wide = new ArrayList<Map<String, AttributeValue>>();
+        List<Map<String, AttributeValue>> nested = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < PAGE_ITEMS; i++) {
+            wide.add(BenchmarkItems.wideItem(i));
+            nested.add(BenchmarkItems.nestedItem(i));
+        }
+        widePage = new ScanResult().withItems(wide);
+        nestedPage = new ScanResult().withItems(nested);
+    }
+
+    @Benchmark
+    public int widePage() {
+        return ItemSizeCalculator.calculateScanResultSizeInBytes(widePage);
+    }
+
+    @Benchmark
+    public int nestedPage() {
+        return ItemSizeCalculator.calculateScanResultSizeInBytes(nestedPage);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Measures how long DynamoDBBootstrapWorker takes to copy a table to another
+ * through a DynamoDBConsumer, both talking to an InMemoryDynamoDB, so that
+ * only the time spent in the tool is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipeBenchmark {
+
+    private static final double UNLIMITED_RATE = 1e9;
+    private static final int SEGMENTS = 4;
+    private static final int SCAN_THREADS = 4;
+    private static final int WRITE_THREADS = 16;
+
+    @Param({ "2000" })
+    private int tableItems;
+
+    @Param({ "1", "4" })
+    private int dispatchThreads;
+
+    private InMemoryDynamoDB client;
+
+    @Setup
+    public void setUp() {
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(
+                tableItems);
+        for (int i = 0; i < tableItems; i++) {
+            items.add(BenchmarkItems.wideItem(i));
+        }
+        client = new InMemoryDynamoDB();
+        client.createTable("source", "id", Long.MAX_VALUE, Long.MAX_VALUE);
+        client.putItems("source", items);
+    }
+
+    @Benchmark
+    public int pipe() throws Exception {
+        client.createTable("destination", "id", Long.MAX_VALUE,
+                Long.MAX_VALUE);
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(client,
+                UNLIMITED_RATE, "source",
+                Executors.newFixedThreadPool(SCAN_THREADS), 0, 1, SEGMENTS,
+                false);
+        worker.setDispatchThreads(dispatchThreads);
+        DynamoDBConsumer consumer = new DynamoDBConsumer(client,
+                "destination", UNLIMITED_RATE,
+                Executors.newFixedThreadPool(WRITE_THREADS));
+        worker.pipe(consumer);
+        int written = client.getItemCount("destination");
+        if (written != tableItems) {
+            throw new IllegalStateException("Copied " + written + " of "
+                    + tableItems + " items");
+        }
+        return written;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long a BlockingQueueWorker takes to hand the items of a scan
+ * page to a queue of the size BlockingQueueConsumer uses, while another
+ * thread takes them as fast as it can.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueHandoffBenchmark {
+
+    private static final int PAGE_ITEMS = 100;
+    private static final int QUEUE_CAPACITY = 20;
+
+    private SegmentedScanResult page;
+    private BlockingQueue<DynamoDBEntryWithSize> queue;
+    private Thread taker;
+
+    @Setup
+    public void setUp() {
+        page = new SegmentedScanResult(BenchmarkItems.widePage(0, PAGE_ITEMS),
+                0, 1, false);
+        queue = new ArrayBlockingQueue<DynamoDBEntryWithSize>(QUEUE_CAPACITY);
+        taker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        queue.take();
+                    }
+                } catch (InterruptedException e) {
+                    // the benchmark is over
+                }
+            }
+        });
+        taker.setDaemon(true);
+        taker.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        taker.interrupt();
+        taker.join();
+    }
+
+    @Benchmark
+    public Void handOffPage() {
+        return new BlockingQueueWorker(queue, page).call();
+    }
+}
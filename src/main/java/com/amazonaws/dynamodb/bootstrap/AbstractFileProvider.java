@@ -0,0 +1,250 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Reads the items of local files and hands them to a consumer, a page at a
+ * time. Every file that can be split is cut into ranges of splitBytes, and
+ * each range is read by its own task, so files are read in parallel and large
+ * files are read by several threads at once.
+ */
+public abstract class AbstractFileProvider extends AbstractLogProvider {
+
+    /**
+     * Logger for the AbstractFileProvider.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(AbstractFileProvider.class);
+
+    /**
+     * Put in the queue by a reading task once it is done.
+     */
+    private static final SegmentedScanResult END_OF_RANGE = new SegmentedScanResult(
+            new ScanResult(), -1);
+
+    private final List<Range> ranges;
+    private final BlockingQueue<SegmentedScanResult> pages;
+    private final AtomicReference<Exception> readFailure;
+
+    /**
+     * Reads the given file, or every file of the given directory accepted by
+     * the filter, in ranges of splitBytes. The tasks reading the ranges wait
+     * while the consumer is behind, so the executor must queue the tasks it
+     * cannot run instead of running them on the submitting thread.
+     *
+     * @throws IOException
+     *             if the source does not exist, holds no files to read or
+     *             holds a file that cannot be read.
+     */
+    protected AbstractFileProvider(File source, FileFilter filter,
+            long splitBytes, int maxQueuedPages, ExecutorService exec)
+            throws IOException {
+        File[] files = source.isDirectory() ? source.listFiles(filter)
+                : new File[] { source };
+        if (files == null || files.length == 0) {
+            throw new IOException("No files to import found in " + source);
+        }
+        // checked before any range is read, rather than failing the import
+        // once the ranges before the file are written
+        for (File file : files) {
+            if (!file.isFile() || !file.canRead()) {
+                throw new IOException("Cannot read " + file);
+            }
+        }
+        Arrays.sort(files);
+        this.ranges = new ArrayList<Range>();
+        for (File file : files) {
+            long size = file.length();
+            if (!isSplittable(file)) {
+                ranges.add(new Range(file, 0, Long.MAX_VALUE));
+                continue;
+            }
+            for (long start = 0; start < size; start += splitBytes) {
+                ranges.add(new Range(file, start, start + splitBytes));
+            }
+        }
+        this.pages = new LinkedBlockingQueue<SegmentedScanResult>(
+                maxQueuedPages);
+        this.readFailure = new AtomicReference<Exception>();
+        super.threadPool = exec;
+    }
+
+    /**
+     * returns true if the file can be read in ranges by readRange
+     */
+    protected abstract boolean isSplittable(File file) throws IOException;
+
+    /**
+     * Reads the items of the file that start at or after start and before
+     * end, and passes them to emit a page at a time.
+     *
+     * @param id
+     *            the id to pass to emit
+     * @throws IOException
+     *             if the file cannot be read or is corrupt.
+     */
+    protected abstract void readRange(File file, long start, long end, int id)
+            throws IOException, InterruptedException;
+
+    /**
+     * Queues a page of items read by readRange for the consumer, waiting
+     * while the queue is full.
+     */
+    protected void emit(List<Map<String, AttributeValue>> items, int id)
+            throws InterruptedException {
+        pages.put(new SegmentedScanResult(new ScanResult().withItems(items), id));
+    }
+
+    /**
+     * Reads every range in parallel and hands their pages to the consumer as
+     * they are read, then waits for the consumer to finish writing. Reading
+     * and writing stop as soon as a range fails.
+     *
+     * @throws ExecutionException
+     *             if a file could not be read or is corrupt.
+     */
+    @Override
+    public void pipe(final AbstractLogConsumer consumer)
+            throws ExecutionException, InterruptedException {
+        registerMetrics();
+        LOGGER.info("Reading " + ranges.size() + " ranges of files");
+        List<Future<Void>> reads = new ArrayList<Future<Void>>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            reads.add(threadPool.submit(new RangeReader(ranges.get(i), i)));
+        }
+
+        try {
+            int reading = ranges.size();
+            while (reading > 0) {
+                SegmentedScanResult page = pages.take();
+                if (page == END_OF_RANGE) {
+                    reading--;
+                    throwIfReadFailed(consumer);
+                } else {
+                    throwIfWriteFailed(consumer);
+                    handOff(consumer, page);
+                }
+            }
+        } catch (InterruptedException e) {
+            shutdown(false);
+            throw e;
+        }
+        for (Future<Void> read : reads) {
+            read.get();
+        }
+        awaitWritten(consumer);
+
+        shutdown(true);
+        consumer.shutdown(true);
+    }
+
+    /**
+     * Stops reading and writing if a range could not be read.
+     *
+     * @throws ExecutionException
+     *             caused by the first range that could not be read
+     */
+    private void throwIfReadFailed(AbstractLogConsumer consumer)
+            throws ExecutionException {
+        Exception failure = readFailure.get();
+        if (failure != null) {
+            shutdown(false);
+            consumer.shutdown(false);
+            throw new ExecutionException(failure);
+        }
+    }
+
+    /**
+     * The items of a file that start at or after start and before end.
+     */
+    private static class Range {
+        private final File file;
+        private final long start;
+        private final long end;
+
+        Range(File file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Reads the items of a range into the queue, then marks the end of the
+     * range. A failure is recorded before the end is marked, so that pipe
+     * sees it when it reaches the mark.
+     */
+    private class RangeReader implements Callable<Void> {
+        private final Range range;
+        private final int id;
+
+        RangeReader(Range range, int id) {
+            this.range = range;
+            this.id = id;
+        }
+
+        @Override
+        public Void call() throws IOException, InterruptedException {
+            try {
+                readRange(range.file, range.start, range.end, id);
+                return null;
+            } catch (IOException e) {
+                IOException failure = new IOException("Could not read "
+                        + range.file + " from byte " + range.start + ": "
+                        + e.getMessage(), e);
+                readFailure.compareAndSet(null, failure);
+                throw failure;
+            } catch (RuntimeException e) {
+                readFailure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                markEnd();
+            }
+        }
+
+        /**
+         * Tells pipe that the range is done. Reading threads are only
+         * interrupted once pipe has given up, so then the mark is not needed.
+         */
+        private void markEnd() {
+            try {
+                pages.put(END_OF_RANGE);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -14,15 +14,14 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
 import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.google.common.util.concurrent.ListenableFuture;
 
 /**
  * The interface to use with the DynamoDBBootstrapWorker.java class to consume
@@ -30,8 +29,8 @@ import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
  */
 public abstract class AbstractLogConsumer {
 
-    public ExecutorCompletionService<Void> exec;
     protected ExecutorService threadPool;
+    private final WriteTracker writeTracker = new WriteTracker();
 
     /**
      * Logger for the DynamoDBBootstrapWorker.
@@ -46,8 +45,18 @@ public abstract class AbstractLogConsumer {
      * @param <result>
      *            the SegmentedScanResult to asynchronously write to another
      *            endpoint.
+     * @return a future that completes once every item of the result is
+     *         written, or null if the result had nothing to write.
      */
-    public abstract Future<Void> writeResult(SegmentedScanResult result);
+    public abstract ListenableFuture<Void> writeResult(SegmentedScanResult result);
+
+    /**
+     * returns the tracker of the pages handed to this consumer that are being
+     * written
+     */
+    public WriteTracker getWriteTracker() {
+        return writeTracker;
+    }
 
     /**
      * Shuts the thread pool down.
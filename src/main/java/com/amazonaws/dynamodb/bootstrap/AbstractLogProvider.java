@@ -22,6 +22,11 @@ import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
 import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.metrics.Gauge;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 
 /**
  * Abstract class to send inputs from a source to a consumer.
@@ -35,6 +40,17 @@ public abstract class AbstractLogProvider {
             .getLogger(AbstractLogProvider.class);
 
     protected ExecutorService threadPool;
+    private volatile ByteBudget handoffBudget = new ByteBudget(Runtime
+            .getRuntime().maxMemory()
+            / BootstrapConstants.HANDOFF_MEMORY_DIVISOR);
+    private final Gauge handoffGauge = new Gauge(
+            "ddb_bootstrap_handoff_fill_ratio",
+            "Fraction of the bytes that may be handed to the consumer that are not written yet") {
+        @Override
+        public double getValue() {
+            return getHandoffFillLevel();
+        }
+    };
 
     /**
      * Begins to read log results and transfer them to the consumer who will
@@ -44,7 +60,107 @@ public abstract class AbstractLogProvider {
             throws ExecutionException, InterruptedException;
 
     /**
-     * Shuts the thread pool down.
+     * Sets how many bytes of items may be handed to the consumer without being
+     * written yet. Reading pauses while the limit is reached. Defaults to
+     * 1/HANDOFF_MEMORY_DIVISOR of the heap.
+     */
+    public void setMaxBytesInFlight(long maxBytesInFlight) {
+        this.handoffBudget = new ByteBudget(maxBytesInFlight);
+    }
+
+    /**
+     * returns the fraction of the bytes that may be handed to the consumer
+     * that are not written yet
+     */
+    public double getHandoffFillLevel() {
+        return handoffBudget.getFillLevel();
+    }
+
+    /**
+     * Exposes the fill level of the hand off budget of this provider until
+     * it is shut down. Called by pipe, so that only the provider in use is
+     * reported.
+     */
+    protected void registerMetrics() {
+        PipelineMetrics.REGISTRY.register(handoffGauge);
+    }
+
+    /**
+     * Hands a page of items to the consumer once its size, as computed by
+     * ItemSizeCalculator, fits in the bytes that may be waiting to be written.
+     * The bytes are given back when the consumer has written the page.
+     *
+     * @return a future that completes when the page is written
+     * @throws InterruptedException
+     *             if interrupted while waiting for earlier pages to be
+     *             written.
+     */
+    protected ListenableFuture<Void> handOff(AbstractLogConsumer consumer,
+            SegmentedScanResult result) throws InterruptedException {
+        final ByteBudget budget = handoffBudget;
+        final long size = ItemSizeCalculator
+                .calculateScanResultSizeInBytes(result.getScanResult());
+        budget.acquire(size);
+        ListenableFuture<Void> written = null;
+        boolean handedOff = false;
+        try {
+            written = consumer.writeResult(result);
+            handedOff = true;
+        } finally {
+            if (!handedOff) {
+                budget.release(size);
+            }
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Handoff buffer fill level: " + budget.getFillLevel());
+        }
+        if (written == null) {
+            budget.release(size);
+            return Futures.immediateFuture(null);
+        }
+        consumer.getWriteTracker().track(written, result);
+        written.addListener(new Runnable() {
+            @Override
+            public void run() {
+                budget.release(size);
+            }
+        }, MoreExecutors.directExecutor());
+        return written;
+    }
+
+    /**
+     * Stops reading and writing if a page handed to the consumer could not be
+     * written.
+     *
+     * @throws ExecutionException
+     *             caused by the first page that could not be written
+     */
+    protected void throwIfWriteFailed(AbstractLogConsumer consumer)
+            throws ExecutionException {
+        try {
+            consumer.getWriteTracker().throwIfFailed();
+        } catch (ExecutionException e) {
+            shutdown(false);
+            consumer.shutdown(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the pages handed to the consumer to be written.
+     *
+     * @throws ExecutionException
+     *             caused by the first page that could not be written
+     */
+    protected void awaitWritten(AbstractLogConsumer consumer)
+            throws ExecutionException, InterruptedException {
+        consumer.getWriteTracker().awaitWritten();
+        throwIfWriteFailed(consumer);
+    }
+
+    /**
+     * Shuts the thread pool down and stops exposing the metrics of the
+     * provider.
      * 
      * @param <awaitTermination>
      *            If true, this method waits for the threads in the pool to
@@ -52,6 +168,7 @@ public abstract class AbstractLogProvider {
      *            finishing their current tasks.
      */
     public void shutdown(boolean awaitTermination) {
+        PipelineMetrics.REGISTRY.unregister(handoffGauge);
         if (awaitTermination) {
             boolean interrupted = false;
             threadPool.shutdown();
@@ -0,0 +1,589 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * Base class for the engines that run a parallel scan and hand the pages of
+ * every segment to DynamoDBBootstrapWorker as SegmentedScanResults. Keeps
+ * track of the state of every segment without locks, so that checking
+ * whether the scan is finished costs two reads however many segments there
+ * are.
+ *
+ * Segments can also be added as pending, to be started one at a time as
+ * earlier segments finish, and only if they can be claimed from the
+ * SegmentClaims shared with the other sections of the copy. A segment claimed
+ * by another section stays pending until it is done, so that it is taken over
+ * if that section dies before finishing it.
+ */
+public abstract class AbstractParallelScanExecutor {
+
+    /**
+     * Logger for the AbstractParallelScanExecutor.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(AbstractParallelScanExecutor.class);
+
+    private final Map<Integer, SegmentPages> segments;
+    private final AtomicInteger remainingSegments;
+    private final AtomicInteger pendingSegments;
+    protected volatile int prefetchDepth;
+    private final Queue<PendingSegment> pending;
+    private volatile SegmentClaims claims;
+    private int maxActiveSegments;
+
+    public AbstractParallelScanExecutor(int segments) {
+        this.segments = new ConcurrentHashMap<Integer, SegmentPages>(
+                Math.max(16, segments * 2));
+        this.remainingSegments = new AtomicInteger();
+        this.pendingSegments = new AtomicInteger();
+        this.prefetchDepth = 0;
+        this.pending = new ArrayDeque<PendingSegment>();
+        this.maxActiveSegments = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Makes pending segments start only once claimed, with at most
+     * maxActiveSegments segments being scanned at a time.
+     */
+    public void setSegmentClaims(SegmentClaims claims, int maxActiveSegments) {
+        synchronized (pending) {
+            this.claims = claims;
+            this.maxActiveSegments = Math.max(1, maxActiveSegments);
+        }
+    }
+
+    /**
+     * Sets the segment to finished if every page of it was scanned and
+     * grabbed.
+     *
+     * @return true if the segment was finished by this call, false if it has
+     *         pages left or was already finished
+     */
+    protected boolean finishSegment(int segment) {
+        SegmentPages segmentPages = segments.get(segment);
+        if (segmentPages == null) {
+            throw new IllegalArgumentException(
+                    "Invalid segment passed to finishSegment");
+        }
+        if (segmentPages.finish()) {
+            remainingSegments.decrementAndGet();
+            if (claims != null) {
+                try {
+                    claims.partFinished(segmentPages.tableSegment,
+                            segmentPages.totalSegments);
+                } catch (IOException e) {
+                    // the claim then expires, and another section scans the
+                    // segment again
+                    LOGGER.warn("Could not mark segment "
+                            + segmentPages.tableSegment + " done: "
+                            + e.getMessage());
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * returns if the scan is finished
+     */
+    public boolean finished() {
+        // a pending segment is added before it stops being pending, so the
+        // pending segments are read first
+        return pendingSegments.get() == 0 && remainingSegments.get() == 0;
+    }
+
+    /**
+     * returns the number of segments added to this executor that are not
+     * finished yet
+     */
+    public int getRemainingSegments() {
+        return remainingSegments.get();
+    }
+
+    /**
+     * returns the number of segments waiting to be claimed and started
+     */
+    public int getPendingSegments() {
+        return pendingSegments.get();
+    }
+
+    /**
+     * returns the state of every segment added to this executor, finished or
+     * not, ordered by segment number
+     */
+    public List<SegmentStatus> getSegmentStatuses() {
+        List<SegmentStatus> statuses = new ArrayList<SegmentStatus>(
+                segments.size());
+        for (Map.Entry<Integer, SegmentPages> entry : segments.entrySet()) {
+            statuses.add(entry.getValue().getStatus(entry.getKey()));
+        }
+        Collections.sort(statuses, new Comparator<SegmentStatus>() {
+            @Override
+            public int compare(SegmentStatus a, SegmentStatus b) {
+                return Integer.compare(a.getSegment(), b.getSegment());
+            }
+        });
+        return statuses;
+    }
+
+    /**
+     * Sets how many pages of a segment may wait to be grabbed while its next
+     * page is already being scanned. Scanning ahead hides the latency between
+     * pages. The depth is reduced if the prefetched pages of the remaining
+     * segments could use more than 1/PREFETCH_MEMORY_DIVISOR of the heap.
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        long maxPages = Runtime.getRuntime().maxMemory()
+                / BootstrapConstants.PREFETCH_MEMORY_DIVISOR
+                / BootstrapConstants.MAX_SCAN_PAGE_SIZE_BYTES;
+        long maxDepth = maxPages / Math.max(1, getRemainingSegments());
+        if (prefetchDepth > maxDepth) {
+            LOGGER.warn("Reducing the prefetch depth from " + prefetchDepth
+                    + " to " + maxDepth + " to fit in memory");
+        }
+        this.prefetchDepth = (int) Math.max(0, Math.min(prefetchDepth, maxDepth));
+    }
+
+    /**
+     * Records that a segment was added to this executor, so the scan is not
+     * finished until that segment is finished as well.
+     *
+     * @param segment
+     *            the number by which the executor knows the segment
+     * @param tableSegment
+     *            the segment of the table the segment scans
+     * @param totalSegments
+     *            the number of segments the table is divided in
+     * @return the pages of the segment, with its first page being scanned
+     */
+    protected SegmentPages segmentAdded(int segment, int tableSegment,
+            int totalSegments) {
+        SegmentPages segmentPages = new SegmentPages(tableSegment,
+                totalSegments, System.nanoTime());
+        segments.put(segment, segmentPages);
+        remainingSegments.incrementAndGet();
+        if (claims != null) {
+            claims.partStarted(tableSegment, totalSegments);
+        }
+        return segmentPages;
+    }
+
+    /**
+     * returns the pages of a segment added to this executor
+     */
+    protected SegmentPages getSegmentPages(int segment) {
+        return segments.get(segment);
+    }
+
+    /**
+     * Queues a segment to be started by startPendingSegments.
+     *
+     * @param tableSegment
+     *            the segment of the table the start scans, which is claimed
+     *            before starting it
+     * @param start
+     *            adds the worker of the segment to this executor
+     */
+    protected void addPendingSegment(int tableSegment, Runnable start) {
+        synchronized (pending) {
+            pending.add(new PendingSegment(tableSegment, start));
+            pendingSegments.incrementAndGet();
+        }
+    }
+
+    /**
+     * Starts pending segments while fewer than maxActiveSegments are being
+     * scanned. The segments claimed by other sections go back to the end of
+     * the queue, unless they are done.
+     */
+    public void startPendingSegments() {
+        if (pendingSegments.get() == 0) {
+            return;
+        }
+        synchronized (pending) {
+            for (int tries = pending.size(); tries > 0
+                    && getRemainingSegments() < maxActiveSegments; tries--) {
+                PendingSegment segment = pending.poll();
+                if (claim(segment.tableSegment)) {
+                    segment.start.run();
+                } else if (!claims.isDone(segment.tableSegment)) {
+                    pending.add(segment);
+                    continue;
+                }
+                pendingSegments.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Takes the next completed page. While segments claimed by other
+     * sections are pending, they are checked again every
+     * LEASE_RENEW_INTERVAL without a page, so that the claim of a section
+     * that died is taken over once it expires.
+     *
+     * @return the page, or null if the scan finished while waiting
+     */
+    protected <T> T takeCompleted(BlockingQueue<T> completed)
+            throws InterruptedException {
+        if (claims == null) {
+            return completed.take();
+        }
+        T page;
+        while ((page = completed.poll(
+                BootstrapConstants.LEASE_RENEW_INTERVAL_MILLISECONDS,
+                TimeUnit.MILLISECONDS)) == null) {
+            startPendingSegments();
+            if (finished()) {
+                return null;
+            }
+        }
+        return page;
+    }
+
+    private boolean claim(int tableSegment) {
+        if (claims == null) {
+            return true;
+        }
+        try {
+            return claims.claim(tableSegment);
+        } catch (IOException e) {
+            // scanning a segment twice only rewrites the same items
+            LOGGER.warn("Could not claim segment " + tableSegment
+                    + ", scanning it anyway: " + e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * A segment waiting to be started.
+     */
+    private static class PendingSegment {
+        private final int tableSegment;
+        private final Runnable start;
+
+        PendingSegment(int tableSegment, Runnable start) {
+            this.tableSegment = tableSegment;
+            this.start = start;
+        }
+    }
+
+    /**
+     * Returns the next available page of the scan and schedules the next scan
+     * request for that segment, if there is one.
+     *
+     * @return the next available ScanResult, or null if the scan finished
+     *         while waiting for segments claimed by other sections
+     * @throws ExecutionException
+     *             if one of the segment pages threw while executing
+     * @throws InterruptedException
+     *             if one of the segment pages was interrupted while executing.
+     */
+    public abstract SegmentedScanResult grab() throws ExecutionException,
+            InterruptedException;
+
+    /**
+     * The state of a segment.
+     */
+    public enum State {
+        /** a page of the segment is being scanned or waits to be sent */
+        SCANNING,
+        /** pages of the segment wait to be grabbed, none is being scanned */
+        WAITING,
+        /** every page of the segment was scanned and grabbed */
+        FINISHED,
+        /** the rest of the segment is scanned by its two halves */
+        SPLIT
+    }
+
+    /**
+     * A snapshot of the state and throughput of a segment.
+     */
+    public static class SegmentStatus {
+        private final int segment;
+        private final int tableSegment;
+        private final int totalSegments;
+        private final State state;
+        private final int waitingPages;
+        private final long pages;
+        private final long items;
+        private final double itemsPerSecond;
+
+        SegmentStatus(int segment, int tableSegment, int totalSegments,
+                State state, int waitingPages, long pages, long items,
+                double itemsPerSecond) {
+            this.segment = segment;
+            this.tableSegment = tableSegment;
+            this.totalSegments = totalSegments;
+            this.state = state;
+            this.waitingPages = waitingPages;
+            this.pages = pages;
+            this.items = items;
+            this.itemsPerSecond = itemsPerSecond;
+        }
+
+        /**
+         * returns the number by which the executor knows the segment
+         */
+        public int getSegment() {
+            return segment;
+        }
+
+        /**
+         * returns the segment of the table the segment scans
+         */
+        public int getTableSegment() {
+            return tableSegment;
+        }
+
+        public int getTotalSegments() {
+            return totalSegments;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * returns the number of scanned pages waiting to be grabbed
+         */
+        public int getWaitingPages() {
+            return waitingPages;
+        }
+
+        /**
+         * returns the number of pages scanned
+         */
+        public long getPages() {
+            return pages;
+        }
+
+        /**
+         * returns the number of items scanned
+         */
+        public long getItems() {
+            return items;
+        }
+
+        /**
+         * returns the items per second of the recent pages
+         */
+        public double getItemsPerSecond() {
+            return itemsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("segment %d/%d %s %d pages %d items %.0f items/s",
+                    tableSegment, totalSegments, state, pages, items,
+                    itemsPerSecond);
+        }
+    }
+
+    /**
+     * Keeps track of the pages of one segment that are being scanned or wait
+     * to be grabbed. Only one page of a segment is scanned at a time, because
+     * each page starts where the previous one ended. A new segment has its
+     * first page being scanned.
+     *
+     * The state is packed in one int updated with compare and set: flags in
+     * the low bits and the number of pages waiting to be grabbed above them.
+     * The throughput is only written by the thread completing a page, of
+     * which there is one at a time.
+     */
+    protected static class SegmentPages {
+        private static final int SCANNING = 1;
+        private static final int EXHAUSTED = 2;
+        private static final int FINISHED = 4;
+        private static final int SPLIT = 8;
+        private static final int PAGE_SHIFT = 4;
+        private static final int ONE_PAGE = 1 << PAGE_SHIFT;
+
+        private final AtomicInteger state;
+        private final int tableSegment;
+        private final int totalSegments;
+        private volatile long pages;
+        private volatile long items;
+        private volatile long lastNanos;
+        private volatile double itemsPerSecond;
+
+        SegmentPages(int tableSegment, int totalSegments, long startNanos) {
+            this.state = new AtomicInteger(SCANNING);
+            this.tableSegment = tableSegment;
+            this.totalSegments = totalSegments;
+            this.lastNanos = startNanos;
+            this.itemsPerSecond = -1;
+        }
+
+        /**
+         * Records that the page being scanned completed.
+         * 
+         * @return true if the caller should scan the next page right away,
+         *         because fewer than prefetchDepth pages wait to be grabbed.
+         */
+        private boolean completed(boolean hasNext, int prefetchDepth) {
+            while (true) {
+                int current = state.get();
+                int next = (current & ~SCANNING) + ONE_PAGE;
+                if (!hasNext) {
+                    next |= EXHAUSTED;
+                }
+                boolean prefetch = hasNext
+                        && (next >>> PAGE_SHIFT) <= prefetchDepth;
+                if (prefetch) {
+                    next |= SCANNING;
+                }
+                if (state.compareAndSet(current, next)) {
+                    return prefetch;
+                }
+            }
+        }
+
+        /**
+         * Records that the page being scanned completed with the given number
+         * of items, and updates the recent throughput of the segment.
+         */
+        boolean completed(boolean hasNext, int prefetchDepth, int pageItems,
+                long nanos) {
+            long elapsed = Math.max(1, nanos - lastNanos);
+            double rate = pageItems * 1e9 / elapsed;
+            itemsPerSecond = itemsPerSecond < 0 ? rate
+                    : BootstrapConstants.SEGMENT_THROUGHPUT_SMOOTHING * rate
+                            + (1 - BootstrapConstants.SEGMENT_THROUGHPUT_SMOOTHING)
+                            * itemsPerSecond;
+            lastNanos = nanos;
+            items += pageItems;
+            pages++;
+            return completed(hasNext, prefetchDepth);
+        }
+
+        /**
+         * Records that a completed page was grabbed.
+         * 
+         * @return true if the caller should scan the next page, or retire the
+         *         segment, because it has more pages and none is being
+         *         scanned.
+         */
+        boolean grabbed() {
+            while (true) {
+                int current = state.get();
+                int next = current - ONE_PAGE;
+                boolean scan = (current & (SCANNING | EXHAUSTED)) == 0;
+                if (scan) {
+                    next |= SCANNING;
+                }
+                if (state.compareAndSet(current, next)) {
+                    return scan;
+                }
+            }
+        }
+
+        /**
+         * Stops scanning the segment, after grabbed returned true, for instance
+         * because the rest of the segment is scanned by other workers.
+         */
+        void retire() {
+            while (true) {
+                int current = state.get();
+                if (state.compareAndSet(current, (current & ~SCANNING)
+                        | EXHAUSTED | SPLIT)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * returns true if pages of the segment wait to be grabbed
+         */
+        boolean hasCompletedPages() {
+            return state.get() >>> PAGE_SHIFT > 0;
+        }
+
+        /**
+         * Marks the segment as finished if every page of it was scanned and
+         * grabbed.
+         *
+         * @return true for the one call that marked it
+         */
+        boolean finish() {
+            while (true) {
+                int current = state.get();
+                if ((current & (EXHAUSTED | SCANNING | FINISHED)) != EXHAUSTED
+                        || current >>> PAGE_SHIFT != 0) {
+                    return false;
+                }
+                if (state.compareAndSet(current, current | FINISHED)) {
+                    return true;
+                }
+            }
+        }
+
+        int getTableSegment() {
+            return tableSegment;
+        }
+
+        int getTotalSegments() {
+            return totalSegments;
+        }
+
+        long getItems() {
+            return items;
+        }
+
+        /**
+         * returns the items per second of the recent pages, or -1 before the
+         * first page completed
+         */
+        double getItemsPerSecond() {
+            return itemsPerSecond;
+        }
+
+        SegmentStatus getStatus(int segment) {
+            int current = state.get();
+            State status;
+            if ((current & SPLIT) != 0) {
+                status = State.SPLIT;
+            } else if ((current & FINISHED) != 0) {
+                status = State.FINISHED;
+            } else if ((current & SCANNING) != 0) {
+                status = State.SCANNING;
+            } else {
+                status = State.WAITING;
+            }
+            return new SegmentStatus(segment, tableSegment, totalSegments,
+                    status, current >>> PAGE_SHIFT, pages, items,
+                    Math.max(0, itemsPerSecond));
+        }
+    }
+}
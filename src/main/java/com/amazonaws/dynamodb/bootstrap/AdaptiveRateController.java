@@ -0,0 +1,326 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Adjusts the rate of a RateLimiter to the capacity DynamoDB actually grants,
+ * additive increase, multiplicative decrease. Every RATE_ADJUST_INTERVAL the
+ * rate grows by RATE_INCREASE_FRACTION of the ceiling if requests succeeded
+ * without being throttled, and a throttled request or a batch write with
+ * unprocessed items cuts it by RATE_DECREASE_FACTOR right away, at most once
+ * per interval. The ceiling is the rate the controller is created with, or,
+ * when tracking a table, its provisioned capacity times a ratio re-read with
+ * describeTable every CAPACITY_REFRESH_INTERVAL, so the rate follows
+ * auto-scaling. When several sections share the capacity, the ceiling is
+ * further multiplied by the share of this section.
+ *
+ * Requests are observed through a ClientHandler added to the client, which
+ * also sees the attempts the client retries by itself.
+ */
+public class AdaptiveRateController {
+
+    /**
+     * Logger for the AdaptiveRateController.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(AdaptiveRateController.class);
+
+    private final RateLimiter rateLimiter;
+    private final AtomicInteger throttles;
+    private final AtomicInteger successes;
+    private double capacityCeiling;
+    private double share;
+    private double ceiling;
+    private double rate;
+    private long lastDecrease;
+
+    private AmazonDynamoDB client;
+    private String tableName;
+    private boolean read;
+    private double ratio;
+    private ScheduledFuture<?> adjusting;
+    private ScheduledFuture<?> refreshing;
+
+    /**
+     * Starts at and never exceeds the given rate, until the controller
+     * tracks the capacity of a table.
+     */
+    public AdaptiveRateController(double rate) {
+        this.rateLimiter = RateLimiter.create(rate);
+        this.throttles = new AtomicInteger();
+        this.successes = new AtomicInteger();
+        this.capacityCeiling = rate;
+        this.share = 1;
+        this.ceiling = rate;
+        this.rate = rate;
+    }
+
+    /**
+     * Makes the ceiling follow the read or write capacity of the table,
+     * times ratio, once the controller is started.
+     */
+    public synchronized void trackCapacity(AmazonDynamoDB client,
+            String tableName, boolean read, double ratio) {
+        this.client = client;
+        this.tableName = tableName;
+        this.read = read;
+        this.ratio = ratio;
+    }
+
+    /**
+     * Starts adjusting the rate, and re-reading the capacity of the tracked
+     * table, on the scheduler.
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        adjusting = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                adjust();
+            }
+        }, BootstrapConstants.RATE_ADJUST_INTERVAL_MILLISECONDS,
+                BootstrapConstants.RATE_ADJUST_INTERVAL_MILLISECONDS,
+                TimeUnit.MILLISECONDS);
+        if (client != null) {
+            refreshing = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refreshCapacity();
+                }
+            }, BootstrapConstants.CAPACITY_REFRESH_INTERVAL_MILLISECONDS,
+                    BootstrapConstants.CAPACITY_REFRESH_INTERVAL_MILLISECONDS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops adjusting the rate.
+     */
+    public synchronized void stop() {
+        if (adjusting != null) {
+            adjusting.cancel(false);
+        }
+        if (refreshing != null) {
+            refreshing.cancel(false);
+        }
+    }
+
+    /**
+     * returns the rate limiter whose rate is adjusted
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * returns the current rate
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * returns the highest rate the controller allows
+     */
+    public synchronized double getCeiling() {
+        return ceiling;
+    }
+
+    /**
+     * Handler added to a client when it is built, before the controller of the
+     * rate of its requests exists. Once given the controller, it tells it
+     * about successful and throttled requests. Only the requests whose rate
+     * is controlled count as successes, not the describeTable requests of
+     * the controller itself.
+     */
+    public static class ClientHandler extends RequestHandler2 {
+        private volatile AdaptiveRateController controller;
+
+        public void setController(AdaptiveRateController controller) {
+            this.controller = controller;
+        }
+
+        @Override
+        public void afterAttempt(HandlerAfterAttemptContext context) {
+            AdaptiveRateController observer = controller;
+            if (observer != null && isThrottle(context.getException())) {
+                observer.throttled();
+            }
+        }
+
+        @Override
+        public void afterResponse(Request<?> request, Response<?> response) {
+            AdaptiveRateController observer = controller;
+            if (observer == null) {
+                return;
+            }
+            Object result = response.getAwsResponse();
+            if (result instanceof BatchWriteItemResult
+                    && hasUnprocessedItems((BatchWriteItemResult) result)) {
+                observer.throttled();
+            } else if (result instanceof BatchWriteItemResult
+                    || result instanceof ScanResult
+                    || result instanceof PutItemResult) {
+                observer.succeeded();
+            }
+        }
+    }
+
+    /**
+     * Records a request that was not throttled.
+     */
+    public void succeeded() {
+        successes.incrementAndGet();
+    }
+
+    /**
+     * Records a throttled request, and decreases the rate unless it was
+     * decreased less than RATE_ADJUST_INTERVAL ago, as the requests in flight
+     * were sent at the rate before that.
+     */
+    public void throttled() {
+        throttles.incrementAndGet();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (now - lastDecrease >= BootstrapConstants.RATE_ADJUST_INTERVAL_MILLISECONDS) {
+                lastDecrease = now;
+                setRate(rate * BootstrapConstants.RATE_DECREASE_FACTOR);
+            }
+        }
+    }
+
+    /**
+     * Increases the rate if requests succeeded without throttles since the
+     * last adjustment.
+     */
+    synchronized void adjust() {
+        int throttled = throttles.getAndSet(0);
+        int succeeded = successes.getAndSet(0);
+        if (throttled == 0 && succeeded > 0 && rate < ceiling) {
+            setRate(rate + ceiling * BootstrapConstants.RATE_INCREASE_FRACTION);
+        }
+    }
+
+    /**
+     * Re-reads the capacity of the tracked table and moves the ceiling to it.
+     */
+    void refreshCapacity() {
+        double capacity;
+        try {
+            ProvisionedThroughputDescription throughput = client
+                    .describeTable(tableName).getTable()
+                    .getProvisionedThroughput();
+            capacity = read ? throughput.getReadCapacityUnits() : throughput
+                    .getWriteCapacityUnits();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not re-read the capacity of " + tableName
+                    + ": " + e.getMessage());
+            return;
+        }
+        if (capacity <= 0) {
+            return;
+        }
+        synchronized (this) {
+            double newCeiling = capacity * ratio;
+            if (newCeiling != capacityCeiling) {
+                capacityCeiling = newCeiling;
+                ceiling = capacityCeiling * share;
+                LOGGER.info("Capacity of " + tableName + " changed, "
+                        + (read ? "reading" : "writing") + " at most "
+                        + ceiling + " units per second");
+                setRate(rate);
+            }
+        }
+    }
+
+    /**
+     * Sets the fraction of the capacity this controller may use, the rest
+     * being used by other sections. The rate is scaled with the ceiling.
+     */
+    public synchronized void setShare(double newShare) {
+        if (newShare == share) {
+            return;
+        }
+        double previousCeiling = ceiling;
+        share = newShare;
+        ceiling = capacityCeiling * share;
+        setRate(rate * ceiling / previousCeiling);
+    }
+
+    /**
+     * Sets the rate, kept between RATE_MIN_FRACTION of the ceiling and the
+     * ceiling.
+     */
+    private void setRate(double newRate) {
+        double bounded = Math.max(ceiling
+                * BootstrapConstants.RATE_MIN_FRACTION,
+                Math.min(ceiling, newRate));
+        if (bounded != rate) {
+            rate = bounded;
+            rateLimiter.setRate(bounded);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Rate of " + (tableName == null ? "requests"
+                        : tableName) + " set to " + bounded);
+            }
+        }
+    }
+
+    private static boolean isThrottle(Exception e) {
+        if (!(e instanceof AmazonServiceException)) {
+            return false;
+        }
+        String code = ((AmazonServiceException) e).getErrorCode();
+        return "ProvisionedThroughputExceededException".equals(code)
+                || "ThrottlingException".equals(code)
+                || "RequestLimitExceeded".equals(code);
+    }
+
+    private static boolean hasUnprocessedItems(BatchWriteItemResult result) {
+        Map<String, List<WriteRequest>> unprocessed = result
+                .getUnprocessedItems();
+        if (unprocessed == null) {
+            return false;
+        }
+        for (List<WriteRequest> requests : unprocessed.values()) {
+            if (requests != null && !requests.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
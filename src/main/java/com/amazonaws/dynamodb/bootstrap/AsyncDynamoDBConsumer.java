@@ -0,0 +1,185 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.google.common.base.Functions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Takes in SegmentedScanResults and writes each batch of items to a DynamoDB
+ * table with asynchronous requests. At most maxInFlight batches are written at
+ * a time; writeResult blocks until a batch can be started.
+ */
+public class AsyncDynamoDBConsumer extends AbstractLogConsumer {
+
+    /**
+     * Logger for the AsyncDynamoDBConsumer.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(AsyncDynamoDBConsumer.class);
+
+    private final AmazonDynamoDBAsync client;
+    private final String tableName;
+    private final NonBlockingRateLimiter rateLimiter;
+    private final ScheduledExecutorService scheduler;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final Runnable releaseSlot;
+    private DeadLetterFile deadLetters;
+
+    /**
+     * Class to consume logs and write them to a DynamoDB table. The scheduler
+     * is used to retry batches and to wait for write capacity.
+     */
+    public AsyncDynamoDBConsumer(AmazonDynamoDBAsync client, String tableName,
+            double rateLimit, ScheduledExecutorService scheduler,
+            int maxInFlight) {
+        this(client, tableName, RateLimiter.create(rateLimit), scheduler,
+                maxInFlight);
+    }
+
+    /**
+     * Class to consume logs and write them to a DynamoDB table at the rate of
+     * the given rate limiter, whose rate may change while writing.
+     */
+    public AsyncDynamoDBConsumer(AmazonDynamoDBAsync client, String tableName,
+            RateLimiter rateLimiter, ScheduledExecutorService scheduler,
+            int maxInFlight) {
+        this.client = client;
+        this.tableName = tableName;
+        this.scheduler = scheduler;
+        this.rateLimiter = new NonBlockingRateLimiter(rateLimiter, scheduler,
+                PipelineMetrics.WRITE_RATE_LIMITER_WAIT_TIME);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlight = new Semaphore(this.maxInFlight);
+        this.releaseSlot = new Runnable() {
+            @Override
+            public void run() {
+                inFlight.release();
+            }
+        };
+        super.threadPool = scheduler;
+    }
+
+    /**
+     * Writes the items that cannot be written to the given file instead of
+     * failing the write of their page.
+     */
+    public void setDeadLetterFile(DeadLetterFile deadLetters) {
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * Groups the items of the SegmentedScanResult into BatchWriteItemRequests
+     * and starts writing each batch as soon as it is full and there is a free
+     * in flight slot. A batch consumes at most the write capacity the rate
+     * limiter allows in a second, and items of LARGE_ITEM_SIZE_BYTES or more
+     * are written in batches of their own. The returned future completes when
+     * every item of the result is written.
+     */
+    @Override
+    public ListenableFuture<Void> writeResult(SegmentedScanResult result) {
+        List<Map<String, AttributeValue>> items = result.getScanResult()
+                .getItems();
+        List<ListenableFuture<Void>> writes = new ArrayList<ListenableFuture<Void>>(
+                items.size() / BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM + 1);
+        WriteBatchBuilder builder = new WriteBatchBuilder(tableName,
+                Math.max(BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM,
+                        rateLimiter.getRate()));
+        for (Map<String, AttributeValue> item : items) {
+            int size = ItemSizeCalculator.calculateItemSizeInBytes(item);
+            if (size >= BootstrapConstants.LARGE_ITEM_SIZE_BYTES) {
+                WriteBatchBuilder single = new WriteBatchBuilder(tableName);
+                single.add(item, size);
+                writes.add(start(single.finish()));
+                continue;
+            }
+            BatchWriteItemRequest full = builder.add(item, size);
+            if (full != null) {
+                writes.add(start(full));
+            }
+        }
+        BatchWriteItemRequest last = builder.finish();
+        if (last != null) {
+            writes.add(start(last));
+        }
+        return Futures.transform(Futures.allAsList(writes),
+                Functions.<Void> constant(null),
+                MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Starts writing a batch once there is a free in flight slot.
+     */
+    private ListenableFuture<Void> start(BatchWriteItemRequest batch) {
+        acquireSlots(1);
+        ListenableFuture<Void> write = new AsyncDynamoDBConsumerWorker(batch,
+                client, rateLimiter, scheduler, tableName, deadLetters).write();
+        write.addListener(releaseSlot, MoreExecutors.directExecutor());
+        return write;
+    }
+
+    /**
+     * Waits for the batches in flight to be written before shutting the
+     * scheduler down, because their retries are scheduled on it.
+     */
+    @Override
+    public void shutdown(boolean awaitTermination) {
+        if (awaitTermination) {
+            LOGGER.info("Waiting for the batches in flight to be written...");
+            acquireSlots(maxInFlight);
+            inFlight.release(maxInFlight);
+        }
+        super.shutdown(awaitTermination);
+    }
+
+    /**
+     * Acquires in flight slots, preserving the interrupt status of the thread.
+     */
+    private void acquireSlots(int slots) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    inFlight.acquire(slots);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Writes a batch of items to DynamoDB with asynchronous requests. Unprocessed
+ * items and throttled requests are retried with jittered backoff on a
+ * scheduler, so no thread is held while backing off.
+ */
+public class AsyncDynamoDBConsumerWorker implements
+        AsyncHandler<BatchWriteItemRequest, BatchWriteItemResult> {
+
+    private final AmazonDynamoDBAsync client;
+    private final NonBlockingRateLimiter rateLimiter;
+    private final ScheduledExecutorService scheduler;
+    private long exponentialBackoffTime;
+    private final BatchWriteItemRequest batch;
+    private final String tableName;
+    private final SettableFuture<Void> future;
+    private final DeadLetterFile deadLetters;
+    private int consumedCapacity;
+    private int retries;
+    private volatile long sendStart;
+
+    /**
+     * Class that when written will try to write a batch to a DynamoDB table.
+     * If the write returns unprocessed items it will exponentially back off
+     * until it succeeds.
+     */
+    public AsyncDynamoDBConsumerWorker(
+            BatchWriteItemRequest batchWriteItemRequest,
+            AmazonDynamoDBAsync client, NonBlockingRateLimiter rateLimiter,
+            ScheduledExecutorService scheduler, String tableName) {
+        this(batchWriteItemRequest, client, rateLimiter, scheduler, tableName,
+                null);
+    }
+
+    /**
+     * Class that when written will try to write a batch to a DynamoDB table,
+     * writing the items that cannot be written to deadLetters. Without
+     * deadLetters, the write fails instead.
+     */
+    public AsyncDynamoDBConsumerWorker(
+            BatchWriteItemRequest batchWriteItemRequest,
+            AmazonDynamoDBAsync client, NonBlockingRateLimiter rateLimiter,
+            ScheduledExecutorService scheduler, String tableName,
+            DeadLetterFile deadLetters) {
+        this.batch = batchWriteItemRequest;
+        this.client = client;
+        this.rateLimiter = rateLimiter;
+        this.scheduler = scheduler;
+        this.tableName = tableName;
+        this.deadLetters = deadLetters;
+        this.exponentialBackoffTime = BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS;
+        this.future = SettableFuture.create();
+        this.consumedCapacity = 0;
+    }
+
+    /**
+     * Starts writing the batch. The returned future completes once every item
+     * is written and permits equal to the consumed capacity of the writes
+     * have been acquired.
+     */
+    public ListenableFuture<Void> write() {
+        send();
+        return future;
+    }
+
+    /**
+     * Retries the unprocessed items after backing off, or finishes the batch
+     * once there are none left.
+     */
+    @Override
+    public void onSuccess(BatchWriteItemRequest request,
+            BatchWriteItemResult writeItemResult) {
+        List<ConsumedCapacity> capacities = writeItemResult
+                .getConsumedCapacity();
+        if (capacities != null) {
+            for (ConsumedCapacity capacity : capacities) {
+                consumedCapacity += capacity.getCapacityUnits().intValue();
+            }
+        }
+
+        int sent = batch.getRequestItems().get(tableName).size();
+        Map<String, List<WriteRequest>> unprocessedItems = writeItemResult
+                .getUnprocessedItems();
+        if (unprocessedItems != null && unprocessedItems.get(tableName) != null
+                && !unprocessedItems.get(tableName).isEmpty()) {
+            int left = unprocessedItems.get(tableName).size();
+            PipelineMetrics.batchWritten(sent - left, left, System.nanoTime()
+                    - sendStart);
+            batch.setRequestItems(unprocessedItems);
+            retryWithBackoff("unprocessed");
+            return;
+        }
+        PipelineMetrics.batchWritten(sent, 0, System.nanoTime() - sendStart);
+        finish();
+    }
+
+    /**
+     * Retries a batch failing with a retryable exception after backing off,
+     * fails the batch on any other exception.
+     */
+    @Override
+    public void onError(Exception exception) {
+        if (WriteRetryPolicy.isRetryable(exception)) {
+            PipelineMetrics.batchWritten(0, batch.getRequestItems()
+                    .get(tableName).size(), System.nanoTime() - sendStart);
+            retryWithBackoff(exception.getMessage());
+        } else {
+            PipelineMetrics.batchWritten(0, 0, System.nanoTime() - sendStart);
+            fail(exception);
+        }
+    }
+
+    private void finish() {
+        rateLimiter.acquireAndRun(consumedCapacity, new Runnable() {
+            @Override
+            public void run() {
+                future.set(null);
+            }
+        });
+    }
+
+    /**
+     * Sends the items left to the dead letter file and finishes the batch, or
+     * fails it if there is no dead letter file.
+     */
+    private void fail(Exception exception) {
+        if (deadLetters == null) {
+            future.setException(exception);
+            return;
+        }
+        List<WriteRequest> writes = batch.getRequestItems().get(tableName);
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(
+                writes.size());
+        for (WriteRequest write : writes) {
+            if (write.getPutRequest() != null) {
+                items.add(write.getPutRequest().getItem());
+            }
+        }
+        try {
+            deadLetters.write(items, exception.getMessage());
+        } catch (IOException e) {
+            future.setException(e);
+            return;
+        }
+        finish();
+    }
+
+    private void retryWithBackoff(String failure) {
+        if (retries++ == BootstrapConstants.MAX_RETRIES) {
+            fail(new AmazonClientException("Not written after "
+                    + BootstrapConstants.MAX_RETRIES + " retries, last "
+                    + failure));
+            return;
+        }
+        exponentialBackoffTime = WriteRetryPolicy
+                .nextBackoff(exponentialBackoffTime);
+        PipelineMetrics.WRITE_BACKOFF_TIME.add(TimeUnit.MILLISECONDS
+                .toNanos(exponentialBackoffTime));
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                send();
+            }
+        }, exponentialBackoffTime, TimeUnit.MILLISECONDS);
+    }
+
+    private void send() {
+        sendStart = System.nanoTime();
+        client.batchWriteItemAsync(batch, this);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Runs a parallel scan with asynchronous scan requests. At most maxInFlight
+ * pages are requested at a time, and segments waiting for their next page are
+ * served in the order of the SegmentPriority, by default the order they became
+ * ready, so the number of segments does not depend on the number of threads.
+ */
+public class AsyncParallelScanExecutor extends AbstractParallelScanExecutor {
+    private final AsyncScanSegmentWorker[] workers;
+    private final Semaphore inFlight;
+    private volatile Queue<ReadySegment> ready;
+    private volatile SegmentPriority priority;
+    private final AtomicLong readySequence;
+    private final BlockingQueue<CompletedPage> completed;
+
+    public AsyncParallelScanExecutor(int segments, int maxInFlight) {
+        super(segments);
+        this.workers = new AsyncScanSegmentWorker[segments];
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+        this.ready = new ConcurrentLinkedQueue<ReadySegment>();
+        this.priority = SegmentPriority.COMPLETION;
+        this.readySequence = new AtomicLong();
+        this.completed = new LinkedBlockingQueue<CompletedPage>();
+    }
+
+    /**
+     * A page, or the exception that failed it, and the number of the worker
+     * that scanned it.
+     */
+    private static class CompletedPage {
+        private final SegmentedScanResult result;
+        private final Exception failure;
+        private final int segment;
+
+        CompletedPage(SegmentedScanResult result, int segment) {
+            this.result = result;
+            this.failure = null;
+            this.segment = segment;
+        }
+
+        CompletedPage(Exception failure, int segment) {
+            this.result = null;
+            this.failure = failure;
+            this.segment = segment;
+        }
+    }
+
+    /**
+     * A segment waiting for a free in flight slot, with its priority key as of
+     * when it became ready.
+     */
+    private static class ReadySegment {
+        private final AsyncScanSegmentWorker worker;
+        private final double key;
+        private final long sequence;
+
+        ReadySegment(AsyncScanSegmentWorker worker, double key, long sequence) {
+            this.worker = worker;
+            this.key = key;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final Comparator<ReadySegment> READY_ORDER = new Comparator<ReadySegment>() {
+        @Override
+        public int compare(ReadySegment a, ReadySegment b) {
+            int byKey = Double.compare(a.key, b.key);
+            return byKey != 0 ? byKey : Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    /**
+     * Sets the order in which ready segments are scanned. Must be called
+     * before adding workers.
+     */
+    public void setSegmentPriority(SegmentPriority priority) {
+        this.priority = priority;
+        this.ready = priority == SegmentPriority.COMPLETION ? new ConcurrentLinkedQueue<ReadySegment>()
+                : new PriorityBlockingQueue<ReadySegment>(Math.max(1,
+                        workers.length), READY_ORDER);
+    }
+
+    /**
+     * This method gets a segmentedScanResult and queues the segment for its
+     * next scan request, if there is one and it is not already being scanned.
+     */
+    @Override
+    public SegmentedScanResult grab() throws ExecutionException,
+            InterruptedException {
+        CompletedPage ret = takeCompleted(completed);
+        if (ret == null) {
+            return null;
+        }
+        if (ret.failure != null) {
+            throw new ExecutionException(ret.failure);
+        }
+
+        int segment = ret.segment;
+        SegmentPages segmentPages = getSegmentPages(segment);
+
+        if (segmentPages.grabbed()) {
+            ready(segment);
+            dispatch();
+        }
+        if (finishSegment(segment)) {
+            startPendingSegments();
+        }
+
+        return ret.result;
+    }
+
+    /**
+     * adds a worker and queues its first scan request
+     */
+    public void addWorker(AsyncScanSegmentWorker sw, int segment) {
+        workers[segment] = sw;
+        segmentAdded(segment, sw.getSegment(), sw.getTotalSegments());
+        sw.setExecutor(this, segment);
+        ready(segment);
+        dispatch();
+    }
+
+    /**
+     * adds a worker to start once it is claimed and fewer segments are being
+     * scanned than allowed
+     */
+    public void addPendingWorker(final AsyncScanSegmentWorker sw,
+            final int segment) {
+        addPendingSegment(sw.getSegment(), new Runnable() {
+            @Override
+            public void run() {
+                addWorker(sw, segment);
+            }
+        });
+    }
+
+    /**
+     * Called by a worker when one of its pages is available. Frees the page's
+     * in flight slot for the next ready segment, and queues the next page of
+     * the same segment if the prefetch depth allows it.
+     */
+    void pageCompleted(SegmentedScanResult result, int segment) {
+        List<Map<String, AttributeValue>> items = result.getScanResult()
+                .getItems();
+        boolean prefetch = getSegmentPages(segment).completed(
+                !result.isLastPage(), prefetchDepth,
+                items == null ? 0 : items.size(), System.nanoTime());
+        completed.add(new CompletedPage(result, segment));
+        inFlight.release();
+        if (prefetch) {
+            ready(segment);
+        }
+        dispatch();
+    }
+
+    /**
+     * Called by a worker when one of its pages cannot be scanned. The failure
+     * is thrown by the grab that would have returned the page.
+     */
+    void pageFailed(Exception failure, int segment) {
+        completed.add(new CompletedPage(failure, segment));
+        inFlight.release();
+        dispatch();
+    }
+
+    /**
+     * Queues the next scan request of a segment.
+     */
+    private void ready(int segment) {
+        ready.add(new ReadySegment(workers[segment], priority
+                .getKey(getSegmentPages(segment)), readySequence
+                .getAndIncrement()));
+    }
+
+    /**
+     * Sends the next scan request of ready segments while there are free in
+     * flight slots.
+     */
+    private void dispatch() {
+        while (!ready.isEmpty()) {
+            if (!inFlight.tryAcquire()) {
+                return;
+            }
+            ReadySegment segment = ready.poll();
+            if (segment == null) {
+                inFlight.release();
+                continue;
+            }
+            segment.worker.scan();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Scans one segment of a table page by page with asynchronous scan requests.
+ * No thread is held while a page is in flight, while backing off after a
+ * failed request, or while waiting for read capacity; completed pages are
+ * handed to the AsyncParallelScanExecutor.
+ */
+public class AsyncScanSegmentWorker implements
+        AsyncHandler<ScanRequest, ScanResult> {
+    private final ScanRequest request;
+    private volatile boolean hasNext;
+    private int lastConsumedCapacity;
+    private long exponentialBackoffTime;
+    private final AmazonDynamoDBAsync client;
+    private final NonBlockingRateLimiter rateLimiter;
+    private final ScheduledExecutorService scheduler;
+    private AsyncParallelScanExecutor executor;
+    private int id;
+    private boolean startKeyMayBeOutsideSegment;
+    private final PipelineMetrics.SegmentMetrics metrics;
+    private volatile long scanStart;
+
+    AsyncScanSegmentWorker(final AmazonDynamoDBAsync client,
+            final NonBlockingRateLimiter rateLimiter,
+            final ScheduledExecutorService scheduler, ScanRequest request) {
+        this.request = request;
+        this.client = client;
+        this.rateLimiter = rateLimiter;
+        this.scheduler = scheduler;
+        this.hasNext = true;
+        this.exponentialBackoffTime = BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS;
+        lastConsumedCapacity = 256;
+        // a start key restored from a checkpoint may have been inherited from
+        // a split segment
+        this.startKeyMayBeOutsideSegment = request.getExclusiveStartKey() != null;
+        this.metrics = PipelineMetrics.getSegmentMetrics(request.getSegment(),
+                request.getTotalSegments());
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * Returns the segment of the table this worker scans.
+     */
+    public int getSegment() {
+        return request.getSegment();
+    }
+
+    /**
+     * Returns the number of segments the table is divided in.
+     */
+    public int getTotalSegments() {
+        return request.getTotalSegments();
+    }
+
+    /**
+     * Sets the executor to which the completed pages are handed, and the
+     * number by which the executor knows this worker.
+     */
+    void setExecutor(AsyncParallelScanExecutor executor, int id) {
+        this.executor = executor;
+        this.id = id;
+    }
+
+    /**
+     * Sends the scan request for the next page of the segment without waiting
+     * for its result.
+     */
+    public void scan() {
+        scanStart = System.nanoTime();
+        client.scanAsync(request, this);
+    }
+
+    /**
+     * Records where the next page starts, then hands the page to the executor
+     * once the read capacity it consumed has been acquired.
+     */
+    @Override
+    public void onSuccess(ScanRequest scanRequest, ScanResult result) {
+        exponentialBackoffTime = BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS;
+        startKeyMayBeOutsideSegment = false;
+        lastConsumedCapacity = ScanSegmentWorker.calculateConsumedCapacity(
+                request, result, lastConsumedCapacity);
+        metrics.pageScanned(result.getItems() == null ? 0 : result.getItems()
+                .size(), lastConsumedCapacity, System.nanoTime() - scanStart);
+
+        if (result.getLastEvaluatedKey() != null
+                && !result.getLastEvaluatedKey().isEmpty()) {
+            hasNext = true;
+            request.setExclusiveStartKey(result.getLastEvaluatedKey());
+        } else {
+            hasNext = false;
+        }
+
+        final SegmentedScanResult segmentedResult = new SegmentedScanResult(
+                result, request.getSegment(), request.getTotalSegments(),
+                !hasNext);
+        rateLimiter.acquireAndRun(lastConsumedCapacity, new Runnable() {
+            @Override
+            public void run() {
+                executor.pageCompleted(segmentedResult, id);
+            }
+        });
+    }
+
+    /**
+     * Retries the same page after an exponential back off. If DynamoDB rejects
+     * a start key restored from a checkpoint as outside of the segment, the
+     * segment has nothing left to scan. Other invalid requests fail the scan.
+     */
+    @Override
+    public void onError(Exception exception) {
+        if (startKeyMayBeOutsideSegment
+                && ScanSegmentWorker.isStartKeyOutsideSegment(exception)) {
+            startKeyMayBeOutsideSegment = false;
+            onSuccess(request, new ScanResult().withItems(Collections
+                    .<Map<String, AttributeValue>> emptyList()));
+            return;
+        }
+        if (ScanSegmentWorker.isValidationException(exception)) {
+            executor.pageFailed(exception, id);
+            return;
+        }
+        final long backoff = exponentialBackoffTime;
+        PipelineMetrics.SCAN_BACKOFF_TIME.add(TimeUnit.MILLISECONDS
+                .toNanos(backoff));
+        exponentialBackoffTime = Math.min(exponentialBackoffTime * 2,
+                BootstrapConstants.MAX_EXPONENTIAL_BACKOFF_TIME);
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                scan();
+            }
+        }, backoff, TimeUnit.MILLISECONDS);
+    }
+}
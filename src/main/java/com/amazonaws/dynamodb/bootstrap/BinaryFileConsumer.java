@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.SecureRandom;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+/**
+ * Takes in SegmentedScanResults and writes their items to local files in the
+ * BinaryItemFormat. Every segment is written to its own files, so threads
+ * writing pages of different segments never wait for each other. A file is
+ * closed and the next part of the segment started once it reaches
+ * maxFileBytes.
+ */
+public class BinaryFileConsumer extends AbstractLogConsumer {
+
+    /**
+     * Logger for the BinaryFileConsumer.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(BinaryFileConsumer.class);
+
+    private final File directory;
+    private final long maxFileBytes;
+    private final byte[] syncMarker;
+    private final ConcurrentMap<String, SegmentFile> files;
+    private final Queue<ByteBuffer> buffers;
+
+    /**
+     * Class to consume logs and write them to files in the given directory,
+     * rolling to a new file every EXPORT_MAX_FILE_BYTES bytes.
+     */
+    public BinaryFileConsumer(File directory, ExecutorService exec) {
+        this(directory, BootstrapConstants.EXPORT_MAX_FILE_BYTES, exec);
+    }
+
+    public BinaryFileConsumer(File directory, long maxFileBytes,
+            ExecutorService exec) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the directory "
+                    + directory);
+        }
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.syncMarker = new byte[BinaryItemFormat.SYNC_MARKER_LENGTH];
+        new SecureRandom().nextBytes(syncMarker);
+        this.files = new ConcurrentHashMap<String, SegmentFile>();
+        this.buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+        super.threadPool = exec;
+    }
+
+    /**
+     * Encodes the items of the result as a block on the writing thread, then
+     * appends the block to the current file of the result's segment. The
+     * direct buffers blocks are encoded in are reused, so there are only as
+     * many as pages written at a time.
+     */
+    @Override
+    public ListenableFuture<Void> writeResult(final SegmentedScanResult result) {
+        ListenableFutureTask<Void> write = ListenableFutureTask
+                .create(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        ByteBuffer buffer = buffers.poll();
+                        if (buffer == null) {
+                            buffer = ByteBuffer
+                                    .allocateDirect(BootstrapConstants.EXPORT_BUFFER_BYTES);
+                        }
+                        try {
+                            buffer = encode(result, buffer);
+                            getSegmentFile(result).write(buffer);
+                        } finally {
+                            buffers.add(buffer);
+                        }
+                        return null;
+                    }
+                });
+        try {
+            threadPool.execute(write);
+        } catch (NullPointerException npe) {
+            throw new NullPointerException(
+                    "Thread pool not initialized for BinaryFileConsumer");
+        }
+        return write;
+    }
+
+    /**
+     * Waits for the pages being written, then closes every file.
+     */
+    @Override
+    public void shutdown(boolean awaitTermination) {
+        super.shutdown(awaitTermination);
+        for (SegmentFile file : files.values()) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                LOGGER.error("Could not close " + file.name + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Encodes the items of a page in the buffer, replacing it with a larger
+     * one if the page does not fit.
+     * 
+     * @return the buffer holding the block
+     */
+    private ByteBuffer encode(SegmentedScanResult result, ByteBuffer buffer) {
+        while (true) {
+            buffer.clear();
+            try {
+                BinaryItemFormat.writeBlock(buffer, syncMarker, result
+                        .getScanResult().getItems());
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    private SegmentFile getSegmentFile(SegmentedScanResult result) {
+        String name = "segment-" + result.getSegment() + "-"
+                + result.getTotalSegments();
+        SegmentFile file = files.get(name);
+        if (file == null) {
+            SegmentFile created = new SegmentFile(name);
+            file = files.putIfAbsent(name, created);
+            if (file == null) {
+                file = created;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * The files of one segment. Only the current part is open.
+     */
+    private class SegmentFile {
+        private final String name;
+        private int part;
+        private FileOutputStream out;
+        private FileChannel channel;
+        private long size;
+
+        SegmentFile(String name) {
+            this.name = name;
+            this.part = 0;
+        }
+
+        synchronized void write(ByteBuffer block) throws IOException {
+            if (channel == null || size >= maxFileBytes) {
+                roll();
+            }
+            while (block.hasRemaining()) {
+                size += channel.write(block);
+            }
+        }
+
+        synchronized void close() throws IOException {
+            if (channel != null) {
+                channel.force(true);
+                out.close();
+                channel = null;
+            }
+        }
+
+        private void roll() throws IOException {
+            close();
+            File file;
+            do {
+                // files of an earlier, resumed export are kept
+                file = new File(directory, name + "-" + part++
+                        + BootstrapConstants.EXPORT_FILE_EXTENSION);
+            } while (file.exists());
+            out = new FileOutputStream(file);
+            channel = out.getChannel();
+            ByteBuffer header = ByteBuffer
+                    .allocate(BinaryItemFormat.HEADER_LENGTH);
+            BinaryItemFormat.writeHeader(header, syncMarker);
+            header.flip();
+            size = 0;
+            while (header.hasRemaining()) {
+                size += channel.write(header);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Reads the items of files written by the BinaryFileConsumer and hands them
+ * to a consumer, one block at a time. A range of a file is read from the
+ * block following its start, found with the sync marker of the file.
+ */
+public class BinaryFileProvider extends AbstractFileProvider {
+
+    /**
+     * Accepts the files written by the BinaryFileConsumer.
+     */
+    private static final FileFilter ITEM_FILES = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            return file.isFile()
+                    && file.getName().endsWith(
+                            BootstrapConstants.EXPORT_FILE_EXTENSION);
+        }
+    };
+
+    /**
+     * Reads the given file, or every item file in the given directory, in
+     * ranges of IMPORT_SPLIT_BYTES. The tasks reading the ranges wait while
+     * the consumer is behind, so the executor must queue the tasks it cannot
+     * run instead of running them on the submitting thread.
+     *
+     * @throws IOException
+     *             if the source does not exist or holds no item files.
+     */
+    public BinaryFileProvider(File source, ExecutorService exec)
+            throws IOException {
+        this(source, BootstrapConstants.IMPORT_SPLIT_BYTES, exec);
+    }
+
+    public BinaryFileProvider(File source, long splitBytes,
+            ExecutorService exec) throws IOException {
+        super(source, ITEM_FILES, splitBytes,
+                BootstrapConstants.IMPORT_QUEUE_PAGES, exec);
+    }
+
+    @Override
+    protected boolean isSplittable(File file) {
+        return true;
+    }
+
+    @Override
+    protected void readRange(File file, long start, long end, int id)
+            throws IOException, InterruptedException {
+        BinaryItemReader reader = new BinaryItemReader(file, start, end);
+        try {
+            List<Map<String, AttributeValue>> items;
+            while ((items = reader.readBlock()) != null) {
+                emit(items, id);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Compact binary encoding of DynamoDB items used by the export files.
+ *
+ * A file starts with the MAGIC bytes, the format VERSION and a
+ * SYNC_MARKER_LENGTH byte sync marker. It is followed by blocks, each holding
+ * the items of a scan page: the sync marker, the number of items, the number
+ * of bytes of the items, then every item prefixed by its length in bytes. The
+ * sync marker lets a reader find the start of the next block from any offset.
+ *
+ * An item is the number of its attributes followed by the name and value of
+ * each. A value is a type tag followed by its payload. Counts and string
+ * lengths are unsigned variable length integers.
+ */
+public class BinaryItemFormat {
+
+    public static final byte[] MAGIC = { 'D', 'D', 'B', 'I', 'T', 'E', 'M',
+            'S' };
+    public static final int VERSION = 1;
+    public static final int SYNC_MARKER_LENGTH = 16;
+    public static final int HEADER_LENGTH = MAGIC.length + 4
+            + SYNC_MARKER_LENGTH;
+    public static final int BLOCK_HEADER_LENGTH = SYNC_MARKER_LENGTH + 8;
+
+    private static final byte TYPE_S = 1;
+    private static final byte TYPE_N = 2;
+    private static final byte TYPE_B = 3;
+    private static final byte TYPE_SS = 4;
+    private static final byte TYPE_NS = 5;
+    private static final byte TYPE_BS = 6;
+    private static final byte TYPE_M = 7;
+    private static final byte TYPE_L = 8;
+    private static final byte TYPE_NULL = 9;
+    private static final byte TYPE_TRUE = 10;
+    private static final byte TYPE_FALSE = 11;
+
+    /**
+     * Writes the file header.
+     */
+    public static void writeHeader(ByteBuffer buffer, byte[] syncMarker) {
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.put(syncMarker);
+    }
+
+    /**
+     * Reads and checks the file header.
+     *
+     * @return the sync marker of the file
+     * @throws IOException
+     *             if the buffer does not start with a header of this format.
+     */
+    public static byte[] readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_LENGTH) {
+            throw new IOException("Not an item file: too short");
+        }
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        int version = buffer.getInt();
+        if (!Arrays.equals(MAGIC, magic) || version != VERSION) {
+            throw new IOException("Not an item file of version " + VERSION);
+        }
+        byte[] syncMarker = new byte[SYNC_MARKER_LENGTH];
+        buffer.get(syncMarker);
+        return syncMarker;
+    }
+
+    /**
+     * Writes a block with the given items.
+     *
+     * @throws java.nio.BufferOverflowException
+     *             if the block does not fit in the buffer.
+     */
+    public static void writeBlock(ByteBuffer buffer, byte[] syncMarker,
+            List<Map<String, AttributeValue>> items) {
+        buffer.put(syncMarker);
+        buffer.putInt(items.size());
+        int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        int itemsStart = buffer.position();
+        for (Map<String, AttributeValue> item : items) {
+            int itemLengthPosition = buffer.position();
+            buffer.putInt(0);
+            int itemStart = buffer.position();
+            writeItem(buffer, item);
+            buffer.putInt(itemLengthPosition, buffer.position() - itemStart);
+        }
+        buffer.putInt(lengthPosition, buffer.position() - itemsStart);
+    }
+
+    /**
+     * Reads the items of the block at the position of the buffer.
+     *
+     * @throws IOException
+     *             if the buffer does not hold a complete block.
+     */
+    public static List<Map<String, AttributeValue>> readBlock(
+            ByteBuffer buffer, byte[] syncMarker) throws IOException {
+        if (!isBlockStart(buffer, buffer.position(), syncMarker)) {
+            throw new IOException("Corrupt item file: missing sync marker");
+        }
+        try {
+            buffer.position(buffer.position() + SYNC_MARKER_LENGTH);
+            int count = buffer.getInt();
+            int length = buffer.getInt();
+            if (count < 0 || length < 0 || length > buffer.remaining()) {
+                throw new IOException("Corrupt item file: truncated block");
+            }
+            List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(
+                    count);
+            for (int i = 0; i < count; i++) {
+                buffer.getInt();
+                items.add(readItem(buffer));
+            }
+            return items;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt item file: truncated block", e);
+        }
+    }
+
+    /**
+     * returns true if a block starts at the given position of the buffer
+     */
+    public static boolean isBlockStart(ByteBuffer buffer, int position,
+            byte[] syncMarker) {
+        if (buffer.limit() - position < BLOCK_HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < SYNC_MARKER_LENGTH; i++) {
+            if (buffer.get(position + i) != syncMarker[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void writeItem(ByteBuffer buffer,
+            Map<String, AttributeValue> item) {
+        writeVarint(buffer, item.size());
+        for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            writeString(buffer, entry.getKey());
+            writeValue(buffer, entry.getValue());
+        }
+    }
+
+    static Map<String, AttributeValue> readItem(ByteBuffer buffer)
+            throws IOException {
+        int size = readVarint(buffer);
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(
+                size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            String name = readString(buffer);
+            item.put(name, readValue(buffer));
+        }
+        return item;
+    }
+
+    private static void writeValue(ByteBuffer buffer, AttributeValue value) {
+        if (value.getS() != null) {
+            buffer.put(TYPE_S);
+            writeString(buffer, value.getS());
+        } else if (value.getN() != null) {
+            buffer.put(TYPE_N);
+            writeString(buffer, value.getN());
+        } else if (value.getB() != null) {
+            buffer.put(TYPE_B);
+            writeBytes(buffer, value.getB());
+        } else if (value.getSS() != null) {
+            buffer.put(TYPE_SS);
+            writeVarint(buffer, value.getSS().size());
+            for (String s : value.getSS()) {
+                writeString(buffer, s);
+            }
+        } else if (value.getNS() != null) {
+            buffer.put(TYPE_NS);
+            writeVarint(buffer, value.getNS().size());
+            for (String n : value.getNS()) {
+                writeString(buffer, n);
+            }
+        } else if (value.getBS() != null) {
+            buffer.put(TYPE_BS);
+            writeVarint(buffer, value.getBS().size());
+            for (ByteBuffer b : value.getBS()) {
+                writeBytes(buffer, b);
+            }
+        } else if (value.getM() != null) {
+            buffer.put(TYPE_M);
+            writeItem(buffer, value.getM());
+        } else if (value.getL() != null) {
+            buffer.put(TYPE_L);
+            writeVarint(buffer, value.getL().size());
+            for (AttributeValue element : value.getL()) {
+                writeValue(buffer, element);
+            }
+        } else if (value.getBOOL() != null) {
+            buffer.put(value.getBOOL() ? TYPE_TRUE : TYPE_FALSE);
+        } else {
+            buffer.put(TYPE_NULL);
+        }
+    }
+
+    private static AttributeValue readValue(ByteBuffer buffer)
+            throws IOException {
+        byte type = buffer.get();
+        int count;
+        switch (type) {
+        case TYPE_S:
+            return new AttributeValue().withS(readString(buffer));
+        case TYPE_N:
+            return new AttributeValue().withN(readString(buffer));
+        case TYPE_B:
+            return new AttributeValue().withB(readBytes(buffer));
+        case TYPE_SS:
+            count = readVarint(buffer);
+            List<String> ss = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                ss.add(readString(buffer));
+            }
+            return new AttributeValue().withSS(ss);
+        case TYPE_NS:
+            count = readVarint(buffer);
+            List<String> ns = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                ns.add(readString(buffer));
+            }
+            return new AttributeValue().withNS(ns);
+        case TYPE_BS:
+            count = readVarint(buffer);
+            List<ByteBuffer> bs = new ArrayList<ByteBuffer>(count);
+            for (int i = 0; i < count; i++) {
+                bs.add(readBytes(buffer));
+            }
+            return new AttributeValue().withBS(bs);
+        case TYPE_M:
+            return new AttributeValue().withM(readItem(buffer));
+        case TYPE_L:
+            count = readVarint(buffer);
+            List<AttributeValue> l = new ArrayList<AttributeValue>(count);
+            for (int i = 0; i < count; i++) {
+                l.add(readValue(buffer));
+            }
+            return new AttributeValue().withL(l);
+        case TYPE_NULL:
+            return new AttributeValue().withNULL(true);
+        case TYPE_TRUE:
+            return new AttributeValue().withBOOL(true);
+        case TYPE_FALSE:
+            return new AttributeValue().withBOOL(false);
+        default:
+            throw new IOException("Corrupt item file: unknown type " + type);
+        }
+    }
+
+    private static void writeString(ByteBuffer buffer, String s) {
+        byte[] bytes = s.getBytes(BootstrapConstants.UTF8);
+        writeVarint(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[readLength(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, BootstrapConstants.UTF8);
+    }
+
+    private static void writeBytes(ByteBuffer buffer, ByteBuffer b) {
+        ByteBuffer value = b.duplicate();
+        writeVarint(buffer, value.remaining());
+        buffer.put(value);
+    }
+
+    private static ByteBuffer readBytes(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[readLength(buffer)];
+        buffer.get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static int readLength(ByteBuffer buffer) throws IOException {
+        int length = readVarint(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Corrupt item file: invalid length "
+                    + length);
+        }
+        return length;
+    }
+
+    private static void writeVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt item file: invalid varint");
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Reads the items of a file written by the BinaryFileConsumer, one block, or
+ * scan page, at a time. The file is memory mapped. A reader can be limited to
+ * the blocks that start in a range of the file, so that several readers can
+ * read a large file in parallel.
+ */
+public class BinaryItemReader implements Closeable {
+
+    private final RandomAccessFile file;
+    private final ByteBuffer buffer;
+    private final byte[] syncMarker;
+    private final int end;
+
+    /**
+     * Opens the file and checks its header.
+     *
+     * @throws IOException
+     *             if the file cannot be read or is not an item file.
+     */
+    public BinaryItemReader(File file) throws IOException {
+        this(file, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens the file to read the blocks that start at or after start and
+     * before end. At most 2 GB of the file after start are mapped, which is
+     * far more than a block.
+     *
+     * @throws IOException
+     *             if the file cannot be read or is not an item file.
+     */
+    public BinaryItemReader(File file, long start, long end)
+            throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = this.file.getChannel();
+            ByteBuffer header = ByteBuffer
+                    .allocate(BinaryItemFormat.HEADER_LENGTH);
+            while (header.hasRemaining()
+                    && channel.read(header, header.position()) >= 0) {
+                // read the whole header
+            }
+            header.flip();
+            this.syncMarker = BinaryItemFormat.readHeader(header);
+
+            long mapStart = Math.min(channel.size(),
+                    Math.max(start, BinaryItemFormat.HEADER_LENGTH));
+            long mapLength = Math.min(channel.size() - mapStart,
+                    Integer.MAX_VALUE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart,
+                    mapLength);
+            this.end = (int) Math.max(0, Math.min(mapLength, end - mapStart));
+            if (start > BinaryItemFormat.HEADER_LENGTH) {
+                seekBlockStart();
+            }
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the first block that starts in the range.
+     */
+    private void seekBlockStart() {
+        int position = 0;
+        while (position < end
+                && !BinaryItemFormat.isBlockStart(buffer, position, syncMarker)) {
+            position++;
+        }
+        buffer.position(position);
+    }
+
+    /**
+     * Returns the items of the next block, or null when no more blocks start
+     * in the range.
+     *
+     * @throws IOException
+     *             if the block is corrupt or truncated.
+     */
+    public List<Map<String, AttributeValue>> readBlock() throws IOException {
+        if (buffer.position() >= end) {
+            return null;
+        }
+        return BinaryItemFormat.readBlock(buffer, syncMarker);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
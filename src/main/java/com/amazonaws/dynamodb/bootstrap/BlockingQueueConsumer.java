@@ -16,16 +16,15 @@ package com.amazonaws.dynamodb.bootstrap;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import com.amazonaws.dynamodb.bootstrap.DynamoDBEntryWithSize;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 
 /**
  * This class implements ILogConsumer, and when called to writeResult, it will
- * submit a new job to it's ExecutorCompletionService with a new
- * LogStashQueueWorker. It will then shutdown by adding a 'poison pill' to the
+ * submit a new job to its thread pool with a new LogStashQueueWorker. It will then shutdown by adding a 'poison pill' to the
  * end of the blocking queue to notify that it has reached the end of the scan.
  */
 public class BlockingQueueConsumer extends AbstractLogConsumer {
@@ -39,14 +38,14 @@ public class BlockingQueueConsumer extends AbstractLogConsumer {
             numThreads = numProcessors;
         }
         this.threadPool = Executors.newFixedThreadPool(numThreads);
-        this.exec = new ExecutorCompletionService<Void>(threadPool);
     }
 
     @Override
-    public Future<Void> writeResult(SegmentedScanResult result) {
-        Future<Void> jobSubmission = null;
+    public ListenableFuture<Void> writeResult(SegmentedScanResult result) {
+        ListenableFutureTask<Void> jobSubmission = ListenableFutureTask
+                .create(new BlockingQueueWorker(queue, result));
         try {
-            jobSubmission = exec.submit(new BlockingQueueWorker(queue, result));
+            threadPool.execute(jobSubmission);
         } catch (NullPointerException npe) {
             throw new NullPointerException(
                     "Thread pool not initialized for LogStashExecutor");
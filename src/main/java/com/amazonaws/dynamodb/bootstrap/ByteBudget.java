@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+/**
+ * Bounds the number of bytes handed from the scan stage to the write stage
+ * that are not written yet. Acquiring blocks while the bytes in flight would
+ * exceed the limit, which stops the scan from grabbing more pages until
+ * earlier pages are written.
+ */
+public class ByteBudget {
+
+    private final long maxBytes;
+    private long usedBytes;
+
+    public ByteBudget(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException(
+                    "The byte budget must be greater than 0");
+        }
+        this.maxBytes = maxBytes;
+        this.usedBytes = 0;
+    }
+
+    /**
+     * Waits until the bytes fit in the budget, then takes them. A request
+     * larger than the whole budget is let through once nothing else is in
+     * flight, so it cannot block forever.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting.
+     */
+    public synchronized void acquire(long bytes) throws InterruptedException {
+        while (usedBytes > 0 && usedBytes + bytes > maxBytes) {
+            wait();
+        }
+        usedBytes += bytes;
+    }
+
+    /**
+     * Gives bytes taken by acquire back to the budget.
+     */
+    public synchronized void release(long bytes) {
+        usedBytes = Math.max(0, usedBytes - bytes);
+        notifyAll();
+    }
+
+    /**
+     * returns the number of bytes currently taken from the budget
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * returns the fraction of the budget currently taken, which may be above
+     * 1 while a request larger than the budget is in flight
+     */
+    public synchronized double getFillLevel() {
+        return (double) usedBytes / maxBytes;
+    }
+}
@@ -31,7 +31,7 @@ public class CommandLineArgs {
     }
 
     public static final String SOURCE_ENDPOINT = "--sourceEndpoint";
-    @Parameter(names = SOURCE_ENDPOINT, description = "Endpoint of the source table", required = true)
+    @Parameter(names = SOURCE_ENDPOINT, description = "Endpoint of the source table. Required unless importing from files", required = false)
     private String sourceEndpoint;
 
     public String getSourceEndpoint() {
@@ -39,7 +39,7 @@ public class CommandLineArgs {
     }
 
     public static final String SOURCE_TABLE = "--sourceTable";
-    @Parameter(names = SOURCE_TABLE, description = "Name of the source table", required = true)
+    @Parameter(names = SOURCE_TABLE, description = "Name of the source table. Required unless importing from files", required = false)
     private String sourceTable;
 
     public String getSourceTable() {
@@ -47,7 +47,7 @@ public class CommandLineArgs {
     }
 
     public static final String DESTINATION_ENDPOINT = "--destinationEndpoint";
-    @Parameter(names = DESTINATION_ENDPOINT, description = "Endpoint of the destination table", required = true)
+    @Parameter(names = DESTINATION_ENDPOINT, description = "Endpoint of the destination table. Required unless exporting to files", required = false)
     private String destinationEndpoint;
 
     public String getDestinationEndpoint() {
@@ -55,7 +55,7 @@ public class CommandLineArgs {
     }
 
     public static final String DESTINATION_TABLE = "--destinationTable";
-    @Parameter(names = DESTINATION_TABLE, description = "Name of the destination table", required = true)
+    @Parameter(names = DESTINATION_TABLE, description = "Name of the destination table. Required unless exporting to files", required = false)
     private String destinationTable;
 
     public String getDestinationTable() {
@@ -135,4 +135,130 @@ public class CommandLineArgs {
     private String destinationAccountProfile = "";
 
     public String getDestinationAccountProfile() { return destinationAccountProfile; }
+
+    public static final String ASYNC_SCAN = "--asyncScan";
+    @Parameter(names = ASYNC_SCAN, description = "Use this flag to scan the source table with asynchronous requests instead of one thread per segment", required = false)
+    private boolean asyncScan = false;
+
+    public boolean getAsyncScan() { return asyncScan; }
+
+    public static final String MAX_IN_FLIGHT_SCANS = "--maxInFlightScans";
+    @Parameter(names = MAX_IN_FLIGHT_SCANS, description = "Number of max scan requests in flight at a time when using asynchronous scans", required = false)
+    private int maxInFlightScans = BootstrapConstants.DYNAMODB_CLIENT_EXECUTOR_CORE_POOL_SIZE;
+
+    public int getMaxInFlightScans() { return maxInFlightScans; }
+
+    public static final String SEGMENT_PRIORITY = "--segmentPriority";
+    @Parameter(names = SEGMENT_PRIORITY, description = "Order in which asynchronous scans send the next request of the segments waiting for a free slot: completion, most_remaining, or slowest", required = false)
+    private String segmentPriority = SegmentPriority.COMPLETION.toString();
+
+    public String getSegmentPriority() { return segmentPriority; }
+
+    public static final String ASYNC_WRITE = "--asyncWrite";
+    @Parameter(names = ASYNC_WRITE, description = "Use this flag to write to the destination table with asynchronous requests instead of one thread per batch", required = false)
+    private boolean asyncWrite = false;
+
+    public boolean getAsyncWrite() { return asyncWrite; }
+
+    public static final String MAX_IN_FLIGHT_WRITES = "--maxInFlightWrites";
+    @Parameter(names = MAX_IN_FLIGHT_WRITES, description = "Number of max batch writes in flight at a time when using asynchronous writes", required = false)
+    private int maxInFlightWrites = BootstrapConstants.ASYNC_MAX_IN_FLIGHT_WRITES;
+
+    public int getMaxInFlightWrites() { return maxInFlightWrites; }
+
+    public static final String EXECUTION_MODE = "--executionMode";
+    @Parameter(names = EXECUTION_MODE, description = "How scan and write tasks are run: threadPool, or virtual to run each task on a virtual thread (requires Java 21+)", required = false)
+    private String executionMode = BootstrapConstants.EXECUTION_MODE_THREAD_POOL;
+
+    public String getExecutionMode() { return executionMode; }
+
+    public static final String SPLIT_SEGMENTS = "--splitSegments";
+    @Parameter(names = SPLIT_SEGMENTS, description = "Use this flag to split the segments still being scanned near the end of the scan, so a few large segments do not determine how long the scan takes", required = false)
+    private boolean splitSegments = false;
+
+    public boolean getSplitSegments() { return splitSegments; }
+
+    public static final String PREFETCH_DEPTH = "--prefetchDepth";
+    @Parameter(names = PREFETCH_DEPTH, description = "Number of pages of each segment to scan ahead of the writes. 0 disables prefetching", required = false)
+    private int prefetchDepth = BootstrapConstants.DEFAULT_PREFETCH_DEPTH;
+
+    public int getPrefetchDepth() { return prefetchDepth; }
+
+    public static final String DISPATCH_THREADS = "--dispatchThreads";
+    @Parameter(names = DISPATCH_THREADS, description = "Number of threads handing the scanned pages to the writers, which group the items into batches", required = false)
+    private int dispatchThreads = BootstrapConstants.DEFAULT_DISPATCH_THREADS;
+
+    public int getDispatchThreads() { return dispatchThreads; }
+
+    public static final String MAX_BYTES_IN_FLIGHT = "--maxBytesInFlight";
+    @Parameter(names = MAX_BYTES_IN_FLIGHT, description = "Max bytes of scanned items waiting to be written. Scanning pauses while this many bytes are waiting. Defaults to a quarter of the heap", required = false)
+    private long maxBytesInFlight = 0;
+
+    public long getMaxBytesInFlight() { return maxBytesInFlight; }
+
+    public static final String CHECKPOINT_FILE = "--checkpointFile";
+    @Parameter(names = CHECKPOINT_FILE, description = "File to which the progress of each segment is appended, so that a failed copy can be resumed with --resumeFrom", required = false)
+    private String checkpointFile = null;
+
+    public String getCheckpointFile() { return checkpointFile; }
+
+    public static final String RESUME_FROM = "--resumeFrom";
+    @Parameter(names = RESUME_FROM, description = "Checkpoint file of a failed copy to resume from. Progress is appended to the same file unless --checkpointFile is set", required = false)
+    private String resumeFrom = null;
+
+    public String getResumeFrom() { return resumeFrom; }
+
+    public static final String EXPORT_DIRECTORY = "--exportDirectory";
+    @Parameter(names = EXPORT_DIRECTORY, description = "Directory to export the items of the source table to, in a compact binary format, instead of writing them to a destination table", required = false)
+    private String exportDirectory = null;
+
+    public String getExportDirectory() { return exportDirectory; }
+
+    public static final String IMPORT_DIRECTORY = "--importDirectory";
+    @Parameter(names = IMPORT_DIRECTORY, description = "Directory, or single file, of items exported with --exportDirectory to write to the destination table instead of scanning a source table", required = false)
+    private String importDirectory = null;
+
+    public String getImportDirectory() { return importDirectory; }
+
+    public static final String FILE_FORMAT = "--fileFormat";
+    @Parameter(names = FILE_FORMAT, description = "Format of the files exported to or imported from: binary, or json for DynamoDB JSON with one item per line", required = false)
+    private String fileFormat = BootstrapConstants.FILE_FORMAT_BINARY;
+
+    public String getFileFormat() { return fileFormat; }
+
+    public static final String COMPRESSION = "--compression";
+    @Parameter(names = COMPRESSION, description = "Compression of the exported json files: none, gzip, or zstd (requires zstd-jni on the classpath). Compressed files are recognized when importing", required = false)
+    private String compression = BootstrapConstants.COMPRESSION_NONE;
+
+    public String getCompression() { return compression; }
+
+    public static final String ADAPTIVE_RATE = "--adaptiveRate";
+    @Parameter(names = ADAPTIVE_RATE, description = "Use this flag to back off when throttled and follow changes of the provisioned capacity, instead of reading and writing at the rate computed at startup", required = false)
+    private boolean adaptiveRate = false;
+
+    public boolean getAdaptiveRate() { return adaptiveRate; }
+
+    public static final String COORDINATION_DIRECTORY = "--coordinationDirectory";
+    @Parameter(names = COORDINATION_DIRECTORY, description = "Directory shared by all the sections, for instance on a shared file system, through which they split the read and write capacity between the sections still running", required = false)
+    private String coordinationDirectory = null;
+
+    public String getCoordinationDirectory() { return coordinationDirectory; }
+
+    public static final String STEAL_SEGMENTS = "--stealSegments";
+    @Parameter(names = STEAL_SEGMENTS, description = "Let sections that finish their own segments scan the segments other sections have not started yet. Requires --coordinationDirectory", required = false)
+    private boolean stealSegments = false;
+
+    public boolean getStealSegments() { return stealSegments; }
+
+    public static final String DEAD_LETTER_FILE = "--deadLetterFile";
+    @Parameter(names = DEAD_LETTER_FILE, description = "File to append the items that cannot be written to, as DynamoDB JSON lines, instead of failing the transfer. Cannot be used with --exportDirectory", required = false)
+    private String deadLetterFile = null;
+
+    public String getDeadLetterFile() { return deadLetterFile; }
+
+    public static final String METRICS_PORT = "--metricsPort";
+    @Parameter(names = METRICS_PORT, description = "Port to serve the metrics of the transfer on, at /metrics in the Prometheus text format. The metrics are always available over JMX", required = false)
+    private int metricsPort = -1;
+
+    public int getMetricsPort() { return metricsPort; }
 }
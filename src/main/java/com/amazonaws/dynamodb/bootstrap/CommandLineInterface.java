@@ -14,23 +14,39 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import com.amazonaws.auth.profile.ProfileCredentialsProvider;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.RateLimiter;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 
 import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.client.builder.ExecutorFactory;
 import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
-import com.amazonaws.dynamodb.bootstrap.exception.NullReadCapacityException;
 import com.amazonaws.dynamodb.bootstrap.exception.SectionOutOfRangeException;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.amazonaws.dynamodb.bootstrap.metrics.PrometheusEndpoint;
+import com.amazonaws.handlers.RequestHandler2;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClient;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClientBuilder;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.model.TableDescription;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
@@ -86,13 +102,109 @@ public class CommandLineInterface {
         final boolean crossAccount = params.getCrossAccount();
         final String sourceAccountProfile = params.getSourceAccountProfile();
         final String destinationAccountProfile = params.getDestinationAccountProfile();
+        final boolean asyncScan = params.getAsyncScan();
+        final int maxInFlightScans = params.getMaxInFlightScans();
+        final boolean asyncWrite = params.getAsyncWrite();
+        final int maxInFlightWrites = params.getMaxInFlightWrites();
+        final String executionMode = params.getExecutionMode();
+        final String exportDirectory = params.getExportDirectory();
+        final boolean export = exportDirectory != null;
+        final String importDirectory = params.getImportDirectory();
+        final boolean importing = importDirectory != null;
+        final String fileFormat = params.getFileFormat();
+        final boolean json = BootstrapConstants.FILE_FORMAT_JSON
+                .equals(fileFormat);
+
+        if (export && importing) {
+            System.out.println("'" + CommandLineArgs.EXPORT_DIRECTORY
+                    + "' and '" + CommandLineArgs.IMPORT_DIRECTORY
+                    + "' cannot be used together");
+            exit(1);
+        }
+        if (!importing
+                && (Strings.isNullOrEmpty(sourceEndpoint) || Strings
+                        .isNullOrEmpty(sourceTable))) {
+            System.out.println("'" + CommandLineArgs.SOURCE_ENDPOINT
+                    + "' and '" + CommandLineArgs.SOURCE_TABLE
+                    + "' are required unless '"
+                    + CommandLineArgs.IMPORT_DIRECTORY + "' is set");
+            exit(1);
+        }
+        if (!export
+                && (Strings.isNullOrEmpty(destinationEndpoint) || Strings
+                        .isNullOrEmpty(destinationTable))) {
+            System.out.println("'" + CommandLineArgs.DESTINATION_ENDPOINT
+                    + "' and '" + CommandLineArgs.DESTINATION_TABLE
+                    + "' are required unless '"
+                    + CommandLineArgs.EXPORT_DIRECTORY + "' is set");
+            exit(1);
+        }
+
+        if (!json && !BootstrapConstants.FILE_FORMAT_BINARY.equals(fileFormat)) {
+            System.out.println("'" + CommandLineArgs.FILE_FORMAT
+                    + "' must be one of "
+                    + BootstrapConstants.FILE_FORMAT_BINARY + ", "
+                    + BootstrapConstants.FILE_FORMAT_JSON);
+            exit(1);
+        }
+        if (export && json) {
+            try {
+                Compression.checkAvailable(params.getCompression());
+            } catch (IllegalArgumentException e) {
+                System.out.println("'" + CommandLineArgs.COMPRESSION + "': "
+                        + e.getMessage());
+                exit(1);
+            }
+        }
+
+        SegmentPriority segmentPriority = SegmentPriority.COMPLETION;
+        try {
+            segmentPriority = SegmentPriority.valueOf(params
+                    .getSegmentPriority().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            System.out.println("'" + CommandLineArgs.SEGMENT_PRIORITY
+                    + "' must be one of "
+                    + Arrays.toString(SegmentPriority.values()));
+            exit(1);
+        }
+
+        if (params.getStealSegments()
+                && (params.getCoordinationDirectory() == null || importing)) {
+            System.out.println("'" + CommandLineArgs.STEAL_SEGMENTS
+                    + "' requires '" + CommandLineArgs.COORDINATION_DIRECTORY
+                    + "' and cannot be used with '"
+                    + CommandLineArgs.IMPORT_DIRECTORY + "'");
+            exit(1);
+        }
+        if (params.getStealSegments() && params.getResumeFrom() != null) {
+            System.out.println("'" + CommandLineArgs.STEAL_SEGMENTS
+                    + "' and '" + CommandLineArgs.RESUME_FROM
+                    + "' cannot be used together");
+            exit(1);
+        }
+        if (params.getDeadLetterFile() != null && export) {
+            System.out.println("'" + CommandLineArgs.DEAD_LETTER_FILE
+                    + "' cannot be used with '"
+                    + CommandLineArgs.EXPORT_DIRECTORY + "'");
+            exit(1);
+        }
+
+        final boolean virtualThreads = BootstrapConstants.EXECUTION_MODE_VIRTUAL
+                .equals(executionMode);
+        if (!virtualThreads
+                && !BootstrapConstants.EXECUTION_MODE_THREAD_POOL.equals(executionMode)) {
+            System.out.println("'--executionMode' must be one of "
+                    + BootstrapConstants.EXECUTION_MODE_THREAD_POOL + ", "
+                    + BootstrapConstants.EXECUTION_MODE_VIRTUAL);
+            exit(1);
+        }
 
         final ClientConfiguration sourceConfig = new ClientConfiguration().withMaxConnections(BootstrapConstants.MAX_CONN_SIZE);
         final ClientConfiguration destinationConfig = new ClientConfiguration().withMaxConnections(BootstrapConstants.MAX_CONN_SIZE);
 
         //// START Cross Account Hack
-        AmazonDynamoDBClient sourceClient;
-        AmazonDynamoDBClient destinationClient;
+        AWSCredentialsProvider sourceCreds;
+        AWSCredentialsProvider destinationCreds;
 
         if (crossAccount) {
             if (Strings.isNullOrEmpty(sourceAccountProfile)) {
@@ -105,42 +217,60 @@ public class CommandLineInterface {
                 exit(98);
             }
 
-            ProfileCredentialsProvider sourceCreds = new ProfileCredentialsProvider(sourceAccountProfile);
-            sourceClient = new AmazonDynamoDBClient(sourceCreds, sourceConfig);
-
-            ProfileCredentialsProvider destinationCreds = new ProfileCredentialsProvider(destinationAccountProfile);
-            destinationClient = new AmazonDynamoDBClient(destinationCreds, destinationConfig);
-
+            sourceCreds = new ProfileCredentialsProvider(sourceAccountProfile);
+            destinationCreds = new ProfileCredentialsProvider(destinationAccountProfile);
         }
         else {
-            sourceClient = new AmazonDynamoDBClient(
-                    new DefaultAWSCredentialsProviderChain(), sourceConfig);
-            destinationClient = new AmazonDynamoDBClient(
-                    new DefaultAWSCredentialsProviderChain(), destinationConfig);
+            sourceCreds = new DefaultAWSCredentialsProviderChain();
+            destinationCreds = new DefaultAWSCredentialsProviderChain();
         }
         //// END Cross Account Hack
 
-        sourceClient.setEndpoint(sourceEndpoint);
-        destinationClient.setEndpoint(destinationEndpoint);
-
-        TableDescription readTableDescription = sourceClient.describeTable(
-                sourceTable).getTable();
-        TableDescription writeTableDescription = destinationClient
-                .describeTable(destinationTable).getTable();
-        int numSegments = 10;
-        try {
-            numSegments = DynamoDBBootstrapWorker
-                    .getNumberOfSegments(readTableDescription);
-        } catch (NullReadCapacityException e) {
-            LOGGER.warn("Number of segments not specified - defaulting to "
-                    + numSegments, e);
+        // the rate controllers are created once the tables are described,
+        // so the clients get handlers that are given the controllers later
+        final AdaptiveRateController.ClientHandler sourceHandler = new AdaptiveRateController.ClientHandler();
+        final AdaptiveRateController.ClientHandler destinationHandler = new AdaptiveRateController.ClientHandler();
+        final AmazonDynamoDBClient sourceClient;
+        if (importing) {
+            sourceClient = null;
+        } else if (asyncScan) {
+            // the asynchronous client runs each in flight request on one of
+            // its threads, so in flight scans are bounded by their number
+            sourceClient = buildAsyncClient(sourceCreds, sourceConfig,
+                    sourceEndpoint, sourceHandler, maxInFlightScans);
+        } else {
+            sourceClient = buildClient(sourceCreds, sourceConfig,
+                    sourceEndpoint, sourceHandler);
+        }
+        final AmazonDynamoDBClient destinationClient;
+        if (export) {
+            destinationClient = null;
+        } else if (asyncWrite) {
+            destinationClient = buildAsyncClient(destinationCreds,
+                    destinationConfig, destinationEndpoint, destinationHandler,
+                    maxInFlightWrites);
+        } else {
+            destinationClient = buildClient(destinationCreds,
+                    destinationConfig, destinationEndpoint, destinationHandler);
         }
 
+        TableDescription readTableDescription = importing ? null
+                : sourceClient.describeTable(sourceTable).getTable();
+        TableDescription writeTableDescription = export ? null
+                : destinationClient.describeTable(destinationTable).getTable();
         double readThroughput, writeThroughput;
         if (throughputRate == 0) {
-            readThroughput = calculateThroughput(readTableDescription,
-                    readThroughputRatio, true);
-            writeThroughput = calculateThroughput(
+            if ((readTableDescription != null && SegmentPlanner
+                    .isOnDemand(readTableDescription))
+                    || (writeTableDescription != null && SegmentPlanner
+                            .isOnDemand(writeTableDescription))) {
+                System.out.println("On-demand tables have no provisioned throughput to take a ratio of - specify "
+                        + CommandLineArgs.THROUGHPUT_RATE);
+                exit(1);
+            }
+            readThroughput = importing ? 0 : calculateThroughput(
+                    readTableDescription, readThroughputRatio, true);
+            writeThroughput = export ? 0 : calculateThroughput(
                     writeTableDescription, writeThroughputRatio, false);
         } else {
             readThroughput = throughputRate;
@@ -148,19 +278,180 @@ public class CommandLineInterface {
 
         }
 
+        final int numSegments = importing ? 0 : SegmentPlanner
+                .getNumberOfSegments(readTableDescription, readThroughput,
+                        Runtime.getRuntime().availableProcessors());
+        if (!importing) {
+            LOGGER.info("Scanning with " + numSegments + " segments");
+        }
+
+        // the rates adapt to throttling and to capacity changes if asked
+        // to, and are shared with the other sections if coordinated
+        final boolean adaptiveRate = params.getAdaptiveRate();
+        final boolean trackCapacity = throughputRate == 0;
+        final String coordinationDirectory = params.getCoordinationDirectory();
+        final boolean controlRate = adaptiveRate
+                || coordinationDirectory != null;
+        final ScheduledExecutorService rateScheduler = controlRate ? Executors
+                .newSingleThreadScheduledExecutor() : null;
+        final AdaptiveRateController readRate = controlRate && !importing ? startRateController(
+                sourceClient, sourceHandler, sourceTable, true, readThroughput,
+                readThroughputRatio, trackCapacity, adaptiveRate, rateScheduler)
+                : null;
+        final AdaptiveRateController writeRate = controlRate && !export ? startRateController(
+                destinationClient, destinationHandler, destinationTable, false,
+                writeThroughput, writeThroughputRatio, trackCapacity,
+                adaptiveRate, rateScheduler)
+                : null;
+        SectionLease lease = null;
+        if (coordinationDirectory != null) {
+            lease = new SectionLease(new File(coordinationDirectory),
+                    params.getSection());
+            if (readRate != null) {
+                lease.addController(readRate);
+            }
+            if (writeRate != null) {
+                lease.addController(writeRate);
+            }
+            try {
+                lease.start(rateScheduler);
+            } catch (IOException e) {
+                LOGGER.error("Could not take the lease of the section", e);
+                exit(1);
+            }
+        }
+
+        DeadLetterFile deadLetters = null;
+        if (params.getDeadLetterFile() != null) {
+            try {
+                deadLetters = new DeadLetterFile(new File(
+                        params.getDeadLetterFile()));
+            } catch (IOException e) {
+                LOGGER.error("Could not open the dead letter file", e);
+                exit(1);
+            }
+        }
+
+        PipelineMetrics.REGISTRY.registerMBeans(ManagementFactory
+                .getPlatformMBeanServer());
+        PrometheusEndpoint metricsEndpoint = null;
+        if (params.getMetricsPort() >= 0) {
+            try {
+                metricsEndpoint = new PrometheusEndpoint(
+                        PipelineMetrics.REGISTRY, params.getMetricsPort());
+                LOGGER.info("Serving metrics on port "
+                        + metricsEndpoint.getPort() + PrometheusEndpoint.PATH);
+            } catch (IOException e) {
+                LOGGER.error("Could not serve the metrics", e);
+                exit(1);
+            }
+        }
+
+        ScheduledExecutorService progressScheduler = null;
         try {
-            ExecutorService sourceExec = getSourceThreadPool(numSegments);
-            ExecutorService destinationExec = getDestinationThreadPool(maxWriteThreads);
-            DynamoDBConsumer consumer = new DynamoDBConsumer(destinationClient,
-                    destinationTable, writeThroughput, destinationExec);
+            final AbstractLogConsumer consumer;
+            if (export) {
+                ExecutorService exportExec = virtualThreads ? getVirtualThreadPool(BootstrapConstants.EXPORT_WRITE_THREADS)
+                        : getExportThreadPool();
+                if (json) {
+                    consumer = new JsonLinesFileConsumer(new File(
+                            exportDirectory), params.getCompression(),
+                            exportExec);
+                } else {
+                    consumer = new BinaryFileConsumer(
+                            new File(exportDirectory), exportExec);
+                }
+            } else if (asyncWrite) {
+                consumer = new AsyncDynamoDBConsumer(
+                        (AmazonDynamoDBAsyncClient) destinationClient, destinationTable,
+                        getRateLimiter(writeRate, writeThroughput),
+                        Executors.newScheduledThreadPool(BootstrapConstants.ASYNC_SCHEDULER_POOL_SIZE),
+                        maxInFlightWrites);
+                ((AsyncDynamoDBConsumer) consumer).setDeadLetterFile(deadLetters);
+            } else {
+                ExecutorService destinationExec = virtualThreads ? getVirtualThreadPool(maxWriteThreads)
+                        : getDestinationThreadPool(maxWriteThreads);
+                consumer = new DynamoDBConsumer(destinationClient,
+                        destinationTable, getRateLimiter(writeRate,
+                                writeThroughput), destinationExec);
+                ((DynamoDBConsumer) consumer).setDeadLetterFile(deadLetters);
+            }
+
+            final AbstractLogProvider provider;
+            if (importing) {
+                // reading tasks wait for the consumer, so they are queued
+                // rather than run by the thread handing their items over
+                ExecutorService importExec = Executors
+                        .newFixedThreadPool(Runtime.getRuntime()
+                                .availableProcessors());
+                if (json) {
+                    provider = new JsonLinesFileProvider(new File(
+                            importDirectory), importExec);
+                } else {
+                    provider = new BinaryFileProvider(
+                            new File(importDirectory), importExec);
+                }
+            } else {
+                final DynamoDBBootstrapWorker worker;
+                if (asyncScan) {
+                    worker = new DynamoDBBootstrapWorker(
+                            (AmazonDynamoDBAsyncClient) sourceClient, readThroughput,
+                            sourceTable, Executors.newScheduledThreadPool(BootstrapConstants.ASYNC_SCHEDULER_POOL_SIZE),
+                            params.getSection(), params.getTotalSections(), numSegments, consistentScan,
+                            maxInFlightScans);
+                } else {
+                    ExecutorService sourceExec = virtualThreads ? getVirtualThreadPool(numSegments)
+                            : getSourceThreadPool(numSegments);
+                    worker = new DynamoDBBootstrapWorker(
+                            sourceClient, readThroughput, sourceTable, sourceExec,
+                            params.getSection(), params.getTotalSections(), numSegments, consistentScan);
+                }
 
-            final DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(
-                    sourceClient, readThroughput, sourceTable, sourceExec,
-                    params.getSection(), params.getTotalSections(), numSegments, consistentScan);
+                worker.setSplitSegments(params.getSplitSegments());
+                worker.setPrefetchDepth(params.getPrefetchDepth());
+                worker.setSegmentPriority(segmentPriority);
+                worker.setDispatchThreads(params.getDispatchThreads());
+                if (readRate != null) {
+                    worker.setRateLimiter(readRate.getRateLimiter());
+                }
+                if (params.getStealSegments()) {
+                    SegmentClaims claims = new SegmentClaims(new File(
+                            params.getCoordinationDirectory()), params
+                            .getSection());
+                    claims.start(rateScheduler);
+                    worker.setSegmentClaims(claims);
+                }
+                if (params.getResumeFrom() != null) {
+                    worker.setResumeFrom(new File(params.getResumeFrom()));
+                }
+                if (params.getCheckpointFile() != null) {
+                    worker.setCheckpointFile(new File(params.getCheckpointFile()));
+                } else if (params.getResumeFrom() != null) {
+                    worker.setCheckpointFile(new File(params.getResumeFrom()));
+                }
+                ProgressTracker progress = new ProgressTracker(
+                        valueOrZero(readTableDescription.getItemCount()),
+                        valueOrZero(readTableDescription.getTableSizeBytes()));
+                progressScheduler = Executors.newSingleThreadScheduledExecutor();
+                progress.start(progressScheduler);
+                worker.setProgressTracker(progress);
+                provider = worker;
+            }
+            if (params.getMaxBytesInFlight() > 0) {
+                provider.setMaxBytesInFlight(params.getMaxBytesInFlight());
+            }
 
             LOGGER.info("Starting transfer...");
-            worker.pipe(consumer);
+            provider.pipe(consumer);
             LOGGER.info("Finished Copying Table.");
+            if (deadLetters != null && deadLetters.getItemCount() > 0) {
+                LOGGER.error(deadLetters.getItemCount()
+                        + " items could not be written, see "
+                        + params.getDeadLetterFile());
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not read the files to import.", e);
+            exit(1);
         } catch (ExecutionException e) {
             LOGGER.error("Encountered exception when executing transfer.", e);
         } catch (InterruptedException e) {
@@ -168,7 +459,109 @@ public class CommandLineInterface {
             exit(1);
         } catch (SectionOutOfRangeException e) {
             LOGGER.error("Invalid section parameter", e);
+        } finally {
+            if (progressScheduler != null) {
+                progressScheduler.shutdownNow();
+            }
+            if (metricsEndpoint != null) {
+                metricsEndpoint.close();
+            }
+            if (deadLetters != null) {
+                try {
+                    deadLetters.close();
+                } catch (IOException e) {
+                    LOGGER.error("Could not close the dead letter file", e);
+                }
+            }
+            if (lease != null) {
+                lease.finish();
+            }
+            if (rateScheduler != null) {
+                rateScheduler.shutdownNow();
+            }
+            if (sourceClient != null) {
+                sourceClient.shutdown();
+            }
+            if (destinationClient != null) {
+                destinationClient.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Builds a client of the endpoint whose requests are observed by the
+     * handler. The builder creates the client class the workers take.
+     */
+    private static AmazonDynamoDBClient buildClient(
+            AWSCredentialsProvider credentials, ClientConfiguration config,
+            String endpoint, RequestHandler2 handler) {
+        return (AmazonDynamoDBClient) AmazonDynamoDBClientBuilder.standard()
+                .withCredentials(credentials)
+                .withClientConfiguration(config)
+                .withEndpointConfiguration(
+                        new EndpointConfiguration(endpoint, null))
+                .withRequestHandlers(handler).build();
+    }
+
+    /**
+     * Builds an asynchronous client of the endpoint whose requests are
+     * observed by the handler and run on a pool of the given number of
+     * threads.
+     */
+    private static AmazonDynamoDBAsyncClient buildAsyncClient(
+            AWSCredentialsProvider credentials, ClientConfiguration config,
+            String endpoint, RequestHandler2 handler, final int threads) {
+        return (AmazonDynamoDBAsyncClient) AmazonDynamoDBAsyncClientBuilder
+                .standard().withCredentials(credentials)
+                .withClientConfiguration(config)
+                .withEndpointConfiguration(
+                        new EndpointConfiguration(endpoint, null))
+                .withExecutorFactory(new ExecutorFactory() {
+                    @Override
+                    public ExecutorService newExecutor() {
+                        return Executors.newFixedThreadPool(threads);
+                    }
+                }).withRequestHandlers(handler).build();
+    }
+
+    /**
+     * Creates a controller of the rate of requests to the table. If adaptive
+     * is true, the controller is told about the requests of the client
+     * through its handler and started, and if trackCapacity is true too, it
+     * follows the capacity of the table times ratio. Otherwise it only applies
+     * the share of the section.
+     */
+    private static AdaptiveRateController startRateController(
+            AmazonDynamoDBClient client,
+            AdaptiveRateController.ClientHandler handler, String tableName,
+            boolean read, double rate, double ratio, boolean trackCapacity,
+            boolean adaptive, ScheduledExecutorService scheduler) {
+        AdaptiveRateController controller = new AdaptiveRateController(rate);
+        if (adaptive) {
+            if (trackCapacity) {
+                controller.trackCapacity(client, tableName, read, ratio);
+            }
+            handler.setController(controller);
+            controller.start(scheduler);
         }
+        return controller;
+    }
+
+    /**
+     * returns the rate limiter of the controller, or a rate limiter with the
+     * fixed rate if there is no controller.
+     */
+    private static RateLimiter getRateLimiter(
+            AdaptiveRateController controller, double rate) {
+        return controller != null ? controller.getRateLimiter() : RateLimiter
+                .create(rate);
+    }
+
+    /**
+     * returns the value, or 0 if DynamoDB did not describe it.
+     */
+    private static long valueOrZero(Long value) {
+        return value == null ? 0 : value;
     }
 
     /**
@@ -195,13 +588,45 @@ public class CommandLineInterface {
             corePoolSize = maxWriteThreads - 1;
         }
         final long keepAlive = BootstrapConstants.DYNAMODB_CLIENT_EXECUTOR_KEEP_ALIVE;
-        ExecutorService exec = new ThreadPoolExecutor(corePoolSize,
+        ThreadPoolExecutor exec = new ThreadPoolExecutor(corePoolSize,
                 maxWriteThreads, keepAlive, TimeUnit.MILLISECONDS,
                 new ArrayBlockingQueue<Runnable>(maxWriteThreads),
                 new ThreadPoolExecutor.CallerRunsPolicy());
+        PipelineMetrics.registerExecutor("destination", exec);
         return exec;
     }
 
+    /**
+     * Returns the thread pool writing to the export files, sized for the
+     * disk rather than for DynamoDB.
+     */
+    private static ExecutorService getExportThreadPool() {
+        final int threads = BootstrapConstants.EXPORT_WRITE_THREADS;
+        ThreadPoolExecutor exec = new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+                        threads), new ThreadPoolExecutor.CallerRunsPolicy());
+        PipelineMetrics.registerExecutor("export", exec);
+        return exec;
+    }
+
+    /**
+     * Returns an executor that runs each task on a new virtual thread, with at
+     * most maxConcurrency tasks running at a time. Submitting threads wait for
+     * a free slot instead of running the task themselves. Falls back to
+     * platform threads when the JVM does not support virtual threads.
+     */
+    private static ExecutorService getVirtualThreadPool(int maxConcurrency) {
+        ExecutorService threadPerTask;
+        try {
+            threadPerTask = (ExecutorService) Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warn("Virtual threads require Java 21 or later - using platform threads");
+            threadPerTask = Executors.newCachedThreadPool();
+        }
+        return new BoundedExecutorService(threadPerTask, maxConcurrency);
+    }
+
     /**
      * Returns the thread pool for the source DynamoDB table.
      */
@@ -212,10 +637,11 @@ public class CommandLineInterface {
         }
 
         final long keepAlive = BootstrapConstants.DYNAMODB_CLIENT_EXECUTOR_KEEP_ALIVE;
-        ExecutorService exec = new ThreadPoolExecutor(corePoolSize,
+        ThreadPoolExecutor exec = new ThreadPoolExecutor(corePoolSize,
                 numSegments, keepAlive, TimeUnit.MILLISECONDS,
                 new ArrayBlockingQueue<Runnable>(numSegments),
                 new ThreadPoolExecutor.CallerRunsPolicy());
+        PipelineMetrics.registerExecutor("source", exec);
         return exec;
     }
 
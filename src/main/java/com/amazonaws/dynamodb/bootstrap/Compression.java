@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * Compression of the JSON export files. Compressed files are recognized by
+ * their magic bytes, so they can be read whatever their names. zstd uses the
+ * streams of zstd-jni, which is not bundled and must be put on the classpath.
+ */
+public class Compression {
+
+    private static final String ZSTD_OUTPUT_STREAM = "com.github.luben.zstd.ZstdOutputStream";
+    private static final String ZSTD_INPUT_STREAM = "com.github.luben.zstd.ZstdInputStream";
+
+    private static final byte[] GZIP_MAGIC = { (byte) 0x1f, (byte) 0x8b };
+    private static final byte[] ZSTD_MAGIC = { (byte) 0x28, (byte) 0xb5,
+            (byte) 0x2f, (byte) 0xfd };
+
+    /**
+     * Checks that the compression is known and can be used.
+     *
+     * @throws IllegalArgumentException
+     *             if the compression is unknown, or is zstd and zstd-jni is
+     *             not on the classpath.
+     */
+    public static void checkAvailable(String compression) {
+        if (BootstrapConstants.COMPRESSION_ZSTD.equals(compression)) {
+            try {
+                Class.forName(ZSTD_OUTPUT_STREAM);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException(
+                        "zstd compression requires com.github.luben:zstd-jni on the classpath");
+            }
+        } else if (!BootstrapConstants.COMPRESSION_GZIP.equals(compression)
+                && !BootstrapConstants.COMPRESSION_NONE.equals(compression)) {
+            throw new IllegalArgumentException("Unknown compression "
+                    + compression + ", expected one of "
+                    + BootstrapConstants.COMPRESSION_NONE + ", "
+                    + BootstrapConstants.COMPRESSION_GZIP + ", "
+                    + BootstrapConstants.COMPRESSION_ZSTD);
+        }
+    }
+
+    /**
+     * returns the file name extension of the compression
+     */
+    public static String getExtension(String compression) {
+        if (BootstrapConstants.COMPRESSION_GZIP.equals(compression)) {
+            return ".gz";
+        } else if (BootstrapConstants.COMPRESSION_ZSTD.equals(compression)) {
+            return ".zst";
+        }
+        return "";
+    }
+
+    /**
+     * returns a stream compressing what is written to it into out
+     */
+    public static OutputStream compress(OutputStream out, String compression)
+            throws IOException {
+        if (BootstrapConstants.COMPRESSION_GZIP.equals(compression)) {
+            return new GZIPOutputStream(out,
+                    BootstrapConstants.COMPRESSION_BUFFER_BYTES);
+        } else if (BootstrapConstants.COMPRESSION_ZSTD.equals(compression)) {
+            return (OutputStream) newZstdStream(ZSTD_OUTPUT_STREAM,
+                    OutputStream.class, out);
+        }
+        return out;
+    }
+
+    /**
+     * returns true if the file starts with the magic bytes of a supported
+     * compression
+     */
+    public static boolean isCompressed(File file) throws IOException {
+        byte[] magic = new byte[ZSTD_MAGIC.length];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            int n;
+            while (read < magic.length
+                    && (n = in.read(magic, read, magic.length - read)) > 0) {
+                read += n;
+            }
+            return startsWith(magic, read, GZIP_MAGIC)
+                    || startsWith(magic, read, ZSTD_MAGIC);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * returns a stream of the decompressed content of in, or of in itself if
+     * it is not compressed
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in,
+                BootstrapConstants.COMPRESSION_BUFFER_BYTES);
+        byte[] magic = new byte[ZSTD_MAGIC.length];
+        buffered.mark(magic.length);
+        int read = 0;
+        int n;
+        while (read < magic.length
+                && (n = buffered.read(magic, read, magic.length - read)) > 0) {
+            read += n;
+        }
+        buffered.reset();
+        if (startsWith(magic, read, GZIP_MAGIC)) {
+            return new GZIPInputStream(buffered,
+                    BootstrapConstants.COMPRESSION_BUFFER_BYTES);
+        } else if (startsWith(magic, read, ZSTD_MAGIC)) {
+            return (InputStream) newZstdStream(ZSTD_INPUT_STREAM,
+                    InputStream.class, buffered);
+        }
+        return buffered;
+    }
+
+    private static boolean startsWith(byte[] bytes, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object newZstdStream(String className, Class<?> streamType,
+            Object stream) throws IOException {
+        try {
+            return Class.forName(className).getConstructor(streamType)
+                    .newInstance(stream);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not open a zstd stream", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(
+                    "zstd compression requires com.github.luben:zstd-jni on the classpath",
+                    e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Collects the items that could not be written, either because DynamoDB
+ * rejected them or because they were still unprocessed after MAX_RETRIES
+ * retries. The items are appended as DynamoDB JSON lines, so they can be
+ * written again with the JsonLinesFileProvider once the cause is fixed.
+ */
+public class DeadLetterFile implements Closeable {
+
+    /**
+     * Logger for the DeadLetterFile.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(DeadLetterFile.class);
+
+    private final File file;
+    private final FileOutputStream out;
+    private final JsonGenerator generator;
+    private long itemCount;
+
+    /**
+     * Opens the file, appending to it if it exists.
+     *
+     * @throws IOException
+     *             if the file cannot be opened.
+     */
+    public DeadLetterFile(File file) throws IOException {
+        this.file = file;
+        this.out = new FileOutputStream(file, true);
+        this.generator = DynamoDBJsonFormat.FACTORY.createGenerator(out);
+    }
+
+    /**
+     * Appends the items and forces them to the disk.
+     *
+     * @throws IOException
+     *             if the items cannot be written, in which case they are
+     *             lost.
+     */
+    public synchronized void write(
+            Collection<Map<String, AttributeValue>> items, String reason)
+            throws IOException {
+        for (Map<String, AttributeValue> item : items) {
+            DynamoDBJsonFormat.writeItem(generator, item);
+        }
+        generator.flush();
+        out.getFD().sync();
+        itemCount += items.size();
+        PipelineMetrics.DEAD_LETTER_ITEMS.add(items.size());
+        LOGGER.error(items.size() + " items written to " + file + ": "
+                + reason);
+    }
+
+    /**
+     * returns the number of items written to the file since it was opened
+     */
+    public synchronized long getItemCount() {
+        return itemCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        generator.close();
+    }
+}
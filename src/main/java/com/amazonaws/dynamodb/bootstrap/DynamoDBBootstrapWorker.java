@@ -14,24 +14,47 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
 
 import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
 import com.amazonaws.dynamodb.bootstrap.exception.NullReadCapacityException;
 import com.amazonaws.dynamodb.bootstrap.exception.SectionOutOfRangeException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClient;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
 import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
 import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
 
 /**
  * The base class to start a parallel scan and connect the results with a
  * consumer to accept the results.
  */
 public class DynamoDBBootstrapWorker extends AbstractLogProvider {
+
+    /**
+     * Logger for the DynamoDBBootstrapWorker.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(DynamoDBBootstrapWorker.class);
+
     private final AmazonDynamoDBClient client;
     private final double rateLimit;
     private final String tableName;
@@ -39,6 +62,17 @@ public class DynamoDBBootstrapWorker extends AbstractLogProvider {
     private int section;
     private int totalSections;
     private final boolean consistentScan;
+    private ScheduledExecutorService asyncScheduler;
+    private int maxInFlightScans;
+    private boolean splitSegments;
+    private int prefetchDepth = BootstrapConstants.DEFAULT_PREFETCH_DEPTH;
+    private File checkpointFile;
+    private File resumeFrom;
+    private RateLimiter rateLimiter;
+    private SegmentClaims segmentClaims;
+    private ProgressTracker progressTracker;
+    private SegmentPriority segmentPriority = SegmentPriority.COMPLETION;
+    private int dispatchThreads = BootstrapConstants.DEFAULT_DISPATCH_THREADS;
 
     /**
      * Creates the DynamoDBBootstrapWorker, calculates the number of segments a
@@ -67,6 +101,25 @@ public class DynamoDBBootstrapWorker extends AbstractLogProvider {
         super.threadPool = exec;
     }
 
+    /**
+     * Creates a DynamoDBBootstrapWorker that scans with asynchronous requests,
+     * keeping at most maxInFlightScans pages in flight regardless of the number
+     * of segments. The scheduler is used to retry throttled requests and to
+     * wait for read capacity without blocking a thread.
+     * 
+     * @throws SectionOutOfRangeException
+     */
+    public DynamoDBBootstrapWorker(AmazonDynamoDBAsyncClient client,
+            double rateLimit, String tableName,
+            ScheduledExecutorService scheduler, int section,
+            int totalSections, int numSegments, boolean consistentScan,
+            int maxInFlightScans) throws SectionOutOfRangeException {
+        this(client, rateLimit, tableName, scheduler, section, totalSections,
+                numSegments, consistentScan);
+        this.asyncScheduler = scheduler;
+        this.maxInFlightScans = maxInFlightScans;
+    }
+
     /**
      * Creates the DynamoDBBootstrapWorker, calculates the number of segments a
      * table should have, and creates a thread pool to prepare to scan using an
@@ -86,7 +139,8 @@ public class DynamoDBBootstrapWorker extends AbstractLogProvider {
         this.totalSections = 1;
         this.consistentScan = false;
 
-        this.numSegments = getNumberOfSegments(description);
+        this.numSegments = SegmentPlanner.getNumberOfSegments(description,
+                rateLimit, Runtime.getRuntime().availableProcessors());
         int numProcessors = Runtime.getRuntime().availableProcessors() * 4;
         if (numProcessors > numThreads) {
             numThreads = numProcessors;
@@ -94,31 +148,277 @@ public class DynamoDBBootstrapWorker extends AbstractLogProvider {
         super.threadPool = Executors.newFixedThreadPool(numThreads);
     }
 
+    /**
+     * When enabled, segments still being scanned near the end of the scan are
+     * split in two, so that a few large segments do not determine how long the
+     * scan takes. Only applies to scans that are not asynchronous.
+     */
+    public void setSplitSegments(boolean splitSegments) {
+        this.splitSegments = splitSegments;
+    }
+
+    /**
+     * Sets how many pages of each segment are scanned ahead of the pages the
+     * consumer has taken. 0 disables prefetching.
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    /**
+     * Scans at the rate of the given rate limiter, whose rate may change while
+     * scanning, instead of at the fixed rate the worker was created with.
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Records how far each segment has been written to the given file while
+     * piping, so that a failed copy can be resumed with setResumeFrom.
+     */
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Resumes the scan from the positions recorded in the given checkpoint
+     * file instead of scanning the whole table.
+     */
+    public void setResumeFrom(File resumeFrom) {
+        this.resumeFrom = resumeFrom;
+    }
+
+    /**
+     * Scans the segments of every section, claiming each one from the given
+     * claims before scanning it, so that sections finishing early take over
+     * the segments the others have not started. The section starts with its
+     * own segments and scans as many segments at a time as it would without
+     * claims. Cannot be combined with setResumeFrom.
+     */
+    public void setSegmentClaims(SegmentClaims segmentClaims) {
+        this.segmentClaims = segmentClaims;
+    }
+
+    /**
+     * Sets the order in which an asynchronous scan sends the next request of
+     * the segments waiting for a free in flight slot.
+     */
+    public void setSegmentPriority(SegmentPriority segmentPriority) {
+        this.segmentPriority = segmentPriority;
+    }
+
+    /**
+     * Sets how many threads hand the scanned pages to the consumer, which
+     * groups their items into batches and submits them, or writes them itself
+     * when its thread pool is full. Pages are grabbed from the scan on one
+     * thread, in order, and handed over by the first free thread. With one
+     * thread, the thread grabbing the pages hands them over.
+     */
+    public void setDispatchThreads(int dispatchThreads) {
+        this.dispatchThreads = Math.max(1, dispatchThreads);
+    }
+
+    /**
+     * Reports the pages scanned to the given tracker, which is told which
+     * segments to expect before the scan starts. Segments claimed from other
+     * sections are only expected once they start.
+     */
+    public void setProgressTracker(ProgressTracker progressTracker) {
+        this.progressTracker = progressTracker;
+    }
+
     /**
      * Begins to pipe the log results by parallel scanning the table and the
      * consumer writing the results.
      */
     public void pipe(final AbstractLogConsumer consumer)
             throws ExecutionException, InterruptedException {
-        final DynamoDBTableScan scanner = new DynamoDBTableScan(rateLimit,
-                client);
+        registerMetrics();
+        final DynamoDBTableScan scanner = rateLimiter == null ? new DynamoDBTableScan(
+                rateLimit, client) : new DynamoDBTableScan(rateLimiter, client);
+        scanner.setSegmentPriority(segmentPriority);
 
         final ScanRequest request = new ScanRequest().withTableName(tableName)
                 .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .withLimit(BootstrapConstants.SCAN_LIMIT)
                 .withConsistentRead(consistentScan);
 
-        final ParallelScanExecutor scanService = scanner
-                .getParallelScanCompletionService(request, numSegments,
-                        threadPool, section, totalSections);
+        int segments = numSegments;
+        if (resumeFrom != null) {
+            segments = readCheckpointNumSegments(resumeFrom, segments);
+        }
+        List<ScanRequest> segmentRequests;
+        int maxActiveSegments = Integer.MAX_VALUE;
+        final ScanCheckpoint checkpoint;
+        try {
+            if (segmentClaims != null) {
+                segments = segmentClaims.agreeOnNumSegments(segments);
+                segmentRequests = scanner.getAllSegmentRequests(request,
+                        segments, section, totalSections);
+                maxActiveSegments = scanner.getSegmentRequests(request,
+                        segments, section, totalSections).size();
+            } else {
+                segmentRequests = scanner.getSegmentRequests(request,
+                        segments, section, totalSections);
+            }
+            if (resumeFrom != null) {
+                segmentRequests = ScanCheckpoint.resume(resumeFrom,
+                        segmentRequests);
+                LOGGER.info("Resuming " + segmentRequests.size()
+                        + " segments from " + resumeFrom);
+            }
+            checkpoint = checkpointFile == null ? null : new ScanCheckpoint(
+                    checkpointFile, segments);
+        } catch (IOException e) {
+            throw new ExecutionException(
+                    "Could not use the checkpoint or coordination files", e);
+        }
+        if (progressTracker != null) {
+            progressTracker.expectSegments(segmentRequests.subList(0,
+                    Math.min(maxActiveSegments, segmentRequests.size())));
+        }
 
-        while (!scanService.finished()) {
-            SegmentedScanResult result = scanService.grab();
-            consumer.writeResult(result);
+        final AbstractParallelScanExecutor scanService;
+        if (asyncScheduler != null) {
+            scanService = scanner.getAsyncParallelScanCompletionService(
+                    segmentRequests, asyncScheduler, maxInFlightScans,
+                    segmentClaims, maxActiveSegments);
+        } else {
+            scanService = scanner.getParallelScanCompletionService(
+                    segmentRequests, threadPool, splitSegments, segmentClaims,
+                    maxActiveSegments);
         }
+        scanService.setPrefetchDepth(prefetchDepth);
+
+        final ExecutorService dispatchers = dispatchThreads > 1 ? new BoundedExecutorService(
+                Executors.newFixedThreadPool(dispatchThreads), dispatchThreads
+                        * BootstrapConstants.DISPATCH_QUEUE_PAGES_PER_THREAD)
+                : null;
+        final AtomicReference<Throwable> dispatchFailure = new AtomicReference<Throwable>();
+        try {
+            while (!scanService.finished()) {
+                final SegmentedScanResult result = scanService.grab();
+                if (result == null) {
+                    continue;
+                }
+                throwIfWriteFailed(consumer);
+                // pages of a segment are tracked and checkpointed in the
+                // order grabbed
+                if (progressTracker != null) {
+                    progressTracker.pageScanned(result);
+                }
+                final ScanCheckpoint.Page page = checkpoint == null ? null
+                        : checkpoint.pageGrabbed(result);
+                if (dispatchers == null) {
+                    dispatch(consumer, result, checkpoint, page);
+                    continue;
+                }
+                throwIfFailed(dispatchFailure);
+                try {
+                    dispatchers.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                dispatch(consumer, result, checkpoint, page);
+                            } catch (InterruptedException e) {
+                                dispatchFailure.compareAndSet(null, e);
+                            } catch (RuntimeException e) {
+                                dispatchFailure.compareAndSet(null, e);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    throwIfFailed(dispatchFailure);
+                    throw new InterruptedException(
+                            "Interrupted while waiting to hand a page over");
+                }
+            }
+            if (dispatchers != null) {
+                dispatchers.shutdown();
+                while (!dispatchers.awaitTermination(
+                        BootstrapConstants.WAITING_PERIOD_FOR_THREAD_TERMINATION_SECONDS,
+                        TimeUnit.SECONDS)) {
+                    LOGGER.info("Waiting for the pages to be handed over...");
+                }
+                throwIfFailed(dispatchFailure);
+            }
+            awaitWritten(consumer);
+
+            shutdown(true);
+            consumer.shutdown(true);
+            if (progressTracker != null) {
+                progressTracker.log();
+            }
+        } finally {
+            if (dispatchers != null) {
+                dispatchers.shutdownNow();
+            }
+            if (checkpoint != null) {
+                closeCheckpoint(checkpoint);
+            }
+        }
+    }
 
-        shutdown(true);
-        consumer.shutdown(true);
+    /**
+     * Hands a grabbed page to the consumer, and advances the checkpoint of
+     * its segment once the page is written.
+     */
+    private void dispatch(AbstractLogConsumer consumer,
+            SegmentedScanResult result, final ScanCheckpoint checkpoint,
+            final ScanCheckpoint.Page page) throws InterruptedException {
+        final int segment = result.getSegment();
+        ListenableFuture<Void> written = handOff(consumer, result);
+        if (page != null) {
+            Futures.addCallback(written, new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(Void v) {
+                    checkpoint.pageWritten(page);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    LOGGER.warn("A page of segment " + segment
+                            + " was not written, its checkpoint will not advance");
+                }
+            }, MoreExecutors.directExecutor());
+        }
+    }
+
+    /**
+     * Throws the first failure of the threads handing pages over, if any.
+     */
+    private static void throwIfFailed(AtomicReference<Throwable> failure)
+            throws ExecutionException {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new ExecutionException("Could not hand a page over", t);
+        }
+    }
+
+    /**
+     * returns the number of segments the checkpointed scan started with, so
+     * the resumed scan divides the table the same way, or numSegments if the
+     * checkpoint does not record it.
+     */
+    private static int readCheckpointNumSegments(File checkpoint,
+            int numSegments) throws ExecutionException {
+        try {
+            int checkpointSegments = ScanCheckpoint.readNumSegments(checkpoint);
+            return checkpointSegments > 0 ? checkpointSegments : numSegments;
+        } catch (IOException e) {
+            throw new ExecutionException("Could not read the checkpoint file",
+                    e);
+        }
+    }
+
+    private static void closeCheckpoint(ScanCheckpoint checkpoint) {
+        try {
+            checkpoint.close();
+        } catch (IOException e) {
+            LOGGER.error("Could not close the checkpoint file: "
+                    + e.getMessage());
+        }
     }
 
     /**
@@ -129,9 +429,12 @@ public class DynamoDBBootstrapWorker extends AbstractLogProvider {
      * fast enough in parallel so that one worker does not finish long before
      * other workers.
      * 
+     * @deprecated Use SegmentPlanner.getNumberOfSegments, which also supports
+     *             on-demand tables.
      * @throws NullReadCapacityException
      *             if the table returns a null readCapacity units.
      */
+    @Deprecated
     public static int getNumberOfSegments(TableDescription description)
             throws NullReadCapacityException {
         ProvisionedThroughputDescription provisionedThroughput = description
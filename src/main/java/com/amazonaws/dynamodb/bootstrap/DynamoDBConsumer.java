@@ -14,22 +14,22 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
-import com.amazonaws.services.dynamodbv2.model.PutRequest;
-import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
-import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.base.Functions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.RateLimiter;
 
 /**
@@ -41,73 +41,120 @@ public class DynamoDBConsumer extends AbstractLogConsumer {
     private final AmazonDynamoDBClient client;
     private final String tableName;
     private final RateLimiter rateLimiter;
+    private final UnprocessedItemCoalescer coalescer;
+    private DeadLetterFile deadLetters;
 
     /**
      * Class to consume logs and write them to a DynamoDB table.
      */
     public DynamoDBConsumer(AmazonDynamoDBClient client, String tableName,
             double rateLimit, ExecutorService exec) {
+        this(client, tableName, RateLimiter.create(rateLimit), exec);
+    }
+
+    /**
+     * Class to consume logs and write them to a DynamoDB table at the rate of
+     * the given rate limiter, whose rate may change while writing.
+     */
+    public DynamoDBConsumer(AmazonDynamoDBClient client, String tableName,
+            RateLimiter rateLimiter, ExecutorService exec) {
         this.client = client;
         this.tableName = tableName;
-        this.rateLimiter = RateLimiter.create(rateLimit);
+        this.rateLimiter = rateLimiter;
+        this.coalescer = new UnprocessedItemCoalescer(client, tableName);
         super.threadPool = exec;
-        super.exec = new ExecutorCompletionService<Void>(threadPool);
     }
 
     /**
-     * calls splitResultIntoBatches to turn the SegmentedScanResult into several
-     * BatchWriteItemRequests and then submits them as individual jobs to the
-     * ExecutorService.
+     * Writes the items that cannot be written to the given file instead of
+     * failing the write of their page.
+     */
+    public void setDeadLetterFile(DeadLetterFile deadLetters) {
+        this.deadLetters = deadLetters;
+        coalescer.setDeadLetterFile(deadLetters);
+    }
+
+    /**
+     * returns the number of batches sent again with the items other batches
+     * left unprocessed
+     */
+    public long getCoalescedRequestCount() {
+        return coalescer.getRequestCount();
+    }
+
+    /**
+     * Groups the items of the SegmentedScanResult into BatchWriteItemRequests
+     * and submits each batch as an individual job to the ExecutorService as
+     * soon as it is full, so that the first batches are written while the
+     * rest of the page is grouped. A batch consumes at most the write capacity
+     * the rate limiter allows in a second, and items of LARGE_ITEM_SIZE_BYTES
+     * or more are put on their own. The items DynamoDB leaves unprocessed are
+     * retried in batches packed with the leftovers of other batches. The
+     * returned future completes when every item of the result is written.
      */
     @Override
-    public Future<Void> writeResult(SegmentedScanResult result) {
-        Future<Void> jobSubmission = null;
-        List<BatchWriteItemRequest> batches = splitResultIntoBatches(
-                result.getScanResult(), tableName);
-        Iterator<BatchWriteItemRequest> batchesIterator = batches.iterator();
-        while (batchesIterator.hasNext()) {
-            try {
-                jobSubmission = exec
-                        .submit(new DynamoDBConsumerWorker(batchesIterator
-                                .next(), client, rateLimiter, tableName));
-            } catch (NullPointerException npe) {
-                throw new NullPointerException(
-                        "Thread pool not initialized for LogStashExecutor");
+    public ListenableFuture<Void> writeResult(SegmentedScanResult result) {
+        List<Map<String, AttributeValue>> items = result.getScanResult()
+                .getItems();
+        List<ListenableFuture<Void>> writes = new ArrayList<ListenableFuture<Void>>(
+                items.size() / BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM + 1);
+        WriteBatchBuilder builder = new WriteBatchBuilder(tableName,
+                Math.max(BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM,
+                        rateLimiter.getRate()));
+        for (Map<String, AttributeValue> item : items) {
+            int size = ItemSizeCalculator.calculateItemSizeInBytes(item);
+            if (size >= BootstrapConstants.LARGE_ITEM_SIZE_BYTES) {
+                writes.add(submit(new PutItemWorker(item, client, rateLimiter,
+                        tableName, deadLetters)));
+                continue;
             }
+            BatchWriteItemRequest full = builder.add(item, size);
+            if (full != null) {
+                writes.add(submit(new DynamoDBConsumerWorker(full, client,
+                        rateLimiter, tableName, deadLetters, coalescer)));
+            }
+        }
+        BatchWriteItemRequest last = builder.finish();
+        if (last != null) {
+            writes.add(submit(new DynamoDBConsumerWorker(last, client,
+                    rateLimiter, tableName, deadLetters, coalescer)));
         }
-        return jobSubmission;
+        return Futures.transform(Futures.allAsList(writes),
+                Functions.<Void> constant(null),
+                MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<Void> submit(Callable<Void> worker) {
+        ListenableFutureTask<Void> write = ListenableFutureTask.create(worker);
+        try {
+            threadPool.execute(write);
+        } catch (NullPointerException npe) {
+            throw new NullPointerException(
+                    "Thread pool not initialized for LogStashExecutor");
+        }
+        return write;
     }
 
     /**
      * Splits up a ScanResult into a list of BatchWriteItemRequests of size 25
-     * items or less each.
+     * items or less each, and of at most MAX_BATCH_SIZE_WRITE_ITEM_BYTES.
      */
     public static List<BatchWriteItemRequest> splitResultIntoBatches(
             ScanResult result, String tableName) {
-        List<BatchWriteItemRequest> batches = new LinkedList<BatchWriteItemRequest>();
-        Iterator<Map<String, AttributeValue>> it = result.getItems().iterator();
-
-        BatchWriteItemRequest req = new BatchWriteItemRequest()
-                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
-        List<WriteRequest> writeRequests = new LinkedList<WriteRequest>();
-        int i = 0;
-        while (it.hasNext()) {
-            PutRequest put = new PutRequest(it.next());
-            writeRequests.add(new WriteRequest(put));
-
-            i++;
-            if (i == BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM) {
-                req.addRequestItemsEntry(tableName, writeRequests);
-                batches.add(req);
-                req = new BatchWriteItemRequest()
-                        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
-                writeRequests = new LinkedList<WriteRequest>();
-                i = 0;
+        List<Map<String, AttributeValue>> items = result.getItems();
+        List<BatchWriteItemRequest> batches = new ArrayList<BatchWriteItemRequest>(
+                items.size() / BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM + 1);
+        WriteBatchBuilder builder = new WriteBatchBuilder(tableName);
+        for (Map<String, AttributeValue> item : items) {
+            BatchWriteItemRequest full = builder.add(item,
+                    ItemSizeCalculator.calculateItemSizeInBytes(item));
+            if (full != null) {
+                batches.add(full);
             }
         }
-        if (i > 0) {
-            req.addRequestItemsEntry(tableName, writeRequests);
-            batches.add(req);
+        BatchWriteItemRequest last = builder.finish();
+        if (last != null) {
+            batches.add(last);
         }
         return batches;
     }
@@ -14,14 +14,19 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
@@ -38,6 +43,8 @@ public class DynamoDBConsumerWorker implements Callable<Void> {
     private long exponentialBackoffTime;
     private BatchWriteItemRequest batch;
     private final String tableName;
+    private final DeadLetterFile deadLetters;
+    private final UnprocessedItemCoalescer coalescer;
 
     /**
      * Callable class that when called will try to write a batch to a DynamoDB
@@ -47,10 +54,36 @@ public class DynamoDBConsumerWorker implements Callable<Void> {
     public DynamoDBConsumerWorker(BatchWriteItemRequest batchWriteItemRequest,
             AmazonDynamoDBClient client, RateLimiter rateLimiter,
             String tableName) {
+        this(batchWriteItemRequest, client, rateLimiter, tableName, null);
+    }
+
+    /**
+     * Callable class that when called will try to write a batch to a DynamoDB
+     * table, writing the items that cannot be written to deadLetters. Without
+     * deadLetters, the write fails instead.
+     */
+    public DynamoDBConsumerWorker(BatchWriteItemRequest batchWriteItemRequest,
+            AmazonDynamoDBClient client, RateLimiter rateLimiter,
+            String tableName, DeadLetterFile deadLetters) {
+        this(batchWriteItemRequest, client, rateLimiter, tableName,
+                deadLetters, null);
+    }
+
+    /**
+     * Callable class that when called will write a batch to a DynamoDB table
+     * once, then hand the items left unprocessed over to the coalescer, which
+     * retries them packed with the leftovers of other workers.
+     */
+    public DynamoDBConsumerWorker(BatchWriteItemRequest batchWriteItemRequest,
+            AmazonDynamoDBClient client, RateLimiter rateLimiter,
+            String tableName, DeadLetterFile deadLetters,
+            UnprocessedItemCoalescer coalescer) {
         this.batch = batchWriteItemRequest;
         this.client = client;
         this.rateLimiter = rateLimiter;
         this.tableName = tableName;
+        this.deadLetters = deadLetters;
+        this.coalescer = coalescer;
         this.exponentialBackoffTime = BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS;
     }
 
@@ -59,53 +92,122 @@ public class DynamoDBConsumerWorker implements Callable<Void> {
      * permits equal to the consumed capacity of the write.
      */
     @Override
-    public Void call() {
+    public Void call() throws IOException {
         List<ConsumedCapacity> batchResult = runWithBackoff(batch);
         Iterator<ConsumedCapacity> it = batchResult.iterator();
         int consumedCapacity = 0;
         while (it.hasNext()) {
             consumedCapacity += it.next().getCapacityUnits().intValue();
         }
-        rateLimiter.acquire(consumedCapacity);
+        if (consumedCapacity > 0) {
+            PipelineMetrics.WRITE_RATE_LIMITER_WAIT_TIME.add(PipelineMetrics
+                    .toNanos(rateLimiter.acquire(consumedCapacity)));
+        }
         return null;
     }
 
     /**
-     * Writes to DynamoDBTable using an exponential backoff. If the
-     * batchWriteItem returns unprocessed items then it will exponentially
-     * backoff and retry the unprocessed items.
+     * Writes to DynamoDBTable, retrying only the items left unprocessed and
+     * the requests that failed with a retryable exception, after a back off
+     * with jitter. Items still not written after MAX_RETRIES retries, or
+     * rejected by DynamoDB, go to the dead letter file. With a coalescer, the
+     * items to retry are handed over to it after the first attempt.
+     *
+     * @throws IOException
+     *             if the items could not be written to the dead letter file.
      */
-    public List<ConsumedCapacity> runWithBackoff(BatchWriteItemRequest req) {
-        BatchWriteItemResult writeItemResult = null;
-        List<ConsumedCapacity> consumedCapacities = new LinkedList<ConsumedCapacity>();
-        Map<String, List<WriteRequest>> unprocessedItems = null;
+    public List<ConsumedCapacity> runWithBackoff(BatchWriteItemRequest req)
+            throws IOException {
+        List<ConsumedCapacity> consumedCapacities = new ArrayList<ConsumedCapacity>();
         boolean interrupted = false;
         try {
-            do {
-                writeItemResult = client.batchWriteItem(req);
-                unprocessedItems = writeItemResult.getUnprocessedItems();
-                consumedCapacities
-                        .addAll(writeItemResult.getConsumedCapacity());
-
-                if (unprocessedItems != null) {
+            // the items left are those of the last attempt, so the retries of
+            // the batch are the retries of each of them
+            for (int retries = 0;; retries++) {
+                String failure;
+                int sent = req.getRequestItems().get(tableName).size();
+                long start = System.nanoTime();
+                try {
+                    BatchWriteItemResult writeItemResult = client
+                            .batchWriteItem(req);
+                    if (writeItemResult.getConsumedCapacity() != null) {
+                        consumedCapacities.addAll(writeItemResult
+                                .getConsumedCapacity());
+                    }
+                    Map<String, List<WriteRequest>> unprocessedItems = writeItemResult
+                            .getUnprocessedItems();
+                    if (unprocessedItems == null
+                            || unprocessedItems.get(tableName) == null
+                            || unprocessedItems.get(tableName).isEmpty()) {
+                        PipelineMetrics.batchWritten(sent, 0,
+                                System.nanoTime() - start);
+                        return consumedCapacities;
+                    }
+                    int left = unprocessedItems.get(tableName).size();
+                    PipelineMetrics.batchWritten(sent - left, left,
+                            System.nanoTime() - start);
+                    if (coalescer != null) {
+                        consumedCapacities.addAll(coalescer
+                                .writeAll(unprocessedItems.get(tableName)));
+                        return consumedCapacities;
+                    }
                     req.setRequestItems(unprocessedItems);
-                    try {
-                        Thread.sleep(exponentialBackoffTime);
-                    } catch (InterruptedException ie) {
-                        interrupted = true;
-                    } finally {
-                        exponentialBackoffTime *= 2;
-                        if (exponentialBackoffTime > BootstrapConstants.MAX_EXPONENTIAL_BACKOFF_TIME) {
-                            exponentialBackoffTime = BootstrapConstants.MAX_EXPONENTIAL_BACKOFF_TIME;
-                        }
+                    failure = "unprocessed";
+                } catch (AmazonClientException e) {
+                    if (!WriteRetryPolicy.isRetryable(e)) {
+                        PipelineMetrics.batchWritten(0, 0, System.nanoTime()
+                                - start);
+                        fail(req, e);
+                        return consumedCapacities;
+                    }
+                    PipelineMetrics.batchWritten(0, sent, System.nanoTime()
+                            - start);
+                    if (coalescer != null) {
+                        consumedCapacities.addAll(coalescer.writeAll(req
+                                .getRequestItems().get(tableName)));
+                        return consumedCapacities;
                     }
+                    failure = e.getMessage();
                 }
-            } while (unprocessedItems != null && unprocessedItems.get(tableName) != null);
-            return consumedCapacities;
+                if (retries == BootstrapConstants.MAX_RETRIES) {
+                    fail(req, new AmazonClientException("Not written after "
+                            + retries + " retries, last " + failure));
+                    return consumedCapacities;
+                }
+                exponentialBackoffTime = WriteRetryPolicy
+                        .nextBackoff(exponentialBackoffTime);
+                PipelineMetrics.WRITE_BACKOFF_TIME.add(TimeUnit.MILLISECONDS
+                        .toNanos(exponentialBackoffTime));
+                try {
+                    Thread.sleep(exponentialBackoffTime);
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
         } finally {
             if (interrupted) {
                 Thread.currentThread().interrupt();
             }
         }
     }
+
+    /**
+     * Sends the items of the request to the dead letter file, or throws the
+     * exception if there is none.
+     */
+    private void fail(BatchWriteItemRequest req, AmazonClientException e)
+            throws IOException {
+        if (deadLetters == null) {
+            throw e;
+        }
+        List<WriteRequest> writes = req.getRequestItems().get(tableName);
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(
+                writes.size());
+        for (WriteRequest write : writes) {
+            if (write.getPutRequest() != null) {
+                items.add(write.getPutRequest().getItem());
+            }
+        }
+        deadLetters.write(items, e.getMessage());
+    }
 }
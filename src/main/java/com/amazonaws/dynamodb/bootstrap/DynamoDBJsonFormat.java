@@ -0,0 +1,284 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming encoding of DynamoDB items as DynamoDB JSON, one item per line,
+ * in the shape AttributeValueMixIn maps attribute values to: every value is
+ * an object with a single field named after its type, and binary values are
+ * base64 encoded.
+ *
+ * Reading also accepts the lines of AWS Data Pipeline exports, which name the
+ * types in lower or mixed case, and of DynamoDB exports to S3, which wrap
+ * every item in an object with a single Item field.
+ */
+public class DynamoDBJsonFormat {
+
+    /**
+     * Factory of the generators and parsers of the format. Items are
+     * separated by new lines instead of spaces.
+     */
+    public static final JsonFactory FACTORY = new JsonFactory()
+            .setRootValueSeparator(null);
+
+    private static final String ITEM_WRAPPER = "Item";
+
+    /**
+     * Writes the item followed by a new line.
+     */
+    public static void writeItem(JsonGenerator generator,
+            Map<String, AttributeValue> item) throws IOException {
+        writeAttributes(generator, item);
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Reads the next item.
+     *
+     * @return the item, or null at the end of the input
+     * @throws IOException
+     *             if the input is not DynamoDB JSON.
+     */
+    public static Map<String, AttributeValue> readItem(JsonParser parser)
+            throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        return readItemAtCurrentToken(parser);
+    }
+
+    /**
+     * Reads the item starting at the current token of the parser.
+     *
+     * @throws IOException
+     *             if the input is not DynamoDB JSON.
+     */
+    public static Map<String, AttributeValue> readItemAtCurrentToken(
+            JsonParser parser) throws IOException {
+        expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            if (item.isEmpty() && ITEM_WRAPPER.equals(name)) {
+                // a wrapped item holds attributes, whose values are objects,
+                // while a key attribute named Item holds a scalar value
+                if (parser.nextToken() != JsonToken.FIELD_NAME) {
+                    skipToEndOfObject(parser);
+                    return item;
+                }
+                String field = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_OBJECT) {
+                    item.put(field, readValueAtCurrentToken(parser));
+                    readAttributes(parser, item);
+                    skipToEndOfObject(parser);
+                    return item;
+                }
+                item.put(name, readTypedValue(parser, field));
+                skipToEndOfObject(parser);
+                continue;
+            }
+            item.put(name, readValueAtCurrentToken(parser));
+        }
+        return item;
+    }
+
+    private static void writeAttributes(JsonGenerator generator,
+            Map<String, AttributeValue> attributes) throws IOException {
+        generator.writeStartObject();
+        for (Map.Entry<String, AttributeValue> entry : attributes.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            writeValue(generator, entry.getValue());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeValue(JsonGenerator generator,
+            AttributeValue value) throws IOException {
+        generator.writeStartObject();
+        if (value.getS() != null) {
+            generator.writeStringField("S", value.getS());
+        } else if (value.getN() != null) {
+            generator.writeStringField("N", value.getN());
+        } else if (value.getB() != null) {
+            generator.writeFieldName("B");
+            writeBinary(generator, value.getB());
+        } else if (value.getSS() != null) {
+            generator.writeArrayFieldStart("SS");
+            for (String s : value.getSS()) {
+                generator.writeString(s);
+            }
+            generator.writeEndArray();
+        } else if (value.getNS() != null) {
+            generator.writeArrayFieldStart("NS");
+            for (String n : value.getNS()) {
+                generator.writeString(n);
+            }
+            generator.writeEndArray();
+        } else if (value.getBS() != null) {
+            generator.writeArrayFieldStart("BS");
+            for (ByteBuffer b : value.getBS()) {
+                writeBinary(generator, b);
+            }
+            generator.writeEndArray();
+        } else if (value.getM() != null) {
+            generator.writeFieldName("M");
+            writeAttributes(generator, value.getM());
+        } else if (value.getL() != null) {
+            generator.writeArrayFieldStart("L");
+            for (AttributeValue element : value.getL()) {
+                writeValue(generator, element);
+            }
+            generator.writeEndArray();
+        } else if (value.getBOOL() != null) {
+            generator.writeBooleanField("BOOL", value.getBOOL());
+        } else {
+            generator.writeBooleanField("NULL", true);
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeBinary(JsonGenerator generator, ByteBuffer b)
+            throws IOException {
+        if (b.hasArray()) {
+            generator.writeBinary(b.array(), b.arrayOffset() + b.position(),
+                    b.remaining());
+        } else {
+            byte[] bytes = new byte[b.remaining()];
+            b.duplicate().get(bytes);
+            generator.writeBinary(bytes);
+        }
+    }
+
+    /**
+     * Reads attributes into the map until the end of the current object.
+     */
+    private static void readAttributes(JsonParser parser,
+            Map<String, AttributeValue> attributes) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            attributes.put(name, readValueAtCurrentToken(parser));
+        }
+    }
+
+    /**
+     * Reads the value object starting at the current token.
+     */
+    private static AttributeValue readValueAtCurrentToken(JsonParser parser)
+            throws IOException {
+        expect(parser, parser.nextToken(), JsonToken.FIELD_NAME);
+        String type = parser.getCurrentName();
+        parser.nextToken();
+        AttributeValue value = readTypedValue(parser, type);
+        skipToEndOfObject(parser);
+        return value;
+    }
+
+    /**
+     * Reads the payload at the current token as a value of the given type.
+     */
+    private static AttributeValue readTypedValue(JsonParser parser,
+            String type) throws IOException {
+        switch (type.toUpperCase(Locale.ROOT)) {
+        case "S":
+            return new AttributeValue().withS(parser.getText());
+        case "N":
+            return new AttributeValue().withN(parser.getText());
+        case "B":
+            return new AttributeValue().withB(ByteBuffer.wrap(parser
+                    .getBinaryValue()));
+        case "SS":
+            return new AttributeValue().withSS(readStrings(parser));
+        case "NS":
+            return new AttributeValue().withNS(readStrings(parser));
+        case "BS":
+            expect(parser, parser.getCurrentToken(), JsonToken.START_ARRAY);
+            List<ByteBuffer> bs = new ArrayList<ByteBuffer>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                bs.add(ByteBuffer.wrap(parser.getBinaryValue()));
+            }
+            return new AttributeValue().withBS(bs);
+        case "M":
+            expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+            Map<String, AttributeValue> m = new HashMap<String, AttributeValue>();
+            readAttributes(parser, m);
+            return new AttributeValue().withM(m);
+        case "L":
+            expect(parser, parser.getCurrentToken(), JsonToken.START_ARRAY);
+            List<AttributeValue> l = new ArrayList<AttributeValue>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+                l.add(readValueAtCurrentToken(parser));
+            }
+            return new AttributeValue().withL(l);
+        case "BOOL":
+            return new AttributeValue().withBOOL(parser.getValueAsBoolean());
+        case "NULL":
+        case "NULLVALUE":
+            return new AttributeValue().withNULL(true);
+        default:
+            throw new JsonParseException("Unknown attribute type " + type,
+                    parser.getCurrentLocation());
+        }
+    }
+
+    private static List<String> readStrings(JsonParser parser)
+            throws IOException {
+        expect(parser, parser.getCurrentToken(), JsonToken.START_ARRAY);
+        List<String> strings = new ArrayList<String>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            strings.add(parser.getText());
+        }
+        return strings;
+    }
+
+    /**
+     * Skips the fields left in the current object, such as the null fields
+     * of the other types some exports write.
+     */
+    private static void skipToEndOfObject(JsonParser parser)
+            throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            parser.skipChildren();
+        }
+        expect(parser, parser.getCurrentToken(), JsonToken.END_OBJECT);
+    }
+
+    private static void expect(JsonParser parser, JsonToken token,
+            JsonToken expected) throws JsonParseException {
+        if (token != expected) {
+            throw new JsonParseException("Expected " + expected + " but found "
+                    + token, parser.getCurrentLocation());
+        }
+    }
+}
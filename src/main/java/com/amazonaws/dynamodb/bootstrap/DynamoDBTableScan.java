@@ -14,8 +14,13 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
 import com.google.common.util.concurrent.RateLimiter;
@@ -27,15 +32,33 @@ public class DynamoDBTableScan {
 
     private final RateLimiter rateLimiter;
     private final AmazonDynamoDBClient client;
+    private SegmentPriority segmentPriority = SegmentPriority.COMPLETION;
 
     /**
      * Initializes the RateLimiter and sets the AmazonDynamoDBClient.
      */
     public DynamoDBTableScan(double rateLimit, AmazonDynamoDBClient client) {
-        rateLimiter = RateLimiter.create(rateLimit);
+        this(RateLimiter.create(rateLimit), client);
+    }
+
+    /**
+     * Scans at the rate of the given rate limiter, whose rate may change while
+     * scanning.
+     */
+    public DynamoDBTableScan(RateLimiter rateLimiter,
+            AmazonDynamoDBClient client) {
+        this.rateLimiter = rateLimiter;
         this.client = client;
     }
 
+    /**
+     * Sets the order in which the asynchronous scans send the next request of
+     * the segments waiting for a free in flight slot.
+     */
+    public void setSegmentPriority(SegmentPriority segmentPriority) {
+        this.segmentPriority = segmentPriority;
+    }
+
     /**
      * This function copies a scan request for the number of segments and then
      * adds those workers to the executor service to begin scanning.
@@ -49,27 +72,225 @@ public class DynamoDBTableScan {
     public ParallelScanExecutor getParallelScanCompletionService(
             ScanRequest initialRequest, int numSegments, Executor executor,
             int section, int totalSections) {
-        final int segments = Math.max(1, numSegments);
+        return getParallelScanCompletionService(initialRequest, numSegments,
+                executor, section, totalSections, false);
+    }
+
+    /**
+     * This function copies a scan request for the number of segments and then
+     * adds those workers to the executor service to begin scanning. If
+     * splitSegments is true, the segments still being scanned near the end of
+     * the scan are split so the remaining work is spread over more workers.
+     * 
+     * @return <ParallelScanExecutor> the parallel scan executor to grab results
+     *         when a segment is finished.
+     */
+    public ParallelScanExecutor getParallelScanCompletionService(
+            ScanRequest initialRequest, int numSegments, Executor executor,
+            int section, int totalSections, boolean splitSegments) {
+        return getParallelScanCompletionService(
+                getSegmentRequests(initialRequest, numSegments, section,
+                        totalSections), executor, splitSegments);
+    }
+
+    /**
+     * Adds a worker for each of the segment scan requests to the executor
+     * service to begin scanning. The requests may start at an exclusive start
+     * key, for instance to resume a scan from a checkpoint.
+     * 
+     * @return <ParallelScanExecutor> the parallel scan executor to grab results
+     *         when a segment is finished.
+     */
+    public ParallelScanExecutor getParallelScanCompletionService(
+            List<ScanRequest> segmentRequests, Executor executor,
+            boolean splitSegments) {
+        return getParallelScanCompletionService(segmentRequests, executor,
+                splitSegments, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds a worker for each of the segment scan requests to the executor
+     * service. If claims is not null, the segments are scanned in the order
+     * of the requests, at most maxActiveSegments at a time, and only if they
+     * can be claimed from the other sections.
+     * 
+     * @return <ParallelScanExecutor> the parallel scan executor to grab results
+     *         when a segment is finished.
+     */
+    public ParallelScanExecutor getParallelScanCompletionService(
+            List<ScanRequest> segmentRequests, Executor executor,
+            boolean splitSegments, SegmentClaims claims, int maxActiveSegments) {
+        final int segments = segmentRequests.size();
         final ParallelScanExecutor completion = new ParallelScanExecutor(
                 executor, segments);
 
-        int sectionSize = segments / totalSections;
-        int start = sectionSize * section;
-        int end = start + sectionSize;
-        if (section + 1 == totalSections) {
-            end = segments;
+        if (claims != null) {
+            completion.setSegmentClaims(claims, maxActiveSegments);
+        }
+        for (int segment = 0; segment < segments; segment++) {
+            ScanSegmentWorker worker = new ScanSegmentWorker(this.client,
+                    this.rateLimiter, segmentRequests.get(segment));
+            if (claims != null) {
+                completion.addPendingWorker(worker, segment);
+            } else {
+                completion.addWorker(worker, segment);
+            }
+        }
+        if (claims != null) {
+            completion.startPendingSegments();
         }
 
-        for (int segment = start; segment < end; segment++) {
-            ScanRequest scanSegment = copyScanRequest(initialRequest)
-                    .withTotalSegments(segments).withSegment(segment);
-            completion.addWorker(new ScanSegmentWorker(this.client,
-                    this.rateLimiter, scanSegment), segment);
+        if (splitSegments) {
+            completion.enableSegmentSplitting(SegmentPlanner
+                    .getSplitThreshold(Math.min(segments, maxActiveSegments)));
+        }
+        return completion;
+    }
+
+    /**
+     * This function copies a scan request for the number of segments and then
+     * starts scanning them with asynchronous requests, keeping at most
+     * maxInFlight requests outstanding. Requires an asynchronous client.
+     * 
+     * @return <AsyncParallelScanExecutor> the parallel scan executor to grab
+     *         results when a page is available.
+     */
+    public AsyncParallelScanExecutor getAsyncParallelScanCompletionService(
+            ScanRequest initialRequest, int numSegments,
+            ScheduledExecutorService scheduler, int maxInFlight, int section,
+            int totalSections) {
+        return getAsyncParallelScanCompletionService(
+                getSegmentRequests(initialRequest, numSegments, section,
+                        totalSections), scheduler, maxInFlight);
+    }
+
+    /**
+     * Starts scanning each of the segment scan requests with asynchronous
+     * requests, keeping at most maxInFlight requests outstanding. Requires an
+     * asynchronous client.
+     * 
+     * @return <AsyncParallelScanExecutor> the parallel scan executor to grab
+     *         results when a page is available.
+     */
+    public AsyncParallelScanExecutor getAsyncParallelScanCompletionService(
+            List<ScanRequest> segmentRequests,
+            ScheduledExecutorService scheduler, int maxInFlight) {
+        return getAsyncParallelScanCompletionService(segmentRequests,
+                scheduler, maxInFlight, null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Starts scanning each of the segment scan requests with asynchronous
+     * requests, keeping at most maxInFlight requests outstanding. If claims is
+     * not null, the segments are scanned in the order of the requests, at
+     * most maxActiveSegments at a time, and only if they can be claimed from
+     * the other sections. Requires an asynchronous client.
+     * 
+     * @return <AsyncParallelScanExecutor> the parallel scan executor to grab
+     *         results when a page is available.
+     */
+    public AsyncParallelScanExecutor getAsyncParallelScanCompletionService(
+            List<ScanRequest> segmentRequests,
+            ScheduledExecutorService scheduler, int maxInFlight,
+            SegmentClaims claims, int maxActiveSegments) {
+        if (!(client instanceof AmazonDynamoDBAsync)) {
+            throw new IllegalStateException(
+                    "An asynchronous scan requires an AmazonDynamoDBAsync client");
+        }
+        final AmazonDynamoDBAsync asyncClient = (AmazonDynamoDBAsync) client;
+        final NonBlockingRateLimiter nonBlockingRateLimiter = new NonBlockingRateLimiter(
+                rateLimiter, scheduler,
+                PipelineMetrics.READ_RATE_LIMITER_WAIT_TIME);
+        final int segments = segmentRequests.size();
+        final AsyncParallelScanExecutor completion = new AsyncParallelScanExecutor(
+                segments, maxInFlight);
+        completion.setSegmentPriority(segmentPriority);
+
+        if (claims != null) {
+            completion.setSegmentClaims(claims, maxActiveSegments);
+        }
+        for (int segment = 0; segment < segments; segment++) {
+            AsyncScanSegmentWorker worker = new AsyncScanSegmentWorker(
+                    asyncClient, nonBlockingRateLimiter, scheduler,
+                    segmentRequests.get(segment));
+            if (claims != null) {
+                completion.addPendingWorker(worker, segment);
+            } else {
+                completion.addWorker(worker, segment);
+            }
+        }
+        if (claims != null) {
+            completion.startPendingSegments();
         }
 
         return completion;
     }
 
+    /**
+     * Copies a scan request for each of the segments scanned by the given
+     * section.
+     */
+    public List<ScanRequest> getSegmentRequests(ScanRequest initialRequest,
+            int numSegments, int section, int totalSections) {
+        final int segments = Math.max(1, numSegments);
+        int start = getSectionStart(segments, section, totalSections);
+        int end = getSectionEnd(segments, section, totalSections);
+        List<ScanRequest> segmentRequests = new ArrayList<ScanRequest>(end
+                - start);
+        for (int segment = start; segment < end; segment++) {
+            segmentRequests.add(copyScanRequest(initialRequest)
+                    .withTotalSegments(segments).withSegment(segment));
+        }
+        return segmentRequests;
+    }
+
+    /**
+     * Copies a scan request for every segment of the table: the segments of
+     * the given section first, then those of the other sections from the
+     * last one, so that a section taking over segments of the others takes
+     * them from the end of their ranges, away from where they are scanning.
+     */
+    public List<ScanRequest> getAllSegmentRequests(ScanRequest initialRequest,
+            int numSegments, int section, int totalSections) {
+        final int segments = Math.max(1, numSegments);
+        int start = getSectionStart(segments, section, totalSections);
+        int end = getSectionEnd(segments, section, totalSections);
+        List<ScanRequest> segmentRequests = new ArrayList<ScanRequest>(
+                segments);
+        for (int segment = start; segment < end; segment++) {
+            segmentRequests.add(copyScanRequest(initialRequest)
+                    .withTotalSegments(segments).withSegment(segment));
+        }
+        for (int segment = segments - 1; segment >= 0; segment--) {
+            if (segment < start || segment >= end) {
+                segmentRequests.add(copyScanRequest(initialRequest)
+                        .withTotalSegments(segments).withSegment(segment));
+            }
+        }
+        return segmentRequests;
+    }
+
+    /**
+     * Returns the first segment scanned by the given section.
+     */
+    private static int getSectionStart(int segments, int section,
+            int totalSections) {
+        return (segments / totalSections) * section;
+    }
+
+    /**
+     * Returns the segment after the last one scanned by the given section. The
+     * last section also scans the remaining segments.
+     */
+    private static int getSectionEnd(int segments, int section,
+            int totalSections) {
+        if (section + 1 == totalSections) {
+            return segments;
+        }
+        return getSectionStart(segments, section, totalSections)
+                + segments / totalSections;
+    }
+
     public ScanRequest copyScanRequest(ScanRequest request) {
         return new ScanRequest()
                 .withTableName(request.getTableName())
@@ -29,6 +29,22 @@ import com.amazonaws.services.dynamodbv2.model.ScanResult;
  */
 public class ItemSizeCalculator {
 
+    /**
+     * Slots are replaced as a whole, so threads racing on a slot at worst
+     * compute a size again.
+     */
+    private static final NameSize[] NAME_SIZES = new NameSize[BootstrapConstants.NAME_SIZE_CACHE_ENTRIES];
+
+    private static final class NameSize {
+        private final String name;
+        private final int size;
+
+        NameSize(String name, int size) {
+            this.name = name;
+            this.size = size;
+        }
+    }
+
     /**
      * Calculate DynamoDB item size.
      */
@@ -42,7 +58,7 @@ public class ItemSizeCalculator {
         for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
             String name = entry.getKey();
             AttributeValue value = entry.getValue();
-            size += name.getBytes(BootstrapConstants.UTF8).length;
+            size += nameSizeInBytes(name);
             size += calculateAttributeSizeInBytes(value);
         }
         return size;
@@ -57,6 +73,48 @@ public class ItemSizeCalculator {
         return totalBytes;
     }
 
+    /**
+     * returns the size of an attribute name. Names repeat in every item of a
+     * table, so their sizes are kept in a table of NAME_SIZE_CACHE_ENTRIES
+     * slots indexed by the hash of the name.
+     */
+    private static int nameSizeInBytes(String name) {
+        int slot = name.hashCode() & (BootstrapConstants.NAME_SIZE_CACHE_ENTRIES - 1);
+        NameSize cached = NAME_SIZES[slot];
+        if (cached != null && cached.name.equals(name)) {
+            return cached.size;
+        }
+        int size = utf8Length(name);
+        NAME_SIZES[slot] = new NameSize(name, size);
+        return size;
+    }
+
+    /**
+     * returns the number of bytes of the UTF-8 encoding of s, without
+     * encoding it. Unpaired surrogates count as the one byte replacement
+     * character String.getBytes writes for them.
+     */
+    static int utf8Length(String s) {
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                continue;
+            } else if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                // 4 bytes for the two chars of the pair
+                bytes += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
     /** Calculate attribute value size */
     private static int calculateAttributeSizeInBytes(AttributeValue value) {
         int attrValSize = 0;
@@ -69,7 +127,7 @@ public class ItemSizeCalculator {
             attrValSize += b.remaining();
         } else if (value.getS() != null) {
             String s = value.getS();
-            attrValSize += s.getBytes(BootstrapConstants.UTF8).length;
+            attrValSize += utf8Length(s);
         } else if (value.getN() != null) {
             attrValSize += BootstrapConstants.MAX_NUMBER_OF_BYTES_FOR_NUMBER;
         } else if (value.getBS() != null) {
@@ -83,7 +141,7 @@ public class ItemSizeCalculator {
             List<String> ss = value.getSS();
             for (String s : ss) {
                 if (s != null) {
-                    attrValSize += s.getBytes(BootstrapConstants.UTF8).length;
+                    attrValSize += utf8Length(s);
                 }
             }
         } else if (value.getNS() != null) {
@@ -100,14 +158,14 @@ public class ItemSizeCalculator {
         } else if (value.getM() != null) {
             for (Map.Entry<String, AttributeValue> entry : value.getM()
                     .entrySet()) {
-                attrValSize += entry.getKey().getBytes(BootstrapConstants.UTF8).length;
+                attrValSize += nameSizeInBytes(entry.getKey());
                 attrValSize += calculateAttributeSizeInBytes(entry.getValue());
                 attrValSize += BootstrapConstants.BASE_LOGICAL_SIZE_OF_NESTED_TYPES;
             }
             attrValSize += BootstrapConstants.LOGICAL_SIZE_OF_EMPTY_DOCUMENT;
         } else if (value.getL() != null) {
             List<AttributeValue> list = value.getL();
-            for (Integer i = 0; i < list.size(); i++) {
+            for (int i = 0; i < list.size(); i++) {
                 attrValSize += calculateAttributeSizeInBytes(list.get(i));
                 attrValSize += BootstrapConstants.BASE_LOGICAL_SIZE_OF_NESTED_TYPES;
             }
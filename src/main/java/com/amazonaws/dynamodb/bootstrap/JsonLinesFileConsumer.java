@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+/**
+ * Takes in SegmentedScanResults and writes their items to local files as
+ * DynamoDB JSON, one item per line, optionally compressed. Every segment is
+ * written to its own files, so threads writing pages of different segments
+ * never wait for each other. A file is closed and the next part of the
+ * segment started once maxFileBytes of JSON are written to it.
+ */
+public class JsonLinesFileConsumer extends AbstractLogConsumer {
+
+    /**
+     * Logger for the JsonLinesFileConsumer.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(JsonLinesFileConsumer.class);
+
+    private final File directory;
+    private final String compression;
+    private final long maxFileBytes;
+    private final ConcurrentMap<String, SegmentFile> files;
+
+    /**
+     * Class to consume logs and write them to files in the given directory,
+     * rolling to a new file every EXPORT_MAX_FILE_BYTES bytes of JSON.
+     *
+     * @param compression
+     *            one of COMPRESSION_NONE, COMPRESSION_GZIP and
+     *            COMPRESSION_ZSTD
+     */
+    public JsonLinesFileConsumer(File directory, String compression,
+            ExecutorService exec) {
+        this(directory, compression, BootstrapConstants.EXPORT_MAX_FILE_BYTES,
+                exec);
+    }
+
+    public JsonLinesFileConsumer(File directory, String compression,
+            long maxFileBytes, ExecutorService exec) {
+        Compression.checkAvailable(compression);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the directory "
+                    + directory);
+        }
+        this.directory = directory;
+        this.compression = compression;
+        this.maxFileBytes = maxFileBytes;
+        this.files = new ConcurrentHashMap<String, SegmentFile>();
+        super.threadPool = exec;
+    }
+
+    /**
+     * Encodes the items of the result on the writing thread, then appends
+     * them to the current file of the result's segment.
+     */
+    @Override
+    public ListenableFuture<Void> writeResult(final SegmentedScanResult result) {
+        ListenableFutureTask<Void> write = ListenableFutureTask
+                .create(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        ByteArrayOutputStream lines = new ByteArrayOutputStream(
+                                (int) BootstrapConstants.MAX_SCAN_PAGE_SIZE_BYTES);
+                        JsonGenerator generator = DynamoDBJsonFormat.FACTORY
+                                .createGenerator(lines);
+                        for (Map<String, AttributeValue> item : result
+                                .getScanResult().getItems()) {
+                            DynamoDBJsonFormat.writeItem(generator, item);
+                        }
+                        generator.close();
+                        getSegmentFile(result).write(lines);
+                        return null;
+                    }
+                });
+        try {
+            threadPool.execute(write);
+        } catch (NullPointerException npe) {
+            throw new NullPointerException(
+                    "Thread pool not initialized for JsonLinesFileConsumer");
+        }
+        return write;
+    }
+
+    /**
+     * Waits for the pages being written, then closes every file.
+     */
+    @Override
+    public void shutdown(boolean awaitTermination) {
+        super.shutdown(awaitTermination);
+        for (SegmentFile file : files.values()) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                LOGGER.error("Could not close " + file.name + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    private SegmentFile getSegmentFile(SegmentedScanResult result) {
+        String name = "segment-" + result.getSegment() + "-"
+                + result.getTotalSegments();
+        SegmentFile file = files.get(name);
+        if (file == null) {
+            SegmentFile created = new SegmentFile(name);
+            file = files.putIfAbsent(name, created);
+            if (file == null) {
+                file = created;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * The files of one segment. Only the current part is open.
+     */
+    private class SegmentFile {
+        private final String name;
+        private int part;
+        private OutputStream out;
+        private long size;
+
+        SegmentFile(String name) {
+            this.name = name;
+            this.part = 0;
+        }
+
+        synchronized void write(ByteArrayOutputStream lines)
+                throws IOException {
+            if (out == null || size >= maxFileBytes) {
+                roll();
+            }
+            lines.writeTo(out);
+            size += lines.size();
+        }
+
+        synchronized void close() throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+        }
+
+        private void roll() throws IOException {
+            close();
+            File file;
+            do {
+                // files of an earlier, resumed export are kept
+                file = new File(directory, name + "-" + part++
+                        + BootstrapConstants.JSON_FILE_EXTENSION
+                        + Compression.getExtension(compression));
+            } while (file.exists());
+            out = Compression.compress(new ForcedFileOutputStream(file),
+                    compression);
+            size = 0;
+        }
+    }
+
+    /**
+     * File stream that forces its content to the disk when closed, after the
+     * compressing stream wrapping it has written everything.
+     */
+    private static class ForcedFileOutputStream extends FileOutputStream {
+        private boolean closed;
+
+        ForcedFileOutputStream(File file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // closing the file descriptor closes this stream again
+            if (!closed) {
+                closed = true;
+                getChannel().force(true);
+            }
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads files of DynamoDB JSON items, one per line, and hands them to a
+ * consumer in pages of about MAX_SCAN_PAGE_SIZE_BYTES of JSON. Uncompressed
+ * files are read in ranges that start after the first new line at or after
+ * the range start and end after the first new line at or after the range end,
+ * so each line is read by exactly one range. Compressed files are read whole.
+ */
+public class JsonLinesFileProvider extends AbstractFileProvider {
+
+    /**
+     * Accepts data files, leaving out hidden files and the manifests and
+     * markers written alongside Data Pipeline and S3 exports.
+     */
+    private static final FileFilter DATA_FILES = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            String name = file.getName();
+            return file.isFile() && !name.startsWith(".")
+                    && !name.startsWith("_") && !name.startsWith("manifest");
+        }
+    };
+
+    /**
+     * Reads the given file, or every data file in the given directory, in
+     * ranges of IMPORT_SPLIT_BYTES. The tasks reading the ranges wait while
+     * the consumer is behind, so the executor must queue the tasks it cannot
+     * run instead of running them on the submitting thread.
+     *
+     * @throws IOException
+     *             if the source does not exist or holds no data files.
+     */
+    public JsonLinesFileProvider(File source, ExecutorService exec)
+            throws IOException {
+        this(source, BootstrapConstants.IMPORT_SPLIT_BYTES, exec);
+    }
+
+    public JsonLinesFileProvider(File source, long splitBytes,
+            ExecutorService exec) throws IOException {
+        super(source, DATA_FILES, splitBytes,
+                BootstrapConstants.IMPORT_QUEUE_PAGES, exec);
+    }
+
+    @Override
+    protected boolean isSplittable(File file) throws IOException {
+        return !Compression.isCompressed(file);
+    }
+
+    @Override
+    protected void readRange(File file, long start, long end, int id)
+            throws IOException, InterruptedException {
+        FileInputStream in = new FileInputStream(file);
+        JsonParser parser;
+        long first;
+        long last;
+        try {
+            FileChannel channel = in.getChannel();
+            first = nextLineStart(channel, start);
+            last = end >= channel.size() ? Long.MAX_VALUE : nextLineStart(
+                    channel, end);
+            channel.position(first);
+            parser = DynamoDBJsonFormat.FACTORY.createParser(Compression
+                    .decompress(in));
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+
+        try {
+            List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+            long pageStart = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                long offset = parser.getTokenLocation().getByteOffset();
+                if (first + offset >= last) {
+                    break;
+                }
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected an item at byte "
+                            + (first + offset) + " but found " + token);
+                }
+                items.add(DynamoDBJsonFormat.readItemAtCurrentToken(parser));
+                if (parser.getCurrentLocation().getByteOffset() - pageStart >= BootstrapConstants.MAX_SCAN_PAGE_SIZE_BYTES) {
+                    emit(items, id);
+                    items = new ArrayList<Map<String, AttributeValue>>();
+                    pageStart = parser.getCurrentLocation().getByteOffset();
+                }
+            }
+            if (!items.isEmpty()) {
+                emit(items, id);
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * returns the position following the first new line at or after
+     * position - 1, which is position itself if a line starts there, or the
+     * size of the file if there is none.
+     */
+    private static long nextLineStart(FileChannel channel, long position)
+            throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long offset = position - 1;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read < 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.metrics.Counter;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Acquires permits from a RateLimiter without blocking the calling thread. If
+ * the permits are not available yet, the acquisition is retried later on a
+ * scheduler, and the task runs as soon as the permits have been acquired.
+ */
+public class NonBlockingRateLimiter {
+
+    private final RateLimiter rateLimiter;
+    private final ScheduledExecutorService scheduler;
+    private final Counter waitTime;
+
+    public NonBlockingRateLimiter(RateLimiter rateLimiter,
+            ScheduledExecutorService scheduler) {
+        this(rateLimiter, scheduler, null);
+    }
+
+    /**
+     * Rate limiter adding the time tasks wait for their permits to waitTime.
+     */
+    public NonBlockingRateLimiter(RateLimiter rateLimiter,
+            ScheduledExecutorService scheduler, Counter waitTime) {
+        this.rateLimiter = rateLimiter;
+        this.scheduler = scheduler;
+        this.waitTime = waitTime;
+    }
+
+    /**
+     * returns the number of permits per second of the rate limiter
+     */
+    public double getRate() {
+        return rateLimiter.getRate();
+    }
+
+    /**
+     * Runs the task once the given number of permits has been acquired. The
+     * task runs on the calling thread if the permits are available right away,
+     * otherwise on the scheduler.
+     */
+    public void acquireAndRun(final int permits, final Runnable task) {
+        acquireAndRun(permits, task, System.nanoTime());
+    }
+
+    private void acquireAndRun(final int permits, final Runnable task,
+            final long start) {
+        if (permits <= 0 || rateLimiter.tryAcquire(permits)) {
+            if (waitTime != null) {
+                waitTime.add(System.nanoTime() - start);
+            }
+            task.run();
+            return;
+        }
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                acquireAndRun(permits, task, start);
+            }
+        }, BootstrapConstants.RATE_LIMITER_POLL_INTERVAL_MILLISECONDS,
+                TimeUnit.MILLISECONDS);
+    }
+}
@@ -14,55 +14,109 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
-import java.util.BitSet;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.Future;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * This class executes multiple scan requests on one segment of a table in
  * series, as a runnable. Instances meant to be used as tasks of the worker
  * thread pool for parallel scans.
  * 
+ * Segments are identified by their number. When segment splitting is enabled,
+ * the halves of a split segment get new numbers after the ones of the initial
+ * segments.
  */
-public class ParallelScanExecutor {
-    private final BitSet finished;
-    private final ScanSegmentWorker[] workers;
-    private final ExecutorCompletionService<SegmentedScanResult> exec;
+public class ParallelScanExecutor extends AbstractParallelScanExecutor {
+    private final Executor executor;
+    private final BlockingQueue<Page> completed;
+    private int nextSegment;
+    private int splitThreshold;
 
     public ParallelScanExecutor(Executor executor, int segments) {
-        this.exec = new ExecutorCompletionService<SegmentedScanResult>(executor);
-        this.finished = new BitSet(segments);
-        this.finished.clear();
-        this.workers = new ScanSegmentWorker[segments];
+        super(segments);
+        this.executor = executor;
+        this.completed = new LinkedBlockingQueue<Page>();
+        this.nextSegment = segments;
+        this.splitThreshold = 0;
     }
 
     /**
-     * Set the segment to finished
+     * One page of a segment. The scan request for the page runs when the page
+     * is run.
      */
-    public void finishSegment(int segment) {
-        synchronized (finished) {
-            if (segment > finished.size()) {
-                throw new IllegalArgumentException(
-                        "Invalid segment passed to finishSegment");
-            }
-            finished.set(segment);
+    private static class Page extends FutureTask<SegmentedScanResult> {
+        private final ScanSegmentWorker worker;
+        private final int segment;
+        private volatile boolean failed;
+        private int items;
+
+        Page(ScanSegmentWorker worker, int segment) {
+            super(worker);
+            this.worker = worker;
+            this.segment = segment;
+            this.failed = false;
+        }
+
+        @Override
+        protected void set(SegmentedScanResult result) {
+            items = result.getScanResult().getItems() == null ? 0 : result
+                    .getScanResult().getItems().size();
+            super.set(result);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            failed = true;
+            super.setException(t);
         }
     }
 
     /**
-     * returns if the scan is finished
+     * Scans pages of a segment. After a page completes, the next page of the
+     * segment is scanned right away on the same thread if the prefetch depth
+     * allows it, so prefetching never waits for a free thread.
      */
-    public boolean finished() {
-        synchronized (finished) {
-            return finished.cardinality() == workers.length;
+    private class PageTask implements Runnable {
+        private final ScanSegmentWorker worker;
+        private final int segment;
+
+        PageTask(ScanSegmentWorker worker, int segment) {
+            this.worker = worker;
+            this.segment = segment;
+        }
+
+        @Override
+        public void run() {
+            SegmentPages segmentPages = getSegmentPages(segment);
+            boolean prefetch;
+            do {
+                Page page = new Page(worker, segment);
+                page.run();
+                prefetch = segmentPages.completed(
+                        !page.failed && worker.hasNext(), prefetchDepth,
+                        page.failed ? 0 : page.items, System.nanoTime());
+                completed.add(page);
+            } while (prefetch);
         }
     }
 
+    /**
+     * Splits the segments still being scanned whenever fewer than
+     * splitThreshold segments remain, so that a few large segments do not
+     * determine how long the scan takes. A segment is split when none of its
+     * pages wait to be grabbed, so the page grabbed last is marked as the last
+     * one of the segment.
+     */
+    public void enableSegmentSplitting(int splitThreshold) {
+        this.splitThreshold = splitThreshold;
+    }
+
     /**
      * This method gets a segmentedScanResult and submits the next scan request
-     * for that segment, if there is one.
+     * for that segment, if there is one and it is not already being scanned.
      * 
      * @return the next available ScanResult
      * @throws ExecutionException
@@ -70,27 +124,60 @@ public class ParallelScanExecutor {
      * @throws InterruptedException
      *             if one of the segment pages was interrupted while executing.
      */
+    @Override
     public SegmentedScanResult grab() throws ExecutionException,
             InterruptedException {
-        Future<SegmentedScanResult> ret = exec.take();
-
-        int segment = ret.get().getSegment();
-        ScanSegmentWorker sw = workers[segment];
+        Page ret = takeCompleted(completed);
+        if (ret == null) {
+            return null;
+        }
+        SegmentedScanResult result = ret.get();
 
-        if (sw.hasNext()) {
-            exec.submit(sw);
-        } else {
-            finishSegment(segment);
+        SegmentPages segmentPages = getSegmentPages(ret.segment);
+        if (segmentPages.grabbed()) {
+            if (getRemainingSegments() < splitThreshold
+                    && !segmentPages.hasCompletedPages()
+                    && SegmentPlanner.canSplit(ret.worker.getTotalSegments())) {
+                // this page is the last one of the segment before the split
+                result.setSplit();
+                segmentPages.retire();
+                for (ScanSegmentWorker half : ret.worker.split()) {
+                    addWorker(half, nextSegment++);
+                }
+            } else {
+                submit(ret.worker, ret.segment);
+            }
+        }
+        if (finishSegment(ret.segment)) {
+            startPendingSegments();
         }
 
-        return ret.get();
+        return result;
     }
 
     /**
-     * adds a worker to the ExecutorCompletionService
+     * adds a worker to the executor and starts scanning its first page
      */
     public void addWorker(ScanSegmentWorker ssw, int segment) {
-        workers[segment] = ssw;
-        exec.submit(ssw);
+        segmentAdded(segment, ssw.getSegment(), ssw.getTotalSegments());
+        submit(ssw, segment);
+    }
+
+    /**
+     * adds a worker to start once it is claimed and fewer segments are being
+     * scanned than allowed
+     */
+    public void addPendingWorker(final ScanSegmentWorker ssw,
+            final int segment) {
+        addPendingSegment(ssw.getSegment(), new Runnable() {
+            @Override
+            public void run() {
+                addWorker(ssw, segment);
+            }
+        });
+    }
+
+    private void submit(ScanSegmentWorker ssw, int segment) {
+        executor.execute(new PageTask(ssw, segment));
     }
 }
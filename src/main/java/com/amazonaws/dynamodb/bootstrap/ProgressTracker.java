@@ -0,0 +1,473 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.metrics.Gauge;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+
+/**
+ * Tracks how far a scan is, per segment and overall, from the item count and
+ * size DynamoDB reports for the table and the pages scanned.
+ *
+ * A segment of N is expected to hold 1/N of the items and bytes of the table,
+ * since items are spread over the segments by the hash of their key. A
+ * segment split in two counts as done with what it scanned, and each half is
+ * expected to hold half of what was left of it. Progress is measured in
+ * bytes, as computed by ItemSizeCalculator, or in items when the table size
+ * is unknown. DynamoDB updates the item count and size of a table about every
+ * six hours, so a segment is never shown as done before its last page.
+ *
+ * Segments resumed from a checkpoint are expected to hold as much as a whole
+ * segment, so the progress of a resumed scan starts lower than it is.
+ */
+public class ProgressTracker {
+
+    /**
+     * Logger for the ProgressTracker.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(ProgressTracker.class);
+
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double BYTES_PER_MEGABYTE = 1024 * 1024;
+    // a running segment that scanned more than expected is shown below done
+    private static final double MAX_RUNNING_FRACTION = 0.99;
+
+    private final long tableItems;
+    private final long tableBytes;
+    private final long startNanos;
+    private final Map<String, SegmentProgress> segments;
+    private long items;
+    private long bytes;
+
+    /**
+     * @param tableItems
+     *            the item count of the table, as described by DynamoDB
+     * @param tableBytes
+     *            the size of the table in bytes, as described by DynamoDB
+     */
+    public ProgressTracker(long tableItems, long tableBytes) {
+        this(tableItems, tableBytes, System.nanoTime());
+    }
+
+    ProgressTracker(long tableItems, long tableBytes, long startNanos) {
+        this.tableItems = tableItems;
+        this.tableBytes = tableBytes;
+        this.startNanos = startNanos;
+        this.segments = new LinkedHashMap<String, SegmentProgress>();
+    }
+
+    /**
+     * Adds the segments of the requests to the segments expected to be
+     * scanned.
+     */
+    public synchronized void expectSegments(List<ScanRequest> requests) {
+        for (ScanRequest request : requests) {
+            getSegment(request.getSegment(), request.getTotalSegments());
+        }
+    }
+
+    /**
+     * Records a scanned page.
+     */
+    public void pageScanned(SegmentedScanResult result) {
+        pageScanned(result, ItemSizeCalculator
+                .calculateScanResultSizeInBytes(result.getScanResult()),
+                System.nanoTime());
+    }
+
+    synchronized void pageScanned(SegmentedScanResult result, long pageBytes,
+            long nanos) {
+        SegmentProgress segment = getSegment(result.getSegment(),
+                result.getTotalSegments());
+        if (segment.done) {
+            return;
+        }
+        int pageItems = result.getScanResult().getItems() == null ? 0
+                : result.getScanResult().getItems().size();
+        if (segment.startNanos == 0) {
+            segment.startNanos = nanos;
+        }
+        segment.lastNanos = nanos;
+        segment.items += pageItems;
+        segment.bytes += pageBytes;
+        items += pageItems;
+        bytes += pageBytes;
+        if (result.isSplit()) {
+            double leftItems = Math.max(0, segment.expectedItems
+                    - segment.items) / 2;
+            double leftBytes = Math.max(0, segment.expectedBytes
+                    - segment.bytes) / 2;
+            for (int half = 0; half < 2; half++) {
+                String key = key(segment.segment * 2 + half,
+                        segment.totalSegments * 2);
+                if (!segments.containsKey(key)) {
+                    segments.put(key, new SegmentProgress(segment.segment * 2
+                            + half, segment.totalSegments * 2, leftItems,
+                            leftBytes));
+                }
+            }
+        }
+        if (result.isLastPage()) {
+            segment.done = true;
+            segment.expectedItems = segment.items;
+            segment.expectedBytes = segment.bytes;
+        }
+    }
+
+    private SegmentProgress getSegment(int segment, int totalSegments) {
+        String key = key(segment, totalSegments);
+        SegmentProgress progress = segments.get(key);
+        if (progress == null) {
+            int total = Math.max(1, totalSegments);
+            progress = new SegmentProgress(segment, totalSegments,
+                    (double) tableItems / total, (double) tableBytes / total);
+            segments.put(key, progress);
+        }
+        return progress;
+    }
+
+    private static String key(int segment, int totalSegments) {
+        return segment + "/" + totalSegments;
+    }
+
+    /**
+     * returns the fraction of the expected segments scanned, between 0 and 1
+     */
+    public synchronized double getFractionComplete() {
+        double expected = 0;
+        double scanned = 0;
+        int done = 0;
+        for (SegmentProgress segment : segments.values()) {
+            expected += segment.getExpected();
+            scanned += segment.getScanned();
+            if (segment.done) {
+                done++;
+            }
+        }
+        if (expected > 0) {
+            return scanned / expected;
+        }
+        return segments.isEmpty() ? 0 : (double) done / segments.size();
+    }
+
+    /**
+     * returns the items scanned per second since the scan started
+     */
+    public synchronized double getItemsPerSecond(long nanos) {
+        return perSecond(items, startNanos, nanos);
+    }
+
+    /**
+     * returns the bytes scanned per second since the scan started
+     */
+    public synchronized double getBytesPerSecond(long nanos) {
+        return perSecond(bytes, startNanos, nanos);
+    }
+
+    /**
+     * returns the seconds left before every expected segment is scanned at
+     * the rate since the scan started, or -1 if the rate is not known yet
+     */
+    public synchronized long getEtaSeconds(long nanos) {
+        double left = 0;
+        for (SegmentProgress segment : segments.values()) {
+            left += segment.getExpected() - segment.getScanned();
+        }
+        return eta(left, perSecond(useBytes() ? bytes : items, startNanos,
+                nanos));
+    }
+
+    /**
+     * returns the progress of every segment, in the order they were first
+     * expected or scanned
+     */
+    public synchronized List<SegmentProgress> getSegments() {
+        List<SegmentProgress> copies = new ArrayList<SegmentProgress>(
+                segments.size());
+        for (SegmentProgress segment : segments.values()) {
+            copies.add(segment.copy());
+        }
+        return copies;
+    }
+
+    /**
+     * returns the segments being scanned that are expected to finish more
+     * than STRAGGLER_ETA_FACTOR times later than the median of them, the
+     * latest first
+     */
+    public synchronized List<SegmentProgress> getStragglers(long nanos) {
+        final Map<SegmentProgress, Long> etas = new LinkedHashMap<SegmentProgress, Long>();
+        for (SegmentProgress segment : segments.values()) {
+            long eta = segment.getEtaSeconds(nanos);
+            if (!segment.done && eta >= 0) {
+                etas.put(segment.copy(), eta);
+            }
+        }
+        if (etas.size() < 2) {
+            return Collections.emptyList();
+        }
+        List<Long> sorted = new ArrayList<Long>(etas.values());
+        Collections.sort(sorted);
+        long median = sorted.get(sorted.size() / 2);
+        List<SegmentProgress> stragglers = new ArrayList<SegmentProgress>();
+        for (Map.Entry<SegmentProgress, Long> entry : etas.entrySet()) {
+            if (entry.getValue() > median
+                    * BootstrapConstants.STRAGGLER_ETA_FACTOR) {
+                stragglers.add(entry.getKey());
+            }
+        }
+        Collections.sort(stragglers, new Comparator<SegmentProgress>() {
+            @Override
+            public int compare(SegmentProgress a, SegmentProgress b) {
+                return etas.get(b).compareTo(etas.get(a));
+            }
+        });
+        return stragglers;
+    }
+
+    /**
+     * returns a one line summary of the progress: the fraction scanned, the
+     * rates, the time left and the straggling segments
+     */
+    public synchronized String report(long nanos) {
+        int done = 0;
+        for (SegmentProgress segment : segments.values()) {
+            if (segment.done) {
+                done++;
+            }
+        }
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(
+                "Scanned %.1f%% of %d items / %.1f MB: %d items, %.1f MB, %.0f items/s, %.2f MB/s, ETA %s; %d of %d segments done",
+                getFractionComplete() * 100, tableItems, tableBytes
+                        / BYTES_PER_MEGABYTE, items, bytes
+                        / BYTES_PER_MEGABYTE, getItemsPerSecond(nanos),
+                getBytesPerSecond(nanos) / BYTES_PER_MEGABYTE,
+                formatSeconds(getEtaSeconds(nanos)), done, segments.size()));
+        List<SegmentProgress> stragglers = getStragglers(nanos);
+        if (!stragglers.isEmpty()) {
+            report.append("; stragglers:");
+            for (int i = 0; i < Math.min(stragglers.size(),
+                    BootstrapConstants.MAX_REPORTED_STRAGGLERS); i++) {
+                report.append(i == 0 ? " " : ", ").append(
+                        stragglers.get(i).report(nanos));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Logs the progress every PROGRESS_REPORT_INTERVAL_MILLISECONDS, with the
+     * progress of every segment at debug level, and reports the fraction
+     * scanned and the time left as metrics.
+     *
+     * @return the future of the reports, to cancel them
+     */
+    public ScheduledFuture<?> start(ScheduledExecutorService scheduler) {
+        PipelineMetrics.REGISTRY.register(new Gauge(
+                "ddb_bootstrap_scan_progress_ratio",
+                "Fraction of the expected segments scanned") {
+            @Override
+            public double getValue() {
+                return getFractionComplete();
+            }
+        });
+        PipelineMetrics.REGISTRY.register(new Gauge(
+                "ddb_bootstrap_scan_eta_seconds",
+                "Seconds left before the scan is done, -1 if not known yet") {
+            @Override
+            public double getValue() {
+                return getEtaSeconds(System.nanoTime());
+            }
+        });
+        return scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                log();
+            }
+        }, BootstrapConstants.PROGRESS_REPORT_INTERVAL_MILLISECONDS,
+                BootstrapConstants.PROGRESS_REPORT_INTERVAL_MILLISECONDS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Logs the progress now.
+     */
+    public void log() {
+        long nanos = System.nanoTime();
+        LOGGER.info(report(nanos));
+        if (LOGGER.isDebugEnabled()) {
+            for (SegmentProgress segment : getSegments()) {
+                LOGGER.debug(segment.report(nanos));
+            }
+        }
+    }
+
+    private boolean useBytes() {
+        return tableBytes > 0 || tableItems == 0;
+    }
+
+    private static double perSecond(double amount, long fromNanos,
+            long toNanos) {
+        return toNanos > fromNanos ? amount * NANOS_PER_SECOND
+                / (toNanos - fromNanos) : 0;
+    }
+
+    private static long eta(double left, double perSecond) {
+        if (left <= 0) {
+            return 0;
+        }
+        return perSecond > 0 ? (long) Math.ceil(left / perSecond) : -1;
+    }
+
+    static String formatSeconds(long seconds) {
+        if (seconds < 0) {
+            return "unknown";
+        }
+        return String.format("%dh%02dm%02ds", seconds / 3600,
+                seconds / 60 % 60, seconds % 60);
+    }
+
+    /**
+     * The progress of a segment.
+     */
+    public class SegmentProgress {
+        private final int segment;
+        private final int totalSegments;
+        private double expectedItems;
+        private double expectedBytes;
+        private long items;
+        private long bytes;
+        private long startNanos;
+        private long lastNanos;
+        private boolean done;
+
+        SegmentProgress(int segment, int totalSegments, double expectedItems,
+                double expectedBytes) {
+            this.segment = segment;
+            this.totalSegments = totalSegments;
+            this.expectedItems = expectedItems;
+            this.expectedBytes = expectedBytes;
+        }
+
+        SegmentProgress copy() {
+            SegmentProgress copy = new SegmentProgress(segment, totalSegments,
+                    expectedItems, expectedBytes);
+            copy.items = items;
+            copy.bytes = bytes;
+            copy.startNanos = startNanos;
+            copy.lastNanos = lastNanos;
+            copy.done = done;
+            return copy;
+        }
+
+        public int getSegment() {
+            return segment;
+        }
+
+        public int getTotalSegments() {
+            return totalSegments;
+        }
+
+        public long getItems() {
+            return items;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        double getExpected() {
+            return useBytes() ? expectedBytes : expectedItems;
+        }
+
+        double getScanned() {
+            if (done) {
+                return getExpected();
+            }
+            return Math.min(useBytes() ? bytes : items, getExpected()
+                    * MAX_RUNNING_FRACTION);
+        }
+
+        /**
+         * returns the fraction of the segment scanned, between 0 and 1
+         */
+        public double getFractionComplete() {
+            if (done) {
+                return 1;
+            }
+            double expected = getExpected();
+            return expected > 0 ? getScanned() / expected : 0;
+        }
+
+        /**
+         * returns the items scanned per second since the segment started
+         */
+        public double getItemsPerSecond(long nanos) {
+            return startNanos == 0 ? 0 : perSecond(items, startNanos,
+                    done ? lastNanos : nanos);
+        }
+
+        /**
+         * returns the bytes scanned per second since the segment started
+         */
+        public double getBytesPerSecond(long nanos) {
+            return startNanos == 0 ? 0 : perSecond(bytes, startNanos,
+                    done ? lastNanos : nanos);
+        }
+
+        /**
+         * returns the seconds left before the segment is scanned, or -1 if
+         * it has not started or its rate is not known yet
+         */
+        public long getEtaSeconds(long nanos) {
+            if (done) {
+                return 0;
+            }
+            return eta(getExpected() - getScanned(),
+                    useBytes() ? getBytesPerSecond(nanos)
+                            : getItemsPerSecond(nanos));
+        }
+
+        String report(long nanos) {
+            return String.format(
+                    "segment %d/%d %.1f%% %.0f items/s %.2f MB/s ETA %s",
+                    segment, totalSegments, getFractionComplete() * 100,
+                    getItemsPerSecond(nanos), getBytesPerSecond(nanos)
+                            / BYTES_PER_MEGABYTE,
+                    formatSeconds(getEtaSeconds(nanos)));
+        }
+    }
+}
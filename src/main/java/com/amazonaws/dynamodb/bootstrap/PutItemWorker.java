@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Callable class that is used to write a single large item to DynamoDB with
+ * PutItem, so that if DynamoDB rejects it only this item fails.
+ */
+public class PutItemWorker implements Callable<Void> {
+
+    private final AmazonDynamoDBClient client;
+    private final RateLimiter rateLimiter;
+    private final String tableName;
+    private final Map<String, AttributeValue> item;
+    private final DeadLetterFile deadLetters;
+
+    public PutItemWorker(Map<String, AttributeValue> item,
+            AmazonDynamoDBClient client, RateLimiter rateLimiter,
+            String tableName) {
+        this(item, client, rateLimiter, tableName, null);
+    }
+
+    /**
+     * Worker that writes the item to deadLetters if it cannot be put, instead
+     * of failing.
+     */
+    public PutItemWorker(Map<String, AttributeValue> item,
+            AmazonDynamoDBClient client, RateLimiter rateLimiter,
+            String tableName, DeadLetterFile deadLetters) {
+        this.item = item;
+        this.client = client;
+        this.rateLimiter = rateLimiter;
+        this.tableName = tableName;
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * Puts the item, retrying the requests that failed with a retryable
+     * exception after a back off with jitter, and THEN acquires permits equal
+     * to the consumed capacity of the write. An item still not written after
+     * MAX_RETRIES retries, or rejected by DynamoDB, goes to the dead letter
+     * file.
+     *
+     * @throws IOException
+     *             if the item could not be written to the dead letter file.
+     */
+    @Override
+    public Void call() throws IOException {
+        ConsumedCapacity consumed = null;
+        long backoff = 0;
+        boolean interrupted = false;
+        try {
+            for (int retries = 0;; retries++) {
+                PipelineMetrics.PUT_ITEMS.increment();
+                long start = System.nanoTime();
+                AmazonClientException failure;
+                try {
+                    consumed = client.putItem(
+                            new PutItemRequest().withTableName(tableName)
+                                    .withItem(item).withReturnConsumedCapacity(
+                                            ReturnConsumedCapacity.TOTAL))
+                            .getConsumedCapacity();
+                    PipelineMetrics.WRITE_LATENCY.record(System.nanoTime()
+                            - start);
+                    PipelineMetrics.WRITTEN_ITEMS.increment();
+                    break;
+                } catch (AmazonClientException e) {
+                    PipelineMetrics.WRITE_LATENCY.record(System.nanoTime()
+                            - start);
+                    failure = e;
+                }
+                if (!WriteRetryPolicy.isRetryable(failure)) {
+                    fail(failure);
+                    return null;
+                }
+                if (retries == BootstrapConstants.MAX_RETRIES) {
+                    fail(new AmazonClientException("Not written after "
+                            + retries + " retries, last "
+                            + failure.getMessage(), failure));
+                    return null;
+                }
+                backoff = WriteRetryPolicy.nextBackoff(backoff);
+                PipelineMetrics.WRITE_BACKOFF_TIME.add(TimeUnit.MILLISECONDS
+                        .toNanos(backoff));
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (consumed != null && consumed.getCapacityUnits() != null
+                && consumed.getCapacityUnits() >= 1) {
+            PipelineMetrics.WRITE_RATE_LIMITER_WAIT_TIME.add(PipelineMetrics
+                    .toNanos(rateLimiter.acquire(consumed.getCapacityUnits()
+                            .intValue())));
+        }
+        return null;
+    }
+
+    /**
+     * Sends the item to the dead letter file, or throws the exception if
+     * there is none.
+     */
+    private void fail(AmazonClientException e) throws IOException {
+        if (deadLetters == null) {
+            throw e;
+        }
+        deadLetters.write(Collections.singletonList(item), e.getMessage());
+    }
+}
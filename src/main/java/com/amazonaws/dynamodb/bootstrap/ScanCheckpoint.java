@@ -0,0 +1,345 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Records how far each segment of a scan has been written, so that a failed
+ * copy can resume where it stopped. The position of a segment only advances
+ * once every page of the segment up to that position has been written. The
+ * positions are appended to a file as JSON lines, one per segment that
+ * advanced, at most every CHECKPOINT_INTERVAL_MILLISECONDS, and the file is
+ * synced to disk after each append. The last line of a segment wins when the
+ * file is read back.
+ */
+public class ScanCheckpoint {
+
+    /**
+     * Logger for the ScanCheckpoint.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(ScanCheckpoint.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static {
+        MAPPER.setSerializationInclusion(Include.NON_NULL);
+        MAPPER.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES,
+                false);
+        MAPPER.addMixIn(AttributeValue.class,
+                AttributeValueMixIn.class);
+    }
+
+    private final FileOutputStream out;
+    private final FileChannel channel;
+    private final Map<String, SegmentProgress> progress;
+    private final Map<String, Record> unsaved;
+    private long lastSaved;
+
+    /**
+     * Opens the checkpoint file for appending and records the number of
+     * segments the scan started with.
+     *
+     * @throws IOException
+     *             if the file cannot be opened or written.
+     */
+    public ScanCheckpoint(File file, int numSegments) throws IOException {
+        this.out = new FileOutputStream(file, true);
+        this.channel = out.getChannel();
+        this.progress = new HashMap<String, SegmentProgress>();
+        this.unsaved = new LinkedHashMap<String, Record>();
+        Record header = new Record();
+        header.numSegments = numSegments;
+        append(header);
+        channel.force(false);
+        this.lastSaved = System.currentTimeMillis();
+    }
+
+    /**
+     * A line of the checkpoint file. Either the number of segments the scan
+     * started with, or the position of a segment.
+     */
+    static class Record {
+        public Integer numSegments;
+        public Integer segment;
+        public Integer totalSegments;
+        public boolean done;
+        public Map<String, AttributeValue> lastEvaluatedKey;
+    }
+
+    /**
+     * A page handed to the consumer, to pass to pageWritten once written.
+     */
+    public static class Page {
+        private final String key;
+        private final long number;
+        private final Record record;
+        private final boolean split;
+
+        private Page(String key, long number, Record record, boolean split) {
+            this.key = key;
+            this.number = number;
+            this.record = record;
+            this.split = split;
+        }
+    }
+
+    /**
+     * Pages of a segment handed to the consumer, and the pages written after
+     * a page that is not written yet.
+     */
+    private static class SegmentProgress {
+        private long grabbed = 0;
+        private long written = 0;
+        private final TreeMap<Long, Page> writtenAhead = new TreeMap<Long, Page>();
+    }
+
+    /**
+     * Records that a page is handed to the consumer. Pages of a segment must
+     * be handed over in the order they were scanned.
+     */
+    public synchronized Page pageGrabbed(SegmentedScanResult result) {
+        String key = key(result.getSegment(), result.getTotalSegments());
+        SegmentProgress segmentProgress = progress.get(key);
+        if (segmentProgress == null) {
+            segmentProgress = new SegmentProgress();
+            progress.put(key, segmentProgress);
+        }
+        Record record = new Record();
+        record.segment = result.getSegment();
+        record.totalSegments = result.getTotalSegments();
+        record.done = result.isLastPage();
+        if (!result.isLastPage() || result.isSplit()) {
+            record.lastEvaluatedKey = result.getScanResult()
+                    .getLastEvaluatedKey();
+        }
+        return new Page(key, segmentProgress.grabbed++, record,
+                result.isSplit());
+    }
+
+    /**
+     * Records that every item of a page was written. Advances the position of
+     * the segment if every earlier page of the segment was written too, and
+     * saves the positions if CHECKPOINT_INTERVAL_MILLISECONDS passed since
+     * they were last saved.
+     */
+    public synchronized void pageWritten(Page page) {
+        SegmentProgress segmentProgress = progress.get(page.key);
+        segmentProgress.writtenAhead.put(page.number, page);
+        Page last = null;
+        Page next;
+        while ((next = segmentProgress.writtenAhead
+                .remove(segmentProgress.written)) != null) {
+            last = next;
+            segmentProgress.written++;
+        }
+        if (last != null) {
+            advance(last);
+        }
+        if (System.currentTimeMillis() - lastSaved >= BootstrapConstants.CHECKPOINT_INTERVAL_MILLISECONDS) {
+            save();
+        }
+    }
+
+    /**
+     * Saves the positions that were not saved yet and closes the file.
+     *
+     * @throws IOException
+     *             if the file cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        save();
+        out.close();
+    }
+
+    /**
+     * Moves the position of a segment to the end of a written page. When the
+     * page is the last one of a split segment, the start of both halves is
+     * recorded before the segment is recorded as done, so that a segment is
+     * never done in the file without its halves.
+     */
+    private void advance(Page page) {
+        if (page.split) {
+            int lower = page.record.segment * 2;
+            int totalSegments = page.record.totalSegments * 2;
+            addHalf(lower, totalSegments, page.record.lastEvaluatedKey);
+            addHalf(lower + 1, totalSegments, null);
+        }
+        unsaved.remove(page.key);
+        unsaved.put(page.key, page.record);
+    }
+
+    /**
+     * Records the start of half of a split segment, unless pages of that half
+     * were written already.
+     */
+    private void addHalf(int segment, int totalSegments,
+            Map<String, AttributeValue> startKey) {
+        String key = key(segment, totalSegments);
+        SegmentProgress halfProgress = progress.get(key);
+        if (halfProgress != null && halfProgress.written > 0) {
+            return;
+        }
+        Record record = new Record();
+        record.segment = segment;
+        record.totalSegments = totalSegments;
+        record.lastEvaluatedKey = startKey;
+        unsaved.put(key, record);
+    }
+
+    /**
+     * Appends the unsaved positions to the file and syncs it to disk. A
+     * failure is logged, the positions saved before remain valid.
+     */
+    private void save() {
+        lastSaved = System.currentTimeMillis();
+        if (unsaved.isEmpty()) {
+            return;
+        }
+        try {
+            for (Record record : unsaved.values()) {
+                append(record);
+            }
+            channel.force(false);
+            unsaved.clear();
+        } catch (IOException e) {
+            LOGGER.error("Could not save the scan checkpoint: "
+                    + e.getMessage());
+        }
+    }
+
+    private void append(Record record) throws IOException {
+        ByteBuffer line = ByteBuffer.wrap((MAPPER.writeValueAsString(record)
+                + "\n").getBytes(BootstrapConstants.UTF8));
+        while (line.hasRemaining()) {
+            channel.write(line);
+        }
+    }
+
+    /**
+     * returns the number of segments the scan recorded in the checkpoint file
+     * started with, or -1 if the file does not record it.
+     *
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    public static int readNumSegments(File file) throws IOException {
+        for (Record record : read(file)) {
+            if (record.numSegments != null) {
+                return record.numSegments;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the scan requests that continue the segments of segmentRequests
+     * from the positions recorded in the checkpoint file. Finished segments
+     * are left out, and split segments are replaced by the requests for their
+     * halves.
+     *
+     * @throws IOException
+     *             if the file cannot be read.
+     */
+    public static List<ScanRequest> resume(File file,
+            List<ScanRequest> segmentRequests) throws IOException {
+        Map<String, Record> positions = new HashMap<String, Record>();
+        for (Record record : read(file)) {
+            if (record.segment != null && record.totalSegments != null) {
+                positions.put(key(record.segment, record.totalSegments),
+                        record);
+            }
+        }
+        List<ScanRequest> resumed = new ArrayList<ScanRequest>();
+        for (ScanRequest request : segmentRequests) {
+            resume(positions, request, request.getSegment(),
+                    request.getTotalSegments(), resumed);
+        }
+        return resumed;
+    }
+
+    private static void resume(Map<String, Record> positions,
+            ScanRequest request, int segment, int totalSegments,
+            List<ScanRequest> resumed) {
+        Record record = positions.get(key(segment, totalSegments));
+        if (record == null || !record.done) {
+            resumed.add(request.clone().withSegment(segment)
+                    .withTotalSegments(totalSegments)
+                    .withExclusiveStartKey(record == null ? null
+                            : record.lastEvaluatedKey));
+        } else if (positions.containsKey(key(segment * 2, totalSegments * 2))
+                || positions.containsKey(key(segment * 2 + 1,
+                        totalSegments * 2))) {
+            resume(positions, request, segment * 2, totalSegments * 2,
+                    resumed);
+            resume(positions, request, segment * 2 + 1, totalSegments * 2,
+                    resumed);
+        }
+    }
+
+    /**
+     * Reads the lines of a checkpoint file, skipping a last line that was
+     * not completely written.
+     */
+    private static List<Record> read(File file) throws IOException {
+        List<Record> records = new ArrayList<Record>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), BootstrapConstants.UTF8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    records.add(MAPPER.readValue(line, Record.class));
+                } catch (IOException e) {
+                    LOGGER.warn("Skipping incomplete checkpoint line: " + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+
+    private static String key(int segment, int totalSegments) {
+        return segment + "/" + totalSegments;
+    }
+}
@@ -14,10 +14,17 @@
  */
 package com.amazonaws.dynamodb.bootstrap;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
@@ -30,12 +37,18 @@ import com.google.common.util.concurrent.RateLimiter;
  * 
  */
 public class ScanSegmentWorker implements Callable<SegmentedScanResult> {
+    private static final Pattern START_KEY_OUTSIDE_SEGMENT = Pattern.compile(
+            "Exclusive start key.*does not map to the provided segment",
+            Pattern.CASE_INSENSITIVE);
     private final ScanRequest request;
     private boolean hasNext;
     private int lastConsumedCapacity;
     private long exponentialBackoffTime;
     private final AmazonDynamoDBClient client;
     private final RateLimiter rateLimiter;
+    private boolean startKeyMayBeOutsideSegment;
+    private final PipelineMetrics.SegmentMetrics metrics;
+    private long lastScanNanos;
 
     ScanSegmentWorker(final AmazonDynamoDBClient client,
             final RateLimiter rateLimiter, ScanRequest request) {
@@ -45,6 +58,11 @@ public class ScanSegmentWorker implements Callable<SegmentedScanResult> {
         this.hasNext = true;
         this.exponentialBackoffTime = BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS;
         lastConsumedCapacity = 256;
+        // a start key restored from a checkpoint may have been inherited from
+        // a split segment
+        this.startKeyMayBeOutsideSegment = request.getExclusiveStartKey() != null;
+        this.metrics = PipelineMetrics.getSegmentMetrics(request.getSegment(),
+                request.getTotalSegments());
     }
 
     public boolean hasNext() {
@@ -56,33 +74,109 @@ public class ScanSegmentWorker implements Callable<SegmentedScanResult> {
         ScanResult result = null;
         result = runWithBackoff();
 
+        lastConsumedCapacity = calculateConsumedCapacity(request, result,
+                lastConsumedCapacity);
+        metrics.pageScanned(result.getItems() == null ? 0 : result.getItems()
+                .size(), lastConsumedCapacity, lastScanNanos);
+
+        if (result.getLastEvaluatedKey() != null
+                && !result.getLastEvaluatedKey().isEmpty()) {
+            hasNext = true;
+            request.setExclusiveStartKey(result.getLastEvaluatedKey());
+        } else {
+            hasNext = false;
+        }
+
+        if (lastConsumedCapacity > 0) {
+            PipelineMetrics.READ_RATE_LIMITER_WAIT_TIME.add(PipelineMetrics
+                    .toNanos(rateLimiter.acquire(lastConsumedCapacity)));
+        }
+        return new SegmentedScanResult(result, request.getSegment(),
+                request.getTotalSegments(), !hasNext);
+    }
+
+    /**
+     * Splits the rest of this segment in two. A parallel scan with twice as
+     * many segments divides every segment in half, segments 2i and 2i+1 of 2N
+     * covering segment i of N. The lower half resumes where this worker
+     * stopped. It is not known in which half that key lies, so the upper half
+     * starts from its beginning, and the lower half finishes right away if
+     * DynamoDB rejects the start key as outside of it. In that case part of
+     * the upper half is scanned twice, which only rewrites the same items.
+     * 
+     * @return the workers for the lower and the upper half of the segment.
+     */
+    ScanSegmentWorker[] split() {
+        final int totalSegments = request.getTotalSegments() * 2;
+        final int segment = request.getSegment() * 2;
+        ScanSegmentWorker lower = new ScanSegmentWorker(client, rateLimiter,
+                request.clone().withTotalSegments(totalSegments)
+                        .withSegment(segment));
+        lower.lastConsumedCapacity = lastConsumedCapacity;
+        ScanSegmentWorker upper = new ScanSegmentWorker(client, rateLimiter,
+                request.clone().withTotalSegments(totalSegments)
+                        .withSegment(segment + 1).withExclusiveStartKey(null));
+        upper.lastConsumedCapacity = lastConsumedCapacity;
+        return new ScanSegmentWorker[] { lower, upper };
+    }
+
+    /**
+     * Returns the segment of the table this worker scans.
+     */
+    public int getSegment() {
+        return request.getSegment();
+    }
+
+    /**
+     * Returns the total number of segments of the scan this worker is part of.
+     */
+    public int getTotalSegments() {
+        return request.getTotalSegments();
+    }
+
+    /**
+     * Returns the read capacity consumed by a scan page, estimating it from the
+     * page size when the result does not report consumed capacity, or the
+     * previous value if neither is available.
+     */
+    static int calculateConsumedCapacity(ScanRequest request,
+            ScanResult result, int previousConsumedCapacity) {
         final ConsumedCapacity cc = result.getConsumedCapacity();
 
         if (cc != null && cc.getCapacityUnits() != null) {
-            lastConsumedCapacity = result.getConsumedCapacity()
-                    .getCapacityUnits().intValue();
+            return cc.getCapacityUnits().intValue();
         } else if (result.getScannedCount() != null && result.getCount() != null) {
 
             final boolean isConsistent = request.getConsistentRead();
             int itemSize = isConsistent ? BootstrapConstants.STRONGLY_CONSISTENT_READ_ITEM_SIZE
                     : BootstrapConstants.EVENTUALLY_CONSISTENT_READ_ITEM_SIZE;
 
-            lastConsumedCapacity = (result.getScannedCount() / (int) Math.max(1.0, result.getCount()))
+            return (result.getScannedCount() / (int) Math.max(1.0, result.getCount()))
                     * (ItemSizeCalculator.calculateScanResultSizeInBytes(result) / itemSize);
         }
+        return previousConsumedCapacity;
+    }
 
-        if (result.getLastEvaluatedKey() != null
-                && !result.getLastEvaluatedKey().isEmpty()) {
-            hasNext = true;
-            request.setExclusiveStartKey(result.getLastEvaluatedKey());
-        } else {
-            hasNext = false;
+    /**
+     * returns true if DynamoDB rejected the start key of the request as
+     * outside of its segment. Other invalid requests fail for good.
+     */
+    static boolean isStartKeyOutsideSegment(Exception e) {
+        if (!(e instanceof AmazonServiceException)) {
+            return false;
         }
+        String message = ((AmazonServiceException) e).getErrorMessage();
+        return isValidationException(e) && message != null
+                && START_KEY_OUTSIDE_SEGMENT.matcher(message).find();
+    }
 
-        if (lastConsumedCapacity > 0) {
-            rateLimiter.acquire(lastConsumedCapacity);
-        }
-        return new SegmentedScanResult(result, request.getSegment());
+    /**
+     * returns true if DynamoDB rejected the request as invalid.
+     */
+    static boolean isValidationException(Exception e) {
+        return e instanceof AmazonServiceException
+                && "ValidationException".equals(((AmazonServiceException) e)
+                        .getErrorCode());
     }
 
     /**
@@ -94,13 +188,30 @@ public class ScanSegmentWorker implements Callable<SegmentedScanResult> {
         try {
             do {
                 try {
+                    long start = System.nanoTime();
                     result = client.scan(request);
+                    lastScanNanos = System.nanoTime() - start;
+                    startKeyMayBeOutsideSegment = false;
                 } catch (Exception e) {
+                    if (startKeyMayBeOutsideSegment
+                            && isStartKeyOutsideSegment(e)) {
+                        // the start key lies in the other half of a split
+                        // segment, so this half has nothing left to scan
+                        result = new ScanResult().withItems(Collections
+                                .<Map<String, AttributeValue>> emptyList());
+                        lastScanNanos = 0;
+                        break;
+                    }
+                    if (isValidationException(e)) {
+                        throw (AmazonServiceException) e;
+                    }
                     try {
                         Thread.sleep(exponentialBackoffTime);
                     } catch (InterruptedException ie) {
                         interrupted = true;
                     } finally {
+                        PipelineMetrics.SCAN_BACKOFF_TIME.add(TimeUnit.MILLISECONDS
+                                .toNanos(exponentialBackoffTime));
                         exponentialBackoffTime *= 2;
                     }
                     continue;
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * Shares the capacity of the tables between the sections of a copy running
+ * in several processes, possibly on several hosts, through a directory they
+ * can all reach, such as a shared file system.
+ *
+ * Every section holds a lease: a file in the directory that it rewrites every
+ * LEASE_RENEW_INTERVAL, and marks done once the section is finished. A lease
+ * not renewed for LEASE_TIMEOUT, measured against the time the file system
+ * gave this section's own lease so that host clocks need not agree, belongs
+ * to a section that died. Each section gets an equal share of the capacity
+ * among the sections holding a live lease that are not done, so the sections
+ * still running take over the capacity of the finished ones. A section that
+ * has not started yet is not counted until it takes its lease.
+ */
+public class SectionLease {
+
+    /**
+     * Logger for the SectionLease.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(SectionLease.class);
+
+    private static final String ACTIVE = "active";
+    private static final String DONE = "done";
+
+    private static final FileFilter LEASES = new FileFilter() {
+        @Override
+        public boolean accept(File file) {
+            return file.getName().endsWith(
+                    BootstrapConstants.LEASE_FILE_EXTENSION);
+        }
+    };
+
+    private final File directory;
+    private final File leaseFile;
+    private final List<AdaptiveRateController> controllers;
+    private volatile double share;
+    private ScheduledFuture<?> renewing;
+
+    /**
+     * Creates the lease of the section in the directory.
+     */
+    public SectionLease(File directory, int section) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the directory "
+                    + directory);
+        }
+        this.directory = directory;
+        this.leaseFile = new File(directory, "section-" + section
+                + BootstrapConstants.LEASE_FILE_EXTENSION);
+        this.controllers = new CopyOnWriteArrayList<AdaptiveRateController>();
+        this.share = 1;
+    }
+
+    /**
+     * Makes the controller use the share of the capacity of this section.
+     */
+    public void addController(AdaptiveRateController controller) {
+        controllers.add(controller);
+        controller.setShare(share);
+    }
+
+    /**
+     * returns the fraction of the capacity this section may use
+     */
+    public double getShare() {
+        return share;
+    }
+
+    /**
+     * Takes the lease, then renews it on the scheduler.
+     *
+     * @throws IOException
+     *             if the lease cannot be written.
+     */
+    public synchronized void start(ScheduledExecutorService scheduler)
+            throws IOException {
+        renew();
+        renewing = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    renew();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not renew the lease " + leaseFile
+                            + ": " + e.getMessage());
+                }
+            }
+        }, BootstrapConstants.LEASE_RENEW_INTERVAL_MILLISECONDS,
+                BootstrapConstants.LEASE_RENEW_INTERVAL_MILLISECONDS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Marks the section done, so the other sections take over its share.
+     */
+    public synchronized void finish() {
+        if (renewing != null) {
+            renewing.cancel(false);
+        }
+        try {
+            write(DONE);
+        } catch (IOException e) {
+            LOGGER.warn("Could not release the lease " + leaseFile + ": "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the lease and recomputes the share of this section.
+     */
+    void renew() throws IOException {
+        write(ACTIVE);
+        long now = leaseFile.lastModified();
+        int running = 0;
+        File[] leases = directory.listFiles(LEASES);
+        if (leases != null) {
+            for (File lease : leases) {
+                if (now - lease.lastModified() <= BootstrapConstants.LEASE_TIMEOUT_MILLISECONDS
+                        && ACTIVE.equals(read(lease))) {
+                    running++;
+                }
+            }
+        }
+        double newShare = 1.0 / Math.max(1, running);
+        if (newShare != share) {
+            LOGGER.info(running + " sections running, using " + newShare
+                    + " of the capacity");
+            share = newShare;
+            for (AdaptiveRateController controller : controllers) {
+                controller.setShare(newShare);
+            }
+        }
+    }
+
+    /**
+     * Replaces the lease file with one holding the state, so other sections
+     * never read a partly written lease.
+     */
+    private void write(String state) throws IOException {
+        File written = new File(directory, leaseFile.getName() + ".tmp");
+        Files.write(written.toPath(), state.getBytes(BootstrapConstants.UTF8));
+        Files.move(written.toPath(), leaseFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * returns the state of the lease, or null if it is gone
+     */
+    private static String read(File lease) throws IOException {
+        try {
+            return new String(Files.readAllBytes(lease.toPath()),
+                    BootstrapConstants.UTF8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
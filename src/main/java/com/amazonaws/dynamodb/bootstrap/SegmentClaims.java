@@ -0,0 +1,294 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * Lets the sections of a copy running in several processes, possibly on
+ * several hosts, take the segments of the table from a common pool through a
+ * directory they can all reach, such as a shared file system. A section
+ * claims a segment right before scanning it, so a section that is ahead takes
+ * over the segments a slower section has not started yet.
+ *
+ * A segment is claimed by creating its claim file, which fails if another
+ * section created it first. Like a SectionLease, the claim is rewritten every
+ * LEASE_RENEW_INTERVAL while the segment is scanned, and a done file is
+ * written once it is finished. A claim not renewed for LEASE_TIMEOUT,
+ * measured against the time the file system gives a file this section writes
+ * so that host clocks need not agree, belongs to a section that died, and its
+ * segment is taken over unless it is done. The number of segments is agreed
+ * on the same way, since sections on different hosts may compute different
+ * numbers. The directory must not be reused by another copy.
+ */
+public class SegmentClaims {
+
+    /**
+     * Logger for the SegmentClaims.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(SegmentClaims.class);
+
+    private static final String NUM_SEGMENTS_FILE = "segments";
+
+    private final File directory;
+    private final int section;
+    private final byte[] owner;
+    private volatile int numSegments;
+    /** claimed segments, with the number of their parts not finished yet */
+    private final ConcurrentMap<Integer, AtomicInteger> claimed;
+    private ScheduledFuture<?> renewing;
+
+    public SegmentClaims(File directory, int section) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the directory "
+                    + directory);
+        }
+        this.directory = directory;
+        this.section = section;
+        this.owner = Integer.toString(section).getBytes(
+                BootstrapConstants.UTF8);
+        this.claimed = new ConcurrentHashMap<Integer, AtomicInteger>();
+    }
+
+    /**
+     * Records numSegments as the number of segments of the copy, unless a
+     * section recorded a number before.
+     *
+     * @return the number of segments all the sections use
+     * @throws IOException
+     *             if the number cannot be written or read.
+     */
+    public int agreeOnNumSegments(int numSegments) throws IOException {
+        File agreed = new File(directory, NUM_SEGMENTS_FILE);
+        File proposed = new File(directory, NUM_SEGMENTS_FILE + "-" + section
+                + ".tmp");
+        Files.write(proposed.toPath(),
+                Integer.toString(numSegments).getBytes(BootstrapConstants.UTF8));
+        try {
+            // linking is atomic and fails if the target exists, so readers
+            // never see a partly written number
+            Files.createLink(agreed.toPath(), proposed.toPath());
+        } catch (FileAlreadyExistsException e) {
+            // another section agreed first
+        } finally {
+            Files.delete(proposed.toPath());
+        }
+        String number = new String(Files.readAllBytes(agreed.toPath()),
+                BootstrapConstants.UTF8).trim();
+        try {
+            this.numSegments = Integer.parseInt(number);
+            return this.numSegments;
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid number of segments in " + agreed
+                    + ": " + number, e);
+        }
+    }
+
+    /**
+     * Claims a segment for this section, taking it over if the section that
+     * claimed it stopped renewing the claim before finishing it.
+     *
+     * @return true if the segment was not claimed before, or its claim
+     *         expired
+     * @throws IOException
+     *             if the claim cannot be written.
+     */
+    public boolean claim(int segment) throws IOException {
+        if (isDone(segment)) {
+            return false;
+        }
+        File claim = getClaimFile(segment);
+        File proposed = new File(directory, claim.getName() + "-" + section
+                + ".tmp");
+        Files.write(proposed.toPath(), owner);
+        try {
+            // linking is atomic and fails if the target exists
+            if (link(claim, proposed)) {
+                claimed.put(segment, new AtomicInteger());
+                return true;
+            }
+            long now = proposed.lastModified();
+            if (now - claim.lastModified() <= BootstrapConstants.LEASE_TIMEOUT_MILLISECONDS
+                    || isDone(segment)) {
+                return false;
+            }
+            // moving the expired claim aside succeeds for one section only.
+            // A claim renewed right before it is moved is taken over anyway,
+            // which only scans the segment twice.
+            File expired = new File(directory, claim.getName() + "-"
+                    + section + ".expired");
+            try {
+                Files.move(claim.toPath(), expired.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+            Files.delete(expired.toPath());
+            if (!link(claim, proposed)) {
+                return false;
+            }
+            LOGGER.warn("Taking over segment " + segment
+                    + ", whose claim was not renewed");
+            claimed.put(segment, new AtomicInteger());
+            return true;
+        } finally {
+            Files.delete(proposed.toPath());
+        }
+    }
+
+    /**
+     * returns true if a section finished the segment
+     */
+    public boolean isDone(int segment) {
+        return getDoneFile(segment).exists();
+    }
+
+    /**
+     * Renews the claims of this section on the scheduler until every claimed
+     * segment is finished.
+     */
+    public synchronized void start(ScheduledExecutorService scheduler) {
+        renewing = scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                renew();
+            }
+        }, BootstrapConstants.LEASE_RENEW_INTERVAL_MILLISECONDS,
+                BootstrapConstants.LEASE_RENEW_INTERVAL_MILLISECONDS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops renewing the claims.
+     */
+    public synchronized void stop() {
+        if (renewing != null) {
+            renewing.cancel(false);
+        }
+    }
+
+    /**
+     * Rewrites the claims of the segments this section has not finished, and
+     * forgets those taken over by another section.
+     */
+    void renew() {
+        for (Integer segment : claimed.keySet()) {
+            File claim = getClaimFile(segment);
+            try {
+                if (!isOwn(claim)) {
+                    LOGGER.warn("Segment " + segment
+                            + " was taken over by another section");
+                    claimed.remove(segment);
+                    continue;
+                }
+                Files.write(claim.toPath(), owner);
+            } catch (IOException e) {
+                LOGGER.warn("Could not renew the claim " + claim + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Records that a part of a claimed segment is being scanned: the segment
+     * itself, or one of the halves it is split in.
+     */
+    void partStarted(int segment, int totalSegments) {
+        AtomicInteger parts = claimed.get(getClaimedSegment(segment,
+                totalSegments));
+        if (parts != null) {
+            parts.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records that a part of a claimed segment is finished, and marks the
+     * segment done once all its parts are.
+     *
+     * @throws IOException
+     *             if the done file cannot be written.
+     */
+    void partFinished(int segment, int totalSegments) throws IOException {
+        int claimedSegment = getClaimedSegment(segment, totalSegments);
+        AtomicInteger parts = claimed.get(claimedSegment);
+        if (parts != null && parts.decrementAndGet() == 0) {
+            // the done file is written before the claim stops being renewed
+            Files.write(getDoneFile(claimedSegment).toPath(), owner);
+            claimed.remove(claimedSegment);
+        }
+    }
+
+    /**
+     * returns the claimed segment that contains a segment of a scan with
+     * totalSegments segments, which may have split it
+     */
+    private int getClaimedSegment(int segment, int totalSegments) {
+        int agreed = numSegments;
+        if (agreed <= 0 || totalSegments <= agreed) {
+            return segment;
+        }
+        // segments 2i and 2i+1 of 2N cover segment i of N
+        return segment / (totalSegments / agreed);
+    }
+
+    private boolean isOwn(File claim) throws IOException {
+        try {
+            return new String(Files.readAllBytes(claim.toPath()),
+                    BootstrapConstants.UTF8).trim().equals(
+                    Integer.toString(section));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private File getClaimFile(int segment) {
+        return new File(directory, "segment-" + segment
+                + BootstrapConstants.CLAIM_FILE_EXTENSION);
+    }
+
+    private File getDoneFile(int segment) {
+        return new File(directory, "segment-" + segment
+                + BootstrapConstants.DONE_FILE_EXTENSION);
+    }
+
+    /**
+     * returns false if the target already exists
+     */
+    private static boolean link(File target, File existing) throws IOException {
+        try {
+            Files.createLink(target.toPath(), existing.toPath());
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+}
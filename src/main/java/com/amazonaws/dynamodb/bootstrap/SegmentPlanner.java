@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.BillingMode;
+import com.amazonaws.services.dynamodbv2.model.BillingModeSummary;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+
+/**
+ * Decides how many segments a parallel scan uses, and when a segment that is
+ * still being scanned at the end of the scan should be split.
+ */
+public class SegmentPlanner {
+
+    /**
+     * returns the number of segments to scan a table with. It is the largest
+     * of:
+     * <ul>
+     * <li>the number of segments based on the provisioned capacity of the
+     * table, when it has provisioned capacity,</li>
+     * <li>one segment per gigabyte of the table,</li>
+     * <li>the number of segments needed to consume the read rate limit, each
+     * segment consuming about ESTIMATED_READ_CAPACITY_PER_SEGMENT,</li>
+     * <li>the number of processors, so every processor has a segment to
+     * scan.</li>
+     * </ul>
+     * Works for on-demand tables, which have no provisioned capacity.
+     */
+    public static int getNumberOfSegments(TableDescription description,
+            double readThroughput, int availableProcessors) {
+        double segments = Math.max(1, availableProcessors);
+
+        if (description.getTableSizeBytes() != null) {
+            segments = Math.max(segments, Math.ceil(description
+                    .getTableSizeBytes() / BootstrapConstants.GIGABYTE));
+        }
+
+        if (readThroughput > 0) {
+            segments = Math.max(segments, Math.ceil(readThroughput
+                    / BootstrapConstants.ESTIMATED_READ_CAPACITY_PER_SEGMENT));
+        }
+
+        ProvisionedThroughputDescription provisionedThroughput = description
+                .getProvisionedThroughput();
+        if (!isOnDemand(description) && provisionedThroughput != null
+                && provisionedThroughput.getReadCapacityUnits() != null) {
+            Long writeCapacity = provisionedThroughput.getWriteCapacityUnits();
+            if (writeCapacity == null) {
+                writeCapacity = 1L;
+            }
+            double throughput = (provisionedThroughput.getReadCapacityUnits() + 3 * writeCapacity) / 3000.0;
+            segments = Math.max(segments, 10 * Math.ceil(throughput));
+        }
+
+        return (int) Math.min(segments, BootstrapConstants.MAX_TOTAL_SEGMENTS);
+    }
+
+    /**
+     * returns true if the table is billed per request instead of having
+     * provisioned capacity.
+     */
+    public static boolean isOnDemand(TableDescription description) {
+        BillingModeSummary billingMode = description.getBillingModeSummary();
+        if (billingMode != null
+                && BillingMode.PAY_PER_REQUEST.toString().equals(
+                        billingMode.getBillingMode())) {
+            return true;
+        }
+        ProvisionedThroughputDescription provisionedThroughput = description
+                .getProvisionedThroughput();
+        return provisionedThroughput == null
+                || provisionedThroughput.getReadCapacityUnits() == null
+                || provisionedThroughput.getReadCapacityUnits() == 0;
+    }
+
+    /**
+     * returns the number of segments still being scanned below which the
+     * remaining segments are split, for a scan that started with the given
+     * number of segments.
+     */
+    public static int getSplitThreshold(int initialSegments) {
+        return Math.max(2, initialSegments
+                / BootstrapConstants.SEGMENT_SPLIT_THRESHOLD_DIVISOR);
+    }
+
+    /**
+     * returns true if a segment of a scan with totalSegments segments can be
+     * split in two.
+     */
+    public static boolean canSplit(int totalSegments) {
+        return totalSegments <= BootstrapConstants.MAX_TOTAL_SEGMENTS / 2;
+    }
+}
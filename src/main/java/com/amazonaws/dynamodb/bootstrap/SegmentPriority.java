@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.Locale;
+
+import com.amazonaws.dynamodb.bootstrap.AbstractParallelScanExecutor.SegmentPages;
+
+/**
+ * The order in which an AsyncParallelScanExecutor sends the next scan request
+ * of the segments waiting for a free in flight slot. Segments with the lowest
+ * key go first; segments with the same key go in the order they became ready.
+ */
+public enum SegmentPriority {
+
+    /**
+     * Segments in the order they became ready.
+     */
+    COMPLETION {
+        @Override
+        double getKey(SegmentPages pages) {
+            return 0;
+        }
+    },
+
+    /**
+     * Segments that scanned the fewest items for their share of the table
+     * first. A segment of N holds about 1/N of the items of the table, so the
+     * halves of a split segment count their items twice.
+     */
+    MOST_REMAINING {
+        @Override
+        double getKey(SegmentPages pages) {
+            return (double) pages.getItems()
+                    * Math.max(1, pages.getTotalSegments());
+        }
+    },
+
+    /**
+     * Segments that recently scanned the fewest items per second first,
+     * starting with the segments that have not completed a page yet.
+     */
+    SLOWEST {
+        @Override
+        double getKey(SegmentPages pages) {
+            return pages.getItemsPerSecond();
+        }
+    };
+
+    /**
+     * returns the key of a segment that is not being scanned; segments with a
+     * lower key are scanned first
+     */
+    abstract double getKey(SegmentPages pages);
+
+    /**
+     * returns the name of the priority as given on the command line
+     */
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -23,10 +23,28 @@ import com.amazonaws.services.dynamodbv2.model.ScanResult;
 public class SegmentedScanResult {
     private final ScanResult result;
     private final int segment;
+    private final int totalSegments;
+    private boolean lastPage;
+    private boolean split;
 
     public SegmentedScanResult(ScanResult result, int segment) {
+        this(result, segment, 0, false);
+    }
+
+    /**
+     * @param totalSegments
+     *            the total number of segments of the scan the segment is part
+     *            of
+     * @param lastPage
+     *            true if no more pages of the segment follow this one
+     */
+    public SegmentedScanResult(ScanResult result, int segment,
+            int totalSegments, boolean lastPage) {
         this.result = result;
         this.segment = segment;
+        this.totalSegments = totalSegments;
+        this.lastPage = lastPage;
+        this.split = false;
     }
 
     public ScanResult getScanResult() {
@@ -36,4 +54,31 @@ public class SegmentedScanResult {
     public int getSegment() {
         return segment;
     }
+
+    public int getTotalSegments() {
+        return totalSegments;
+    }
+
+    /**
+     * returns true if no more pages of the segment follow this one
+     */
+    public boolean isLastPage() {
+        return lastPage;
+    }
+
+    /**
+     * returns true if the rest of the segment, after this page, is scanned as
+     * segments 2*segment and 2*segment+1 of 2*totalSegments
+     */
+    public boolean isSplit() {
+        return split;
+    }
+
+    /**
+     * Records that the rest of the segment is scanned by its two halves.
+     */
+    void setSplit() {
+        this.split = true;
+        this.lastPage = true;
+    }
 }
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * Collects the writes DynamoDB left unprocessed, or failed with a retryable
+ * exception, from every DynamoDBConsumerWorker of a table and sends them
+ * again in batches packed with the writes of other workers, instead of each
+ * worker retrying its few leftovers on its own.
+ *
+ * The writes wait in a queue. The workers waiting for their writes send the
+ * batches, after backing off, each taking the writes at the head of the
+ * queue. Only one batch is sent at a time unless there are enough writes
+ * queued to fill another, so that leftovers are not split into small
+ * batches again. Writes left unprocessed again go back to the head, so the
+ * oldest writes are always in the next batch and none is left behind. A write still
+ * not written after MAX_RETRIES retries, or rejected by DynamoDB, goes to the
+ * dead letter file, or fails the workers it belongs to if there is none.
+ */
+public class UnprocessedItemCoalescer {
+
+    private final AmazonDynamoDBClient client;
+    private final String tableName;
+    private final Deque<Entry> queue;
+    private final AtomicLong requests;
+    private volatile DeadLetterFile deadLetters;
+    private long backoff;
+    private int sending;
+
+    public UnprocessedItemCoalescer(AmazonDynamoDBClient client,
+            String tableName) {
+        this.client = client;
+        this.tableName = tableName;
+        this.queue = new ArrayDeque<Entry>();
+        this.requests = new AtomicLong();
+        this.backoff = BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS;
+    }
+
+    /**
+     * Writes the writes that cannot be written to the given file instead of
+     * failing the workers they belong to.
+     */
+    public void setDeadLetterFile(DeadLetterFile deadLetters) {
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * returns the number of batches sent
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Queues the writes, then sends batches of queued writes until every one
+     * of the given writes is written or sent to the dead letter file.
+     *
+     * @return the capacity consumed by the batches sent by this thread
+     * @throws AmazonClientException
+     *             if a write could not be written and there is no dead
+     *             letter file, or an AbortedException if the thread was
+     *             interrupted.
+     * @throws IOException
+     *             if writes could not be written to the dead letter file.
+     */
+    public List<ConsumedCapacity> writeAll(Collection<WriteRequest> writes)
+            throws IOException {
+        Owner owner = new Owner(writes.size());
+        synchronized (this) {
+            for (WriteRequest write : writes) {
+                queue.addLast(new Entry(write, owner));
+            }
+        }
+        List<ConsumedCapacity> consumedCapacities = new ArrayList<ConsumedCapacity>();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                long sleep;
+                synchronized (this) {
+                    while (owner.remaining > 0
+                            && owner.failure == null
+                            && (queue.isEmpty() || (sending > 0 && queue
+                                    .size() < BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM))) {
+                        // the writes left are in batches of other threads,
+                        // or will be in the next one
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                            abort(owner, e);
+                        }
+                    }
+                    if (owner.failure != null) {
+                        throw owner.failure;
+                    }
+                    if (owner.remaining == 0) {
+                        return consumedCapacities;
+                    }
+                    sleep = WriteRetryPolicy.nextBackoff(backoff);
+                    sending++;
+                }
+                PipelineMetrics.WRITE_BACKOFF_TIME.add(TimeUnit.MILLISECONDS
+                        .toNanos(sleep));
+                try {
+                    try {
+                        Thread.sleep(sleep);
+                        send(consumedCapacities);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        synchronized (this) {
+                            abort(owner, e);
+                        }
+                    }
+                } finally {
+                    synchronized (this) {
+                        sending--;
+                        notifyAll();
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Fails the writes of the owner, whose thread was interrupted, and wakes
+     * the waiting threads so they do not wait for this thread to send them.
+     * The writes left in the queue are still sent by the other threads.
+     */
+    private void abort(Owner owner, InterruptedException e) {
+        if (owner.failure == null) {
+            owner.failure = new AbortedException(
+                    "Interrupted while writing the unprocessed items", e);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Sends a batch of the writes at the head of the queue, if there are any
+     * left, and accounts for the result. If sending the batch or writing to
+     * the dead letter file throws, the owners of the writes not accounted for
+     * yet are failed before the exception propagates, so that they do not
+     * wait for them forever.
+     */
+    private void send(List<ConsumedCapacity> consumedCapacities)
+            throws IOException {
+        Map<WriteRequest, Entry> batch = take();
+        if (batch.isEmpty()) {
+            return;
+        }
+        // the writes whose owners still count on them
+        Collection<Entry> unaccounted = new ArrayList<Entry>(batch.values());
+        try {
+            List<WriteRequest> writes = new ArrayList<WriteRequest>(
+                    batch.keySet());
+            requests.incrementAndGet();
+            List<WriteRequest> unprocessed;
+            String failure;
+            long start = System.nanoTime();
+            try {
+                BatchWriteItemResult result = client
+                        .batchWriteItem(new BatchWriteItemRequest()
+                                .withReturnConsumedCapacity(
+                                        ReturnConsumedCapacity.TOTAL)
+                                .withRequestItems(
+                                        Collections.singletonMap(tableName,
+                                                writes)));
+                if (result.getConsumedCapacity() != null) {
+                    consumedCapacities.addAll(result.getConsumedCapacity());
+                }
+                unprocessed = result.getUnprocessedItems() == null ? null
+                        : result.getUnprocessedItems().get(tableName);
+                if (unprocessed == null) {
+                    unprocessed = Collections.emptyList();
+                }
+                PipelineMetrics.batchWritten(
+                        writes.size() - unprocessed.size(),
+                        unprocessed.size(), System.nanoTime() - start);
+                failure = "unprocessed";
+            } catch (AmazonClientException e) {
+                if (!WriteRetryPolicy.isRetryable(e)) {
+                    PipelineMetrics.batchWritten(0, 0, System.nanoTime()
+                            - start);
+                    fail(unaccounted, e);
+                    unaccounted = Collections.emptyList();
+                    return;
+                }
+                PipelineMetrics.batchWritten(0, writes.size(),
+                        System.nanoTime() - start);
+                unprocessed = writes;
+                failure = e.getMessage();
+            }
+
+            List<Entry> retried = new ArrayList<Entry>(unprocessed.size());
+            List<Entry> failed = new ArrayList<Entry>();
+            for (WriteRequest write : unprocessed) {
+                Entry entry = batch.remove(write);
+                if (entry == null) {
+                    continue;
+                }
+                if (++entry.retries > BootstrapConstants.MAX_RETRIES) {
+                    failed.add(entry);
+                } else {
+                    retried.add(entry);
+                }
+            }
+            synchronized (this) {
+                for (Entry entry : batch.values()) {
+                    entry.owner.remaining--;
+                }
+                for (int i = retried.size() - 1; i >= 0; i--) {
+                    queue.addFirst(retried.get(i));
+                }
+                if (retried.isEmpty()) {
+                    backoff = BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS;
+                } else {
+                    backoff = WriteRetryPolicy.nextBackoff(backoff);
+                }
+                notifyAll();
+            }
+            unaccounted = failed;
+            if (!failed.isEmpty()) {
+                fail(failed, new AmazonClientException("Not written after "
+                        + BootstrapConstants.MAX_RETRIES + " retries, last "
+                        + failure));
+            }
+            unaccounted = Collections.emptyList();
+        } finally {
+            if (!unaccounted.isEmpty()) {
+                abandon(unaccounted);
+            }
+        }
+    }
+
+    /**
+     * Takes the writes at the head of the queue that fit in a batch. The
+     * batch stops before a write that does not fit, rather than skipping it,
+     * so that writes are sent in the order they were queued.
+     */
+    private synchronized Map<WriteRequest, Entry> take() {
+        Map<WriteRequest, Entry> batch = new HashMap<WriteRequest, Entry>(
+                BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM * 4 / 3 + 1);
+        long bytes = 0;
+        while (!queue.isEmpty()
+                && batch.size() < BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM) {
+            Entry entry = queue.peekFirst();
+            if (!batch.isEmpty()
+                    && (bytes + entry.size > BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM_BYTES || batch
+                            .containsKey(entry.write))) {
+                break;
+            }
+            queue.removeFirst();
+            batch.put(entry.write, entry);
+            bytes += entry.size;
+        }
+        return batch;
+    }
+
+    /**
+     * Sends the items of the writes to the dead letter file and counts them
+     * as done, or fails their owners if there is no dead letter file.
+     */
+    private void fail(Collection<Entry> entries, AmazonClientException e)
+            throws IOException {
+        DeadLetterFile file = deadLetters;
+        if (file != null) {
+            List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>(
+                    entries.size());
+            for (Entry entry : entries) {
+                if (entry.write.getPutRequest() != null) {
+                    items.add(entry.write.getPutRequest().getItem());
+                }
+            }
+            file.write(items, e.getMessage());
+        }
+        synchronized (this) {
+            for (Entry entry : entries) {
+                if (file == null) {
+                    entry.owner.failure = e;
+                }
+                entry.owner.remaining--;
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Fails the owners of the writes of a batch that could neither be written
+     * nor sent to the dead letter file, and counts the writes as done so that
+     * the owners stop waiting for them.
+     */
+    private synchronized void abandon(Collection<Entry> entries) {
+        for (Entry entry : entries) {
+            if (entry.owner.failure == null) {
+                entry.owner.failure = new AmazonClientException(
+                        "Failed to write or dead letter unprocessed items");
+            }
+            entry.owner.remaining--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * The writes handed over by a call to writeAll.
+     */
+    private static class Owner {
+        private int remaining;
+        private AmazonClientException failure;
+
+        Owner(int remaining) {
+            this.remaining = remaining;
+        }
+    }
+
+    /**
+     * A queued write.
+     */
+    private static class Entry {
+        private final WriteRequest write;
+        private final Owner owner;
+        private final int size;
+        private int retries;
+
+        Entry(WriteRequest write, Owner owner) {
+            this.write = write;
+            this.owner = owner;
+            this.size = ItemSizeCalculator.calculateItemSizeInBytes(write
+                    .getPutRequest() != null ? write.getPutRequest().getItem()
+                    : write.getDeleteRequest().getKey());
+        }
+    }
+}
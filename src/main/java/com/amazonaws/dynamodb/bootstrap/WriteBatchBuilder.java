@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * Groups items into BatchWriteItemRequests one item at a time, so that each
+ * batch can be written as soon as it is full instead of once a whole page is
+ * split. A batch is full when it holds MAX_BATCH_SIZE_WRITE_ITEM items, or
+ * when the next item would take it over MAX_BATCH_SIZE_WRITE_ITEM_BYTES or
+ * over the write capacity units a batch may consume. Not thread safe.
+ */
+public class WriteBatchBuilder {
+
+    private final String tableName;
+    private final double maxCapacityUnits;
+    private List<WriteRequest> writes;
+    private long bytes;
+    private double capacityUnits;
+
+    public WriteBatchBuilder(String tableName) {
+        this(tableName, Double.MAX_VALUE);
+    }
+
+    /**
+     * Builds batches whose items consume at most maxCapacityUnits write
+     * capacity units, unless a single item consumes more.
+     */
+    public WriteBatchBuilder(String tableName, double maxCapacityUnits) {
+        this.tableName = tableName;
+        this.maxCapacityUnits = maxCapacityUnits;
+    }
+
+    /**
+     * Adds an item of the given size to the current batch.
+     * 
+     * @return the batch that was full before the item was added, or null
+     */
+    public BatchWriteItemRequest add(Map<String, AttributeValue> item,
+            int itemSize) {
+        double itemCapacityUnits = getWriteCapacityUnits(itemSize);
+        BatchWriteItemRequest full = null;
+        if (writes != null
+                && (writes.size() == BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM
+                        || bytes + itemSize > BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM_BYTES || capacityUnits
+                        + itemCapacityUnits > maxCapacityUnits)) {
+            full = finish();
+        }
+        if (writes == null) {
+            writes = new ArrayList<WriteRequest>(
+                    BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM);
+            bytes = 0;
+            capacityUnits = 0;
+        }
+        writes.add(new WriteRequest(new PutRequest(item)));
+        bytes += itemSize;
+        capacityUnits += itemCapacityUnits;
+        return full;
+    }
+
+    /**
+     * returns the write capacity units writing an item of the given size
+     * consumes
+     */
+    public static double getWriteCapacityUnits(int itemSize) {
+        return Math.max(1, Math.ceil((double) itemSize
+                / BootstrapConstants.WRITE_CAPACITY_UNIT_BYTES));
+    }
+
+    /**
+     * returns the current batch, or null if it is empty, and starts a new one
+     */
+    public BatchWriteItemRequest finish() {
+        if (writes == null) {
+            return null;
+        }
+        BatchWriteItemRequest batch = new BatchWriteItemRequest()
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .withRequestItems(Collections.singletonMap(tableName, writes));
+        writes = null;
+        return batch;
+    }
+}
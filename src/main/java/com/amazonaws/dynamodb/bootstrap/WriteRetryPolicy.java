@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+
+/**
+ * Decides which failed writes are retried and how long to back off before
+ * retrying them.
+ */
+public class WriteRetryPolicy {
+
+    /**
+     * returns the time to back off before the next retry, drawn between
+     * INITIAL_RETRY_TIME_MILLISECONDS and three times the previous back off,
+     * at most MAX_EXPONENTIAL_BACKOFF_TIME. Unlike doubling the back off,
+     * this "decorrelated jitter" spreads the retries of writers throttled at
+     * the same time instead of having them retry together.
+     */
+    public static long nextBackoff(long previousBackoff) {
+        long low = BootstrapConstants.INITIAL_RETRY_TIME_MILLISECONDS;
+        long high = Math.max(low + 1, previousBackoff * 3);
+        return Math.min(BootstrapConstants.MAX_EXPONENTIAL_BACKOFF_TIME,
+                ThreadLocalRandom.current().nextLong(low, high));
+    }
+
+    /**
+     * returns true if a write failing with the exception may succeed later:
+     * throttled requests, errors of the service and failures to reach it.
+     * Invalid items fail for good.
+     */
+    public static boolean isRetryable(Exception e) {
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException ase = (AmazonServiceException) e;
+            return ase instanceof ProvisionedThroughputExceededException
+                    || RetryUtils.isThrottlingException(ase)
+                    || RetryUtils.isRetryableServiceException(ase);
+        }
+        return e instanceof AmazonClientException
+                && ((AmazonClientException) e).isRetryable();
+    }
+}
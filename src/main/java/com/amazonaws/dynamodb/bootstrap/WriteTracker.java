@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Counts the pages handed to a consumer that are not written yet, so that a
+ * provider can wait for them, without keeping their futures once written. The
+ * first page that could not be written is kept with its items and the cause;
+ * later failures are only counted.
+ */
+public class WriteTracker {
+
+    /**
+     * Logger for the WriteTracker.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(WriteTracker.class);
+
+    private final AtomicLong inFlight;
+    private final AtomicLong written;
+    private final AtomicLong failed;
+    private final AtomicReference<FailedPage> firstFailure;
+    private final Object drained;
+
+    public WriteTracker() {
+        this.inFlight = new AtomicLong();
+        this.written = new AtomicLong();
+        this.failed = new AtomicLong();
+        this.firstFailure = new AtomicReference<FailedPage>();
+        this.drained = new Object();
+    }
+
+    /**
+     * Counts the page as in flight until the write completes, and logs the
+     * failure of the write as soon as it fails.
+     */
+    public void track(ListenableFuture<?> write, final SegmentedScanResult page) {
+        inFlight.incrementAndGet();
+        Futures.addCallback(write, new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object result) {
+                written.incrementAndGet();
+                completed();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                failed.incrementAndGet();
+                if (firstFailure.compareAndSet(null, new FailedPage(page, t))) {
+                    LOGGER.error("A page of segment " + page.getSegment()
+                            + " with " + getItemCount(page)
+                            + " items could not be written", t);
+                } else {
+                    LOGGER.error("A page of segment " + page.getSegment()
+                            + " could not be written: " + t.getMessage());
+                }
+                completed();
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void completed() {
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (drained) {
+                drained.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every tracked page is written or failed.
+     */
+    public void awaitWritten() throws InterruptedException {
+        synchronized (drained) {
+            while (inFlight.get() > 0) {
+                drained.wait();
+            }
+        }
+    }
+
+    /**
+     * @throws ExecutionException
+     *             caused by the failure of the first page that could not be
+     *             written, if any
+     */
+    public void throwIfFailed() throws ExecutionException {
+        FailedPage failure = firstFailure.get();
+        if (failure != null) {
+            throw new ExecutionException(failed.get()
+                    + " pages could not be written, the first one of segment "
+                    + failure.page.getSegment() + " with "
+                    + getItemCount(failure.page) + " items", failure.cause);
+        }
+    }
+
+    /**
+     * returns the number of pages being written
+     */
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * returns the number of pages written
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * returns the number of pages that could not be written
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * returns the items of the first page that could not be written, or null
+     * if every page was written
+     */
+    public List<Map<String, AttributeValue>> getFailedItems() {
+        FailedPage failure = firstFailure.get();
+        return failure == null ? null : failure.page.getScanResult()
+                .getItems();
+    }
+
+    private static int getItemCount(SegmentedScanResult page) {
+        List<Map<String, AttributeValue>> items = page.getScanResult()
+                .getItems();
+        return items == null ? 0 : items.size();
+    }
+
+    /**
+     * A page that could not be written and why.
+     */
+    private static class FailedPage {
+        private final SegmentedScanResult page;
+        private final Throwable cause;
+
+        FailedPage(SegmentedScanResult page, Throwable cause) {
+            this.page = page;
+            this.cause = cause;
+        }
+    }
+}
@@ -54,6 +54,28 @@ public class BootstrapConstants {
      */
     public static final int MAX_BATCH_SIZE_WRITE_ITEM = 25;
 
+    /**
+     * Max total size of the items of a batch to write items to DynamoDB.
+     */
+    public static final long MAX_BATCH_SIZE_WRITE_ITEM_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Max size of a DynamoDB item.
+     */
+    public static final int MAX_ITEM_SIZE_BYTES = 400 * 1024;
+
+    /**
+     * Items of at least this size are written on their own with PutItem, so
+     * that an item DynamoDB finds larger than MAX_ITEM_SIZE_BYTES does not
+     * fail the batch of the items around it.
+     */
+    public static final int LARGE_ITEM_SIZE_BYTES = 350 * 1024;
+
+    /**
+     * Size of the item written for one write capacity unit.
+     */
+    public static final int WRITE_CAPACITY_UNIT_BYTES = 1024;
+
     /**
      * Max amount of time to back off before retrying.
      */
@@ -89,6 +111,12 @@ public class BootstrapConstants {
      * Max number of bytes in a DynamoDB number attribute.
      */
     public static final int MAX_NUMBER_OF_BYTES_FOR_NUMBER = 21;
+
+    /**
+     * Number of attribute name sizes the ItemSizeCalculator remembers. Must be
+     * a power of 2.
+     */
+    public static final int NAME_SIZE_CACHE_ENTRIES = 1024;
     
     /**
      * Number of bytes for an item being read with strongly consistent reads
@@ -109,4 +137,238 @@ public class BootstrapConstants {
      * Max connection size limit
      */
     public static final int MAX_CONN_SIZE = 5000;
+
+    /**
+     * Interval in milliseconds to wait before checking again for rate limiter
+     * permits when they are acquired without blocking.
+     */
+    public static final long RATE_LIMITER_POLL_INTERVAL_MILLISECONDS = 10;
+
+    /**
+     * Number of threads used to schedule retries and rate limited requests of
+     * the asynchronous scan and write engines.
+     */
+    public static final int ASYNC_SCHEDULER_POOL_SIZE = 1;
+
+    /**
+     * Default number of batch writes in flight at a time for asynchronous
+     * writes.
+     */
+    public static final int ASYNC_MAX_IN_FLIGHT_WRITES = Runtime.getRuntime()
+            .availableProcessors() * 8;
+
+    /**
+     * Execution mode that runs scan and write tasks on thread pools.
+     */
+    public static final String EXECUTION_MODE_THREAD_POOL = "threadPool";
+
+    /**
+     * Execution mode that runs every scan and write task on its own virtual
+     * thread, with the concurrency bounded by semaphores.
+     */
+    public static final String EXECUTION_MODE_VIRTUAL = "virtual";
+
+    /**
+     * Max number of segments DynamoDB allows in a parallel scan.
+     */
+    public static final int MAX_TOTAL_SEGMENTS = 1000000;
+
+    /**
+     * Approximate read capacity units per second one segment consumes when
+     * scanned page after page without waiting.
+     */
+    public static final double ESTIMATED_READ_CAPACITY_PER_SEGMENT = 1000.0;
+
+    /**
+     * Segments are split once fewer than 1/SEGMENT_SPLIT_THRESHOLD_DIVISOR of
+     * the segments the scan started with are still being scanned.
+     */
+    public static final int SEGMENT_SPLIT_THRESHOLD_DIVISOR = 4;
+
+    /**
+     * Max size of a scan page in bytes.
+     */
+    public static final long MAX_SCAN_PAGE_SIZE_BYTES = 1024 * 1024;
+
+    /**
+     * Prefetched scan pages may use at most 1/PREFETCH_MEMORY_DIVISOR of the
+     * max heap size.
+     */
+    public static final int PREFETCH_MEMORY_DIVISOR = 2;
+
+    /**
+     * Default number of pages per segment that are scanned ahead of the pages
+     * handed to the consumer.
+     */
+    public static final int DEFAULT_PREFETCH_DEPTH = 1;
+
+    /**
+     * Default number of threads handing scanned pages to the consumer. With
+     * one, pages are handed over by the thread grabbing them.
+     */
+    public static final int DEFAULT_DISPATCH_THREADS = 1;
+
+    /**
+     * Number of grabbed pages per dispatch thread that may wait to be handed
+     * to the consumer before grabbing blocks.
+     */
+    public static final int DISPATCH_QUEUE_PAGES_PER_THREAD = 2;
+
+    /**
+     * Scanned items handed to the consumer and not written yet may use at most
+     * 1/HANDOFF_MEMORY_DIVISOR of the heap by default.
+     */
+    public static final int HANDOFF_MEMORY_DIVISOR = 4;
+
+    /**
+     * Minimum time between two saves of the scan checkpoint.
+     */
+    public static final long CHECKPOINT_INTERVAL_MILLISECONDS = 10000;
+
+    /**
+     * Size after which an export file is closed and the next part started.
+     */
+    public static final long EXPORT_MAX_FILE_BYTES = 1024L * 1024 * 1024;
+
+    /**
+     * Number of threads writing pages to export files. Writing is bound by
+     * the disk rather than by DynamoDB, and each writing thread holds a
+     * direct buffer of at least EXPORT_BUFFER_BYTES.
+     */
+    public static final int EXPORT_WRITE_THREADS = Runtime.getRuntime()
+            .availableProcessors();
+
+    /**
+     * Initial size of the direct buffers scan pages are encoded in before
+     * being written to an export file.
+     */
+    public static final int EXPORT_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Extension of the files written by the BinaryFileConsumer.
+     */
+    public static final String EXPORT_FILE_EXTENSION = ".ddbitems";
+
+    /**
+     * Size of the ranges item files are cut into to be read in parallel.
+     */
+    public static final long IMPORT_SPLIT_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Max number of pages read from files and waiting to be handed to the
+     * consumer.
+     */
+    public static final int IMPORT_QUEUE_PAGES = 16;
+
+    /**
+     * Export file format: the compact binary format of BinaryItemFormat.
+     */
+    public static final String FILE_FORMAT_BINARY = "binary";
+
+    /**
+     * Export file format: one item per line in DynamoDB JSON.
+     */
+    public static final String FILE_FORMAT_JSON = "json";
+
+    /**
+     * Compression of JSON export files: none.
+     */
+    public static final String COMPRESSION_NONE = "none";
+
+    /**
+     * Compression of JSON export files: gzip.
+     */
+    public static final String COMPRESSION_GZIP = "gzip";
+
+    /**
+     * Compression of JSON export files: zstd, which requires zstd-jni on the
+     * classpath.
+     */
+    public static final String COMPRESSION_ZSTD = "zstd";
+
+    /**
+     * Extension of the files written by the JsonLinesFileConsumer, before the
+     * extension of the compression.
+     */
+    public static final String JSON_FILE_EXTENSION = ".json";
+
+    /**
+     * Size of the buffers of compressing and decompressing streams.
+     */
+    public static final int COMPRESSION_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * Interval at which the AdaptiveRateController increases the rate, and
+     * the least time between two decreases.
+     */
+    public static final long RATE_ADJUST_INTERVAL_MILLISECONDS = 1000;
+
+    /**
+     * Fraction of the ceiling the rate grows by every interval without
+     * throttles.
+     */
+    public static final double RATE_INCREASE_FRACTION = 0.05;
+
+    /**
+     * Factor the rate is multiplied by when requests are throttled.
+     */
+    public static final double RATE_DECREASE_FACTOR = 0.7;
+
+    /**
+     * The rate never drops below this fraction of the ceiling.
+     */
+    public static final double RATE_MIN_FRACTION = 0.05;
+
+    /**
+     * Interval at which the provisioned capacity of the tables is re-read.
+     */
+    public static final long CAPACITY_REFRESH_INTERVAL_MILLISECONDS = 60000;
+
+    /**
+     * Interval at which a section renews its lease on its share of the
+     * capacity and its claims on segments.
+     */
+    public static final long LEASE_RENEW_INTERVAL_MILLISECONDS = 2000;
+
+    /**
+     * Time after which the lease or claim of a section that stopped renewing
+     * it is ignored.
+     */
+    public static final long LEASE_TIMEOUT_MILLISECONDS = 10000;
+
+    /**
+     * Extension of the lease files of the sections.
+     */
+    public static final String LEASE_FILE_EXTENSION = ".lease";
+
+    /**
+     * Extension of the files through which sections claim segments.
+     */
+    public static final String CLAIM_FILE_EXTENSION = ".claim";
+
+    /**
+     * Extension of the files marking the claimed segments that are finished.
+     */
+    public static final String DONE_FILE_EXTENSION = ".done";
+
+    /**
+     * Interval at which the progress of a scan is logged.
+     */
+    public static final long PROGRESS_REPORT_INTERVAL_MILLISECONDS = 60000;
+
+    /**
+     * A segment is reported as straggling when it is expected to finish this
+     * many times later than the median of the segments being scanned.
+     */
+    public static final double STRAGGLER_ETA_FACTOR = 2.0;
+
+    /**
+     * Max number of straggling segments listed in a progress report.
+     */
+    public static final int MAX_REPORTED_STRAGGLERS = 5;
+
+    /**
+     * Weight of the last page in the recent items per second of a segment.
+     */
+    public static final double SEGMENT_THROUGHPUT_SMOOTHING = 0.5;
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A total that only grows, such as the number of pages scanned. Times are
+ * counted in nanoseconds and reported in seconds.
+ */
+public class Counter extends Metric implements CounterMBean {
+
+    private final AtomicLong count;
+    private final double unit;
+
+    /**
+     * @param unit
+     *            the value of one count in the reported unit
+     * @param labels
+     *            label names and values, alternately
+     */
+    public Counter(String name, String help, double unit, String... labels) {
+        super(name, help, labels);
+        this.count = new AtomicLong();
+        this.unit = unit;
+    }
+
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    public void add(long amount) {
+        count.addAndGet(amount);
+    }
+
+    /**
+     * returns the raw count, before conversion to the reported unit
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public double getValue() {
+        return count.get() * unit;
+    }
+
+    @Override
+    public String getType() {
+        return "counter";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        writeSample(out, "", null, null, getValue());
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap.metrics;
+
+/**
+ * A value read when the metrics are reported, such as the number of tasks
+ * queued in an executor.
+ */
+public abstract class Gauge extends Metric implements GaugeMBean {
+
+    /**
+     * @param labels
+     *            label names and values, alternately
+     */
+    protected Gauge(String name, String help, String... labels) {
+        super(name, help, labels);
+    }
+
+    @Override
+    public String getType() {
+        return "gauge";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        writeSample(out, "", null, null, getValue());
+    }
+}
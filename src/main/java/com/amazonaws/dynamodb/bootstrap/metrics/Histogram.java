@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of durations, recorded in nanoseconds. Like an HDR histogram,
+ * every power of two is divided into SUB_BUCKETS buckets, so a percentile is
+ * known within 25% whatever its magnitude, and recording a value is a few
+ * shifts and an atomic increment, without locking or allocating.
+ *
+ * Prometheus gets the cumulative counts at the powers of two of nanoseconds
+ * from MIN_REPORTED_POWER to MAX_REPORTED_POWER, about 131 microseconds to
+ * 34 seconds, in seconds.
+ */
+public class Histogram extends Metric implements HistogramMBean {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private static final int MIN_REPORTED_POWER = 17;
+    private static final int MAX_REPORTED_POWER = 35;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong max;
+
+    /**
+     * @param labels
+     *            label names and values, alternately
+     */
+    public Histogram(String name, String help, String... labels) {
+        super(name, help, labels);
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.count = new AtomicLong();
+        this.sum = new AtomicLong();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a duration in nanoseconds. Negative durations count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long previous;
+        while (value > (previous = max.get())
+                && !max.compareAndSet(previous, value)) {
+            // retry until the max is at least the value
+        }
+    }
+
+    /**
+     * returns the bucket of the value: the values below SUB_BUCKETS have a
+     * bucket each, the others are bucketed by their highest bit and the
+     * SUB_BUCKET_BITS bits below it
+     */
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift)
+                - SUB_BUCKETS;
+    }
+
+    /**
+     * returns the smallest value above the values of the bucket
+     */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 1;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (index % SUB_BUCKETS + SUB_BUCKETS + 1) << shift;
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * returns the sum of the recorded durations in nanoseconds
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * returns the upper bound of the bucket of the given quantile of the
+     * recorded durations, in nanoseconds, or 0 if none was recorded
+     */
+    public long getQuantile(double quantile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long total = count.get();
+        return total == 0 ? 0 : sum.get() / NANOS_PER_MILLI / total;
+    }
+
+    @Override
+    public double get50thPercentileMillis() {
+        return getQuantile(0.5) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get90thPercentileMillis() {
+        return getQuantile(0.9) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double get99thPercentileMillis() {
+        return getQuantile(0.99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return max.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public String getType() {
+        return "histogram";
+    }
+
+    @Override
+    void writeSamples(StringBuilder out) {
+        // the counts are read while durations are recorded, so the total is
+        // the sum of the buckets read rather than count, which may be ahead
+        long cumulative = 0;
+        int bucket = 0;
+        for (int power = MIN_REPORTED_POWER; power <= MAX_REPORTED_POWER; power++) {
+            int end = index(1L << power);
+            for (; bucket < end; bucket++) {
+                cumulative += buckets.get(bucket);
+            }
+            writeSample(out, "_bucket", "le",
+                    Double.toString((1L << power) / NANOS_PER_SECOND),
+                    cumulative);
+        }
+        for (; bucket < BUCKETS; bucket++) {
+            cumulative += buckets.get(bucket);
+        }
+        writeSample(out, "_bucket", "le", "+Inf", cumulative);
+        writeSample(out, "_sum", null, null, sum.get() / NANOS_PER_SECOND);
+        writeSample(out, "_count", null, null, cumulative);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap.metrics;
+
+/**
+ * A named measurement of the pipeline, with optional labels telling apart
+ * the measurements of the same name, for instance the segments of a scan.
+ */
+public abstract class Metric {
+
+    private final String name;
+    private final String help;
+    private final String[] labels;
+
+    /**
+     * @param labels
+     *            label names and values, alternately
+     */
+    protected Metric(String name, String help, String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException(
+                    "Labels must be given as name and value pairs");
+        }
+        this.name = name;
+        this.help = help;
+        this.labels = labels.clone();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * returns the label names and values, alternately
+     */
+    public String[] getLabels() {
+        return labels.clone();
+    }
+
+    /**
+     * returns the Prometheus type of the metric: counter, gauge or histogram
+     */
+    public abstract String getType();
+
+    /**
+     * Appends the samples of the metric in the Prometheus text format.
+     */
+    abstract void writeSamples(StringBuilder out);
+
+    /**
+     * Appends a sample line of the metric, with the labels of the metric and
+     * an optional extra label.
+     */
+    void writeSample(StringBuilder out, String suffix, String extraLabel,
+            String extraValue, double value) {
+        out.append(name).append(suffix);
+        if (labels.length > 0 || extraLabel != null) {
+            out.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendLabel(out, labels[i], labels[i + 1]);
+            }
+            if (extraLabel != null) {
+                if (labels.length > 0) {
+                    out.append(',');
+                }
+                appendLabel(out, extraLabel, extraValue);
+            }
+            out.append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static void appendLabel(StringBuilder out, String label,
+            String value) {
+        out.append(label).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
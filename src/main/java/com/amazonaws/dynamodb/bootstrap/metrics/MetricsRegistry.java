@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap.metrics;
+
+import java.util.Hashtable;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Holds the metrics of the pipeline, creating each the first time it is
+ * asked for, and reports them in the Prometheus text format and, once
+ * registerMBeans is called, as JMX MBeans.
+ */
+public class MetricsRegistry {
+
+    /**
+     * Logger for the MetricsRegistry.
+     */
+    private static final Logger LOGGER = LogManager
+            .getLogger(MetricsRegistry.class);
+
+    /**
+     * Domain of the ObjectNames of the MBeans.
+     */
+    public static final String JMX_DOMAIN = "com.amazonaws.dynamodb.bootstrap";
+
+    private static final double NANOS = 1e-9;
+
+    // sorted so that the metrics of the same name are reported together
+    private final ConcurrentNavigableMap<String, Metric> metrics;
+    private volatile MBeanServer mbeanServer;
+
+    public MetricsRegistry() {
+        this.metrics = new ConcurrentSkipListMap<String, Metric>();
+    }
+
+    /**
+     * returns the counter of the given name and labels, created if needed
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return getOrCreate(new Counter(name, help, 1, labels));
+    }
+
+    /**
+     * returns the counter of time of the given name and labels, created if
+     * needed, to which nanoseconds are added and which reports seconds
+     */
+    public Counter timeCounter(String name, String help, String... labels) {
+        return getOrCreate(new Counter(name, help, NANOS, labels));
+    }
+
+    /**
+     * returns the histogram of the given name and labels, created if needed
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        return getOrCreate(new Histogram(name, help, labels));
+    }
+
+    /**
+     * Adds the gauge, replacing any gauge of the same name and labels.
+     */
+    public void register(Gauge gauge) {
+        Metric previous = metrics.put(key(gauge), gauge);
+        if (previous != null) {
+            unregisterMBean(previous);
+        }
+        registerMBean(gauge);
+    }
+
+    /**
+     * Removes the gauge, unless it was replaced by another gauge of the same
+     * name and labels.
+     */
+    public void unregister(Gauge gauge) {
+        if (metrics.remove(key(gauge), gauge)) {
+            unregisterMBean(gauge);
+        }
+    }
+
+    /**
+     * returns the metric of the given name and labels, or null if there is
+     * none
+     */
+    public Metric get(String name, String... labels) {
+        return metrics.get(key(name, labels));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Metric> T getOrCreate(T created) {
+        String key = key(created);
+        Metric metric = metrics.get(key);
+        if (metric == null) {
+            metric = metrics.putIfAbsent(key, created);
+            if (metric == null) {
+                registerMBean(created);
+                return created;
+            }
+        }
+        if (metric.getClass() != created.getClass()) {
+            throw new IllegalArgumentException(created.getName()
+                    + " is already a " + metric.getType());
+        }
+        return (T) metric;
+    }
+
+    /**
+     * Registers every metric, those created since included, with the MBean
+     * server.
+     */
+    public void registerMBeans(MBeanServer server) {
+        this.mbeanServer = server;
+        for (Metric metric : metrics.values()) {
+            registerMBean(metric);
+        }
+    }
+
+    /**
+     * Unregisters the metrics from the MBean server.
+     */
+    public void unregisterMBeans() {
+        for (Metric metric : metrics.values()) {
+            unregisterMBean(metric);
+        }
+        mbeanServer = null;
+    }
+
+    /**
+     * returns the metrics in the Prometheus text exposition format
+     */
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder();
+        String name = null;
+        for (Metric metric : metrics.values()) {
+            if (!metric.getName().equals(name)) {
+                name = metric.getName();
+                out.append("# HELP ").append(name).append(' ')
+                        .append(metric.getHelp().replace("\\", "\\\\")
+                                .replace("\n", "\\n")).append('\n');
+                out.append("# TYPE ").append(name).append(' ')
+                        .append(metric.getType()).append('\n');
+            }
+            metric.writeSamples(out);
+        }
+        return out.toString();
+    }
+
+    private void registerMBean(Metric metric) {
+        MBeanServer server = mbeanServer;
+        if (server == null) {
+            return;
+        }
+        try {
+            ObjectName objectName = objectName(metric);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metric, objectName);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Could not register the MBean of " + metric.getName()
+                    + ": " + e.getMessage());
+        }
+    }
+
+    private void unregisterMBean(Metric metric) {
+        MBeanServer server = mbeanServer;
+        if (server == null) {
+            return;
+        }
+        try {
+            ObjectName objectName = objectName(metric);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Could not unregister the MBean of "
+                    + metric.getName() + ": " + e.getMessage());
+        }
+    }
+
+    static ObjectName objectName(Metric metric) throws JMException {
+        Hashtable<String, String> properties = new Hashtable<String, String>();
+        properties.put("type", "Metrics");
+        properties.put("name", metric.getName());
+        String[] labels = metric.getLabels();
+        for (int i = 0; i < labels.length; i += 2) {
+            properties.put(labels[i], ObjectName.quote(labels[i + 1]));
+        }
+        return new ObjectName(JMX_DOMAIN, properties);
+    }
+
+    private static String key(Metric metric) {
+        return key(metric.getName(), metric.getLabels());
+    }
+
+    private static String key(String name, String... labels) {
+        // '\0' sorts first, so the metrics of a name are next to each other
+        StringBuilder key = new StringBuilder(name);
+        for (String label : labels) {
+            key.append('\0').append(label);
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap.metrics;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * The metrics of the transfer, in the registry every part of the pipeline
+ * reports to. Counters of time add nanoseconds and report seconds.
+ */
+public class PipelineMetrics {
+
+    /**
+     * Registry of the metrics of the transfer.
+     */
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    private static final String PREFIX = "ddb_bootstrap_";
+
+    public static final Counter SCAN_BACKOFF_TIME = REGISTRY.timeCounter(
+            PREFIX + "scan_backoff_seconds_total",
+            "Time scans spent backing off after failed requests");
+
+    public static final Counter WRITE_BATCHES = REGISTRY.counter(PREFIX
+            + "write_batches_total", "BatchWriteItem requests sent");
+
+    public static final Counter PUT_ITEMS = REGISTRY.counter(PREFIX
+            + "put_items_total", "PutItem requests sent for large items");
+
+    public static final Counter WRITTEN_ITEMS = REGISTRY.counter(PREFIX
+            + "written_items_total", "Items written to the destination table");
+
+    public static final Counter UNPROCESSED_ITEMS = REGISTRY.counter(PREFIX
+            + "unprocessed_items_total",
+            "Items to write again because DynamoDB left them unprocessed or failed their request with a retryable error");
+
+    public static final Counter DEAD_LETTER_ITEMS = REGISTRY.counter(PREFIX
+            + "dead_letter_items_total",
+            "Items written to the dead letter file");
+
+    public static final Counter WRITE_BACKOFF_TIME = REGISTRY.timeCounter(
+            PREFIX + "write_backoff_seconds_total",
+            "Time writes spent backing off before retrying items");
+
+    public static final Histogram WRITE_LATENCY = REGISTRY.histogram(PREFIX
+            + "write_latency_seconds",
+            "Duration of the BatchWriteItem and PutItem requests");
+
+    public static final Counter READ_RATE_LIMITER_WAIT_TIME = REGISTRY
+            .timeCounter(PREFIX + "rate_limiter_wait_seconds_total",
+                    "Time spent waiting for read or write capacity",
+                    "operation", "read");
+
+    public static final Counter WRITE_RATE_LIMITER_WAIT_TIME = REGISTRY
+            .timeCounter(PREFIX + "rate_limiter_wait_seconds_total",
+                    "Time spent waiting for read or write capacity",
+                    "operation", "write");
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * returns the metrics of a segment of the scan, created if needed
+     */
+    public static SegmentMetrics getSegmentMetrics(int segment,
+            int totalSegments) {
+        return new SegmentMetrics(Integer.toString(segment),
+                Integer.toString(totalSegments));
+    }
+
+    /**
+     * returns the nanoseconds in the given seconds, as returned by
+     * RateLimiter.acquire
+     */
+    public static long toNanos(double seconds) {
+        return (long) (seconds * NANOS_PER_SECOND);
+    }
+
+    /**
+     * Records a BatchWriteItem request answered in the given nanoseconds,
+     * which wrote some items and left others to write again.
+     */
+    public static void batchWritten(int written, int unprocessed, long nanos) {
+        WRITE_BATCHES.increment();
+        WRITTEN_ITEMS.add(written);
+        UNPROCESSED_ITEMS.add(unprocessed);
+        WRITE_LATENCY.record(nanos);
+    }
+
+    /**
+     * Reports the number of tasks queued in and run by the executor, under
+     * the given pool name.
+     */
+    public static void registerExecutor(String pool,
+            final ThreadPoolExecutor executor) {
+        REGISTRY.register(new Gauge(PREFIX + "executor_queue_depth",
+                "Tasks waiting in the queue of the executor", "pool", pool) {
+            @Override
+            public double getValue() {
+                return executor.getQueue().size();
+            }
+        });
+        REGISTRY.register(new Gauge(PREFIX + "executor_active_threads",
+                "Threads of the executor running tasks", "pool", pool) {
+            @Override
+            public double getValue() {
+                return executor.getActiveCount();
+            }
+        });
+    }
+
+    /**
+     * The metrics of a segment of the scan. A segment split in two reports
+     * as two new segments of twice as many.
+     */
+    public static class SegmentMetrics {
+        private final Counter pages;
+        private final Counter items;
+        private final Counter consumedReadCapacity;
+        private final Histogram latency;
+
+        SegmentMetrics(String segment, String totalSegments) {
+            this.pages = REGISTRY.counter(PREFIX + "scan_pages_total",
+                    "Pages scanned", "segment", segment, "total_segments",
+                    totalSegments);
+            this.items = REGISTRY.counter(PREFIX + "scan_items_total",
+                    "Items scanned", "segment", segment, "total_segments",
+                    totalSegments);
+            this.consumedReadCapacity = REGISTRY.counter(PREFIX
+                    + "scan_consumed_read_capacity_total",
+                    "Read capacity units consumed by the scan", "segment",
+                    segment, "total_segments", totalSegments);
+            this.latency = REGISTRY.histogram(PREFIX + "scan_latency_seconds",
+                    "Duration of the successful Scan requests", "segment",
+                    segment, "total_segments", totalSegments);
+        }
+
+        /**
+         * Records a page scanned in the given nanoseconds.
+         */
+        public void pageScanned(int itemCount, int consumedCapacity,
+                long nanos) {
+            pages.increment();
+            items.add(itemCount);
+            consumedReadCapacity.add(consumedCapacity);
+            latency.record(nanos);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.*;
+import static org.powermock.api.easymock.PowerMock.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.Response;
+import com.amazonaws.handlers.HandlerAfterAttemptContext;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+
+/**
+ * Unit Tests for AdaptiveRateController
+ */
+@RunWith(PowerMockRunner.class)
+@PowerMockIgnore("javax.management.*")
+public class AdaptiveRateControllerTest {
+
+    private static String tableName = "testTableName";
+
+    /**
+     * Test that a throttle cuts the rate once per interval, and that the rate
+     * grows back to the ceiling, but not past it, while requests succeed.
+     */
+    @Test
+    public void testThrottlesDecreaseAndSuccessesIncrease() {
+        AdaptiveRateController controller = new AdaptiveRateController(100);
+
+        controller.throttled();
+        controller.throttled();
+        assertEquals(70, controller.getRate(), 0.001);
+        assertEquals(70, controller.getRateLimiter().getRate(), 0.001);
+
+        controller.adjust();
+        assertEquals(70, controller.getRate(), 0.001);
+
+        controller.succeeded();
+        controller.adjust();
+        assertEquals(75, controller.getRate(), 0.001);
+
+        controller.adjust();
+        assertEquals(75, controller.getRate(), 0.001);
+
+        for (int i = 0; i < 10; i++) {
+            controller.succeeded();
+            controller.adjust();
+        }
+        assertEquals(100, controller.getRate(), 0.001);
+    }
+
+    /**
+     * Test that the ceiling follows the capacity of the tracked table, and
+     * that the rate drops with it.
+     */
+    @Test
+    public void testCeilingFollowsCapacity() {
+        AmazonDynamoDB mockClient = createMock(AmazonDynamoDB.class);
+        expect(mockClient.describeTable(tableName)).andReturn(
+                describe(400)).once();
+        expect(mockClient.describeTable(tableName)).andReturn(
+                describe(100)).once();
+        replayAll();
+
+        AdaptiveRateController controller = new AdaptiveRateController(100);
+        controller.trackCapacity(mockClient, tableName, true, 0.5);
+
+        controller.refreshCapacity();
+        assertEquals(200, controller.getCeiling(), 0.001);
+        assertEquals(100, controller.getRate(), 0.001);
+        controller.succeeded();
+        controller.adjust();
+        assertEquals(110, controller.getRate(), 0.001);
+
+        controller.refreshCapacity();
+        assertEquals(50, controller.getCeiling(), 0.001);
+        assertEquals(50, controller.getRate(), 0.001);
+
+        verifyAll();
+    }
+
+    /**
+     * Test that the handler of a client ignores the requests sent before it
+     * is given a controller, and then tells the controller about throttles.
+     */
+    @Test
+    public void testClientHandlerReportsThrottles() {
+        AdaptiveRateController controller = new AdaptiveRateController(100);
+        AdaptiveRateController.ClientHandler handler = new AdaptiveRateController.ClientHandler();
+        HandlerAfterAttemptContext throttled = HandlerAfterAttemptContext
+                .builder()
+                .withException(new ProvisionedThroughputExceededException(
+                        "throttled")).build();
+        ((AmazonServiceException) throttled.getException())
+                .setErrorCode("ProvisionedThroughputExceededException");
+
+        handler.afterAttempt(throttled);
+        assertEquals(100, controller.getRate(), 0.001);
+
+        handler.setController(controller);
+        handler.afterAttempt(throttled);
+        assertEquals(70, controller.getRate(), 0.001);
+    }
+
+    /**
+     * Test that the handler of a client counts the responses of scans and
+     * writes as successes, but not those of the controller's own
+     * describeTable requests.
+     */
+    @Test
+    public void testClientHandlerCountsOnlyControlledRequests() {
+        AdaptiveRateController controller = new AdaptiveRateController(100);
+        AdaptiveRateController.ClientHandler handler = new AdaptiveRateController.ClientHandler();
+        handler.setController(controller);
+        controller.throttled();
+        controller.adjust();
+        assertEquals(70, controller.getRate(), 0.001);
+
+        handler.afterResponse(null, new Response<DescribeTableResult>(
+                describe(100), null));
+        controller.adjust();
+        assertEquals(70, controller.getRate(), 0.001);
+
+        handler.afterResponse(null, new Response<ScanResult>(new ScanResult(),
+                null));
+        controller.adjust();
+        assertTrue(controller.getRate() > 70);
+    }
+
+    private static DescribeTableResult describe(long readCapacity) {
+        return new DescribeTableResult().withTable(new TableDescription()
+                .withProvisionedThroughput(new ProvisionedThroughputDescription()
+                        .withReadCapacityUnits(readCapacity)
+                        .withWriteCapacityUnits(1L)));
+    }
+}
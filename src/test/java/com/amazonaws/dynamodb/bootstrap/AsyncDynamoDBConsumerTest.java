@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.junit.Assert.*;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.IAnswer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+/**
+ * Unit Tests for AsyncDynamoDBConsumer
+ *
+ */
+@RunWith(PowerMockRunner.class)
+@PowerMockIgnore("javax.management.*")
+public class AsyncDynamoDBConsumerTest {
+
+    private static String tableName = "testTableName";
+
+    /**
+     * Test that the future returned by writeResult completes once every batch
+     * is written, including batches whose unprocessed items were retried.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testWriteResultRetriesUnprocessedItems() throws Exception {
+        final int numItems = 30;
+        List<Map<String, AttributeValue>> items = new LinkedList<Map<String, AttributeValue>>();
+        for (int i = 0; i < numItems; i++) {
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("key", new AttributeValue("attribute value " + i));
+            items.add(item);
+        }
+        ScanResult scanResult = new ScanResult().withItems(items);
+
+        AmazonDynamoDBAsync mockClient = createMock(AmazonDynamoDBAsync.class);
+        // the first write leaves one unprocessed item, every other one succeeds
+        expect(mockClient.batchWriteItemAsync(anyObject(BatchWriteItemRequest.class),
+                anyObject(AsyncHandler.class))).andAnswer(
+                new IAnswer<Future<BatchWriteItemResult>>() {
+                    private boolean first = true;
+
+                    @Override
+                    public Future<BatchWriteItemResult> answer() {
+                        BatchWriteItemRequest request = (BatchWriteItemRequest) getCurrentArguments()[0];
+                        AsyncHandler<BatchWriteItemRequest, BatchWriteItemResult> handler = (AsyncHandler<BatchWriteItemRequest, BatchWriteItemResult>) getCurrentArguments()[1];
+                        BatchWriteItemResult result = new BatchWriteItemResult();
+                        if (first) {
+                            first = false;
+                            Map<String, List<WriteRequest>> unprocessed = new HashMap<String, List<WriteRequest>>();
+                            unprocessed.put(tableName, request.getRequestItems()
+                                    .get(tableName).subList(0, 1));
+                            result.setUnprocessedItems(unprocessed);
+                        }
+                        handler.onSuccess(request, result);
+                        return null;
+                    }
+                }).times(3);
+
+        replayAll();
+        AsyncDynamoDBConsumer consumer = new AsyncDynamoDBConsumer(mockClient,
+                tableName, 100.0, Executors.newSingleThreadScheduledExecutor(), 1);
+        Future<Void> written = consumer.writeResult(new SegmentedScanResult(
+                scanResult, 0));
+        written.get(10, TimeUnit.SECONDS);
+        consumer.shutdown(true);
+
+        assertTrue(written.isDone());
+        verifyAll();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.junit.Assert.*;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.IAnswer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Unit Tests for AsyncParallelScanExecutor
+ *
+ */
+@RunWith(PowerMockRunner.class)
+@PowerMockIgnore("javax.management.*")
+public class AsyncParallelScanExecutorTest {
+
+    private static String tableName = "testTableName";
+
+    /**
+     * Answers a scan with a page that has a LastEvaluatedKey for the first
+     * request of a segment, and with the last page for the second one.
+     */
+    private static class PagedScanAnswer implements IAnswer<Future<ScanResult>> {
+        @SuppressWarnings("unchecked")
+        @Override
+        public Future<ScanResult> answer() {
+            ScanRequest request = (ScanRequest) getCurrentArguments()[0];
+            AsyncHandler<ScanRequest, ScanResult> handler = (AsyncHandler<ScanRequest, ScanResult>) getCurrentArguments()[1];
+            ScanResult result = new ScanResult()
+                    .withItems(Collections.<Map<String, AttributeValue>> emptyList())
+                    .withConsumedCapacity(new ConsumedCapacity().withCapacityUnits(1.0));
+            if (request.getExclusiveStartKey() == null) {
+                Map<String, AttributeValue> lastKey = new HashMap<String, AttributeValue>();
+                lastKey.put("key", new AttributeValue("last"));
+                result.setLastEvaluatedKey(lastKey);
+            }
+            handler.onSuccess(request, result);
+            return null;
+        }
+    }
+
+    /**
+     * Records the scans, to be answered by the test in the order it chooses.
+     */
+    private static class DeferredScanAnswer implements
+            IAnswer<Future<ScanResult>> {
+        private final BlockingQueue<Object[]> calls = new LinkedBlockingQueue<Object[]>();
+
+        @Override
+        public Future<ScanResult> answer() {
+            calls.add(getCurrentArguments());
+            return null;
+        }
+
+        /**
+         * Answers the oldest scan with a page of the given number of items.
+         * 
+         * @return the segment of the scan
+         */
+        @SuppressWarnings("unchecked")
+        int complete(int items, boolean lastPage) throws InterruptedException {
+            Object[] call = calls.poll(10, TimeUnit.SECONDS);
+            assertNotNull(call);
+            ScanRequest request = (ScanRequest) call[0];
+            List<Map<String, AttributeValue>> pageItems = new ArrayList<Map<String, AttributeValue>>();
+            for (int i = 0; i < items; i++) {
+                pageItems.add(new HashMap<String, AttributeValue>());
+            }
+            ScanResult result = new ScanResult().withItems(pageItems)
+                    .withConsumedCapacity(
+                            new ConsumedCapacity().withCapacityUnits(1.0));
+            if (!lastPage) {
+                Map<String, AttributeValue> lastKey = new HashMap<String, AttributeValue>();
+                lastKey.put("key", new AttributeValue("last"));
+                result.setLastEvaluatedKey(lastKey);
+            }
+            ((AsyncHandler<ScanRequest, ScanResult>) call[1]).onSuccess(
+                    request, result);
+            return request.getSegment();
+        }
+
+        /**
+         * returns the segment of the oldest scan not answered yet
+         */
+        int nextSegment() throws InterruptedException {
+            Object[] call = calls.poll(10, TimeUnit.SECONDS);
+            assertNotNull(call);
+            return ((ScanRequest) call[0]).getSegment();
+        }
+    }
+
+    /**
+     * Scans the first page of three segments with one request in flight, the
+     * first segment having the most items and the last one the fewest, then
+     * returns the segment whose second page is requested after the first
+     * segment's.
+     */
+    @SuppressWarnings("unchecked")
+    private static int segmentScannedAfterFirst(SegmentPriority priority,
+            List<AbstractParallelScanExecutor.SegmentStatus> statuses)
+            throws Exception {
+        int segments = 3;
+        DeferredScanAnswer answer = new DeferredScanAnswer();
+        AmazonDynamoDBAsync mockClient = createMock(AmazonDynamoDBAsync.class);
+        expect(mockClient.scanAsync(anyObject(ScanRequest.class),
+                anyObject(AsyncHandler.class))).andAnswer(answer).anyTimes();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        // pages are handed over on the thread answering the scan
+        NonBlockingRateLimiter rateLimiter = new NonBlockingRateLimiter(
+                RateLimiter.create(1e9), scheduler);
+
+        replayAll();
+        AsyncParallelScanExecutor executor = new AsyncParallelScanExecutor(
+                segments, 1);
+        executor.setSegmentPriority(priority);
+        for (int segment = 0; segment < segments; segment++) {
+            ScanRequest request = new ScanRequest().withTableName(tableName)
+                    .withTotalSegments(segments).withSegment(segment);
+            executor.addWorker(new AsyncScanSegmentWorker(mockClient,
+                    rateLimiter, scheduler, request), segment);
+        }
+        assertEquals(0, answer.complete(30, false));
+        assertEquals(1, answer.complete(20, false));
+        assertEquals(2, answer.complete(10, false));
+        for (int segment = 0; segment < segments; segment++) {
+            assertEquals(segment, executor.grab().getSegment());
+        }
+        // segments 1 and 2 wait while the second page of segment 0 is scanned
+        assertEquals(0, answer.complete(0, true));
+        int next = answer.nextSegment();
+        statuses.addAll(executor.getSegmentStatuses());
+        scheduler.shutdown();
+        return next;
+    }
+
+    /**
+     * Test that the segments waiting for a request in flight are scanned in
+     * the order they became ready by default, and the segments that scanned
+     * the fewest items first with the MOST_REMAINING priority.
+     */
+    @Test
+    public void testSegmentPriority() throws Exception {
+        List<AbstractParallelScanExecutor.SegmentStatus> statuses = new ArrayList<AbstractParallelScanExecutor.SegmentStatus>();
+        assertEquals(1, segmentScannedAfterFirst(SegmentPriority.COMPLETION,
+                statuses));
+        assertEquals(2, segmentScannedAfterFirst(
+                SegmentPriority.MOST_REMAINING, statuses));
+
+        AbstractParallelScanExecutor.SegmentStatus first = statuses.get(0);
+        assertEquals(AbstractParallelScanExecutor.State.WAITING,
+                first.getState());
+        assertEquals(2, first.getPages());
+        assertEquals(30, first.getItems());
+        assertEquals(1, first.getWaitingPages());
+    }
+
+    /**
+     * Test that every page of every segment is grabbed, and that the scan is
+     * finished once the last page of each segment was grabbed, even when there
+     * are more segments than requests allowed in flight.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testGrabAllPagesWithMoreSegmentsThanInFlight() throws Exception {
+        int segments = 3;
+        AmazonDynamoDBAsync mockClient = createMock(AmazonDynamoDBAsync.class);
+        expect(mockClient.scanAsync(anyObject(ScanRequest.class),
+                anyObject(AsyncHandler.class))).andAnswer(new PagedScanAnswer())
+                .times(segments * 2);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        NonBlockingRateLimiter rateLimiter = new NonBlockingRateLimiter(
+                RateLimiter.create(1000.0), scheduler);
+
+        replayAll();
+        AsyncParallelScanExecutor executor = new AsyncParallelScanExecutor(
+                segments, 1);
+        for (int segment = 0; segment < segments; segment++) {
+            ScanRequest request = new ScanRequest().withTableName(tableName)
+                    .withTotalSegments(segments).withSegment(segment);
+            executor.addWorker(new AsyncScanSegmentWorker(mockClient,
+                    rateLimiter, scheduler, request), segment);
+        }
+
+        int pages = 0;
+        while (!executor.finished()) {
+            assertNotNull(executor.grab());
+            pages++;
+        }
+        scheduler.shutdown();
+
+        assertEquals(segments * 2, pages);
+        verifyAll();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Unit Tests for BinaryFileConsumer and BinaryItemReader
+ */
+public class BinaryFileConsumerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static Map<String, AttributeValue> item(int i) {
+        Map<String, AttributeValue> nested = new HashMap<String, AttributeValue>();
+        nested.put("flag", new AttributeValue().withBOOL(i % 2 == 0));
+        nested.put("nothing", new AttributeValue().withNULL(true));
+
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("key", new AttributeValue("item \u00e9 " + i));
+        item.put("number", new AttributeValue().withN(Integer.toString(i)));
+        item.put("binary", new AttributeValue().withB(ByteBuffer
+                .wrap(new byte[] { 1, 2, (byte) i })));
+        item.put("strings", new AttributeValue().withSS("a", "b"));
+        item.put("numbers", new AttributeValue().withNS("1", "2.5"));
+        item.put("binaries", new AttributeValue().withBS(ByteBuffer
+                .wrap(new byte[] { 3 })));
+        item.put("map", new AttributeValue().withM(nested));
+        item.put("list", new AttributeValue().withL(new AttributeValue("x"),
+                new AttributeValue().withN("7")));
+        return item;
+    }
+
+    /**
+     * Test that items written by the consumer, across rolled files and
+     * segments, are read back unchanged.
+     */
+    @Test
+    public void testWrittenItemsAreReadBack() throws Exception {
+        File directory = folder.newFolder();
+        BinaryFileConsumer consumer = new BinaryFileConsumer(directory, 1,
+                Executors.newFixedThreadPool(2));
+
+        List<Map<String, AttributeValue>> expected = new ArrayList<Map<String, AttributeValue>>();
+        for (int page = 0; page < 4; page++) {
+            List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+            for (int i = 0; i < 10; i++) {
+                items.add(item(page * 10 + i));
+            }
+            expected.addAll(items);
+            consumer.writeResult(
+                    new SegmentedScanResult(new ScanResult().withItems(items),
+                            page % 2, 2, false)).get(10, TimeUnit.SECONDS);
+        }
+        consumer.shutdown(true);
+
+        File[] files = directory.listFiles();
+        assertEquals(4, files.length);
+        List<Map<String, AttributeValue>> read = new ArrayList<Map<String, AttributeValue>>();
+        for (File file : files) {
+            BinaryItemReader reader = new BinaryItemReader(file);
+            try {
+                List<Map<String, AttributeValue>> block;
+                while ((block = reader.readBlock()) != null) {
+                    read.addAll(block);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        assertEquals(expected.size(), read.size());
+        assertTrue(read.containsAll(expected));
+        assertTrue(Arrays.asList(directory.list()).contains(
+                "segment-1-2-1.ddbitems"));
+    }
+}
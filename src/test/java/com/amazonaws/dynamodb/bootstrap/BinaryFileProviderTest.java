@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.dynamodb.bootstrap.metrics.Gauge;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Unit Tests for BinaryFileProvider
+ */
+public class BinaryFileProviderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Consumer that keeps the items it is given.
+     */
+    static class CollectingConsumer extends AbstractLogConsumer {
+        final List<Map<String, AttributeValue>> items = Collections
+                .synchronizedList(new ArrayList<Map<String, AttributeValue>>());
+
+        CollectingConsumer() {
+            this.threadPool = Executors.newSingleThreadExecutor();
+        }
+
+        @Override
+        public ListenableFuture<Void> writeResult(SegmentedScanResult result) {
+            items.addAll(result.getScanResult().getItems());
+            return null;
+        }
+    }
+
+    /**
+     * Test that every item of the exported files is imported exactly once
+     * when the files are read in ranges that start and end inside blocks.
+     */
+    @Test
+    public void testItemsAreImportedOnceAcrossRanges() throws Exception {
+        File directory = folder.newFolder();
+        BinaryFileConsumer exporter = new BinaryFileConsumer(directory,
+                Executors.newFixedThreadPool(2));
+        List<Map<String, AttributeValue>> expected = new ArrayList<Map<String, AttributeValue>>();
+        for (int page = 0; page < 20; page++) {
+            List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+            for (int i = 0; i < 5; i++) {
+                Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+                item.put("key", new AttributeValue().withN(Integer
+                        .toString(page * 5 + i)));
+                items.add(item);
+            }
+            expected.addAll(items);
+            exporter.writeResult(
+                    new SegmentedScanResult(new ScanResult().withItems(items),
+                            page % 2, 2, false)).get(10, TimeUnit.SECONDS);
+        }
+        exporter.shutdown(true);
+        assertEquals(2, directory.listFiles().length);
+
+        CollectingConsumer consumer = new CollectingConsumer();
+        BinaryFileProvider provider = new BinaryFileProvider(directory, 37,
+                Executors.newFixedThreadPool(3));
+        provider.setMaxBytesInFlight(100);
+        provider.pipe(consumer);
+
+        assertEquals(expected.size(), consumer.items.size());
+        assertTrue(consumer.items.containsAll(expected));
+    }
+
+    /**
+     * Test that the import stops as soon as a range fails, instead of once
+     * every other range is read and written.
+     */
+    @Test
+    public void testFailedRangeStopsImport() throws Exception {
+        File directory = folder.newFolder();
+        BinaryFileConsumer exporter = new BinaryFileConsumer(directory,
+                Executors.newSingleThreadExecutor());
+        for (int page = 0; page < 20; page++) {
+            exporter.writeResult(
+                    new SegmentedScanResult(new ScanResult().withItems(Collections
+                            .singletonList(BinaryFileConsumerTest.item(page))),
+                            0, 1, false)).get(10, TimeUnit.SECONDS);
+        }
+        exporter.shutdown(true);
+        // read first, since the files are read in the order of their names
+        FileOutputStream corrupt = new FileOutputStream(new File(directory,
+                "a" + BootstrapConstants.EXPORT_FILE_EXTENSION));
+        corrupt.write(new byte[] { 1, 2, 3 });
+        corrupt.close();
+
+        CollectingConsumer consumer = new CollectingConsumer();
+        BinaryFileProvider provider = new BinaryFileProvider(directory, 100,
+                Executors.newSingleThreadExecutor());
+        try {
+            provider.pipe(consumer);
+            fail("the import should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertTrue(consumer.items.isEmpty());
+    }
+
+    /**
+     * Test that a source file that cannot be read fails the provider before
+     * any range is read.
+     */
+    @Test(expected = IOException.class)
+    public void testMissingSourceFails() throws Exception {
+        new BinaryFileProvider(new File(folder.getRoot(), "missing"
+                + BootstrapConstants.EXPORT_FILE_EXTENSION),
+                Executors.newSingleThreadExecutor());
+    }
+
+    /**
+     * Test that the bytes of a page the consumer fails to take are given
+     * back to the hand off budget, and that the fill level is exposed until
+     * the provider is shut down.
+     */
+    @Test
+    public void testFailedHandOffReleasesBytes() throws Exception {
+        AbstractLogProvider provider = new AbstractLogProvider() {
+            @Override
+            public void pipe(AbstractLogConsumer consumer) {
+                registerMetrics();
+            }
+        };
+        provider.threadPool = Executors.newSingleThreadExecutor();
+        provider.setMaxBytesInFlight(1000);
+        provider.pipe(null);
+        AbstractLogConsumer consumer = new CollectingConsumer() {
+            @Override
+            public ListenableFuture<Void> writeResult(SegmentedScanResult result) {
+                throw new IllegalStateException("shut down");
+            }
+        };
+        ScanResult page = new ScanResult().withItems(Collections
+                .singletonList(BinaryFileConsumerTest.item(0)));
+        try {
+            provider.handOff(consumer, new SegmentedScanResult(page, 0, 1,
+                    false));
+            fail("the hand off should fail");
+        } catch (IllegalStateException e) {
+            assertEquals("shut down", e.getMessage());
+        }
+        assertEquals(0, provider.getHandoffFillLevel(), 0);
+        assertEquals(0, ((Gauge) PipelineMetrics.REGISTRY
+                .get("ddb_bootstrap_handoff_fill_ratio")).getValue(), 0);
+        provider.shutdown(true);
+        assertNull(PipelineMetrics.REGISTRY
+                .get("ddb_bootstrap_handoff_fill_ratio"));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for BoundedExecutorService
+ */
+public class BoundedExecutorServiceTest {
+
+    /**
+     * Test that no more than the maximum number of tasks run at a time, and
+     * that no task runs on the submitting thread.
+     */
+    @Test
+    public void testConcurrencyIsBoundedAndCallerDoesNotRunTasks()
+            throws Exception {
+        final int maxConcurrency = 2;
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicBoolean ranOnCaller = new AtomicBoolean(false);
+        final Thread caller = Thread.currentThread();
+        BoundedExecutorService exec = new BoundedExecutorService(
+                Executors.newCachedThreadPool(), maxConcurrency);
+
+        for (int i = 0; i < 20; i++) {
+            exec.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (Thread.currentThread() == caller) {
+                        ranOnCaller.set(true);
+                    }
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), now));
+                    }
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                }
+            });
+        }
+        exec.shutdown();
+
+        assertTrue(exec.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(maxRunning.get() <= maxConcurrency);
+        assertFalse(ranOnCaller.get());
+    }
+}
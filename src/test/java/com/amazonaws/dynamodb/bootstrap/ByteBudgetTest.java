@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for ByteBudget
+ */
+public class ByteBudgetTest {
+
+    /**
+     * Test that acquiring blocks while the budget is full and resumes once
+     * bytes are released, and that the fill level follows.
+     */
+    @Test
+    public void testAcquireBlocksUntilReleased() throws Exception {
+        final ByteBudget budget = new ByteBudget(100);
+        budget.acquire(60);
+        assertEquals(0.6, budget.getFillLevel(), 0.0);
+
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread acquirer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    budget.acquire(60);
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        acquirer.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        budget.release(60);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        assertEquals(60, budget.getUsedBytes());
+    }
+
+    /**
+     * Test that a request larger than the whole budget goes through when
+     * nothing else is in flight.
+     */
+    @Test
+    public void testOversizedAcquireWhenEmpty() throws Exception {
+        ByteBudget budget = new ByteBudget(100);
+        budget.acquire(250);
+        assertEquals(2.5, budget.getFillLevel(), 0.0);
+        budget.release(250);
+        assertEquals(0, budget.getUsedBytes());
+    }
+}
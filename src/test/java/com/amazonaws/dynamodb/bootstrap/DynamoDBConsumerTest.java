@@ -16,10 +16,16 @@ package com.amazonaws.dynamodb.bootstrap;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.powermock.api.easymock.PowerMock.*;
 
@@ -32,7 +38,11 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 
 /**
  * Unit tests for DynamoDBConsumerWorker
@@ -40,7 +50,7 @@ import com.amazonaws.services.dynamodbv2.model.ScanResult;
  */
 @RunWith(PowerMockRunner.class)
 @PrepareForTest(DynamoDBConsumer.class)
-@PowerMockIgnore("javax.management.*")
+@PowerMockIgnore({ "javax.management.*", "javax.net.ssl.*" })
 public class DynamoDBConsumerTest {
 
     /**
@@ -73,4 +83,92 @@ public class DynamoDBConsumerTest {
         verifyAll();
     }
 
+    /**
+     * Test that batches are cut before their items exceed the size limit of
+     * a BatchWriteItemRequest.
+     */
+    @Test
+    public void splitResultIntoBatchesBySizeTest() {
+        String payload = new String(new char[1024 * 1024]);
+        List<Map<String, AttributeValue>> items = new LinkedList<Map<String, AttributeValue>>();
+        for (int i = 0; i < 20; i++) {
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("key", new AttributeValue("item " + i));
+            item.put("payload", new AttributeValue(payload));
+            items.add(item);
+        }
+
+        replayAll();
+        List<BatchWriteItemRequest> batches = DynamoDBConsumer
+                .splitResultIntoBatches(new ScanResult().withItems(items),
+                        "tableName");
+        assertEquals(2, batches.size());
+        int written = 0;
+        for (BatchWriteItemRequest batch : batches) {
+            long bytes = 0;
+            for (WriteRequest write : batch.getRequestItems().get("tableName")) {
+                bytes += ItemSizeCalculator.calculateItemSizeInBytes(write
+                        .getPutRequest().getItem());
+                written++;
+            }
+            assertTrue(bytes <= BootstrapConstants.MAX_BATCH_SIZE_WRITE_ITEM_BYTES);
+        }
+        assertEquals(20, written);
+
+        verifyAll();
+    }
+
+    /**
+     * Test that batches are cut before they consume more write capacity than
+     * the rate allows in a second, and that large items are put on their
+     * own.
+     */
+    @Test
+    public void writeResultPutsLargeItemsTest() throws Exception {
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+        final AtomicInteger puts = new AtomicInteger();
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB() {
+            @Override
+            public BatchWriteItemResult batchWriteItem(
+                    BatchWriteItemRequest request) {
+                synchronized (batchSizes) {
+                    batchSizes.add(request.getRequestItems().get("table")
+                            .size());
+                }
+                return super.batchWriteItem(request);
+            }
+
+            @Override
+            public PutItemResult putItem(PutItemRequest request) {
+                puts.incrementAndGet();
+                return super.putItem(request);
+            }
+        };
+        dynamoDB.createTable("table", "key", 10000, 10000);
+
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < 14; i++) {
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("key", new AttributeValue("item " + i));
+            item.put("payload", new AttributeValue(new String(
+                    new char[(i < 2 ? 380 : 100) * 1024 - 100])));
+            items.add(item);
+        }
+
+        replayAll();
+        DynamoDBConsumer consumer = new DynamoDBConsumer(dynamoDB, "table",
+                1000, Executors.newFixedThreadPool(2));
+        consumer.writeResult(
+                new SegmentedScanResult(new ScanResult().withItems(items), 0))
+                .get(30, TimeUnit.SECONDS);
+        consumer.shutdown(true);
+
+        assertEquals(2, puts.get());
+        Collections.sort(batchSizes);
+        assertEquals(Arrays.asList(2, 10), batchSizes);
+        assertEquals(14, dynamoDB.getItemCount("table"));
+
+        verifyAll();
+    }
+
 }
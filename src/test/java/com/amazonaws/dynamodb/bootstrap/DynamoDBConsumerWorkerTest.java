@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.dynamodb.bootstrap.metrics.PipelineMetrics;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Unit Tests for DynamoDBConsumerWorker
+ */
+public class DynamoDBConsumerWorkerTest {
+
+    private static final String TABLE = "table";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static BatchWriteItemRequest batch(
+            List<Map<String, AttributeValue>> items) {
+        WriteBatchBuilder builder = new WriteBatchBuilder(TABLE);
+        for (Map<String, AttributeValue> item : items) {
+            assertNull(builder.add(item,
+                    ItemSizeCalculator.calculateItemSizeInBytes(item)));
+        }
+        return builder.finish();
+    }
+
+    private static List<Map<String, AttributeValue>> items(int count) {
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < count; i++) {
+            items.add(BinaryFileConsumerTest.item(i));
+        }
+        return items;
+    }
+
+    /**
+     * Test that only the items left unprocessed are retried, until every
+     * item is written.
+     */
+    @Test
+    public void testUnprocessedItemsAreRetried() throws Exception {
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+        dynamoDB.createTable(TABLE, "key", 100, 100);
+        dynamoDB.setSeed(1);
+        dynamoDB.setUnprocessedFraction(0.5);
+
+        new DynamoDBConsumerWorker(batch(items(25)), dynamoDB,
+                RateLimiter.create(1000), TABLE).call();
+
+        assertEquals(25, dynamoDB.getItemCount(TABLE));
+    }
+
+    /**
+     * Test that a put throttled by DynamoDB is retried until it succeeds,
+     * instead of going to the dead letter file.
+     */
+    @Test
+    public void testThrottledPutIsRetried() throws Exception {
+        final AtomicInteger throttles = new AtomicInteger(2);
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB() {
+            @Override
+            public PutItemResult putItem(PutItemRequest request) {
+                if (throttles.getAndDecrement() > 0) {
+                    throw new ProvisionedThroughputExceededException(
+                            "The level of configured provisioned throughput for the table was exceeded");
+                }
+                return super.putItem(request);
+            }
+        };
+        dynamoDB.createTable(TABLE, "key", 100, 100);
+        DeadLetterFile deadLetters = new DeadLetterFile(folder.newFile());
+        long backoff = PipelineMetrics.WRITE_BACKOFF_TIME.getCount();
+
+        new PutItemWorker(items(1).get(0), dynamoDB, RateLimiter.create(1000),
+                TABLE, deadLetters).call();
+        deadLetters.close();
+
+        assertEquals(1, dynamoDB.getItemCount(TABLE));
+        assertEquals(0, deadLetters.getItemCount());
+        assertTrue(PipelineMetrics.WRITE_BACKOFF_TIME.getCount() > backoff);
+    }
+
+    /**
+     * Test that the items of a batch DynamoDB rejects are written to the dead
+     * letter file, from which they are read back, and that the batch fails
+     * without one.
+     */
+    @Test
+    public void testRejectedItemsGoToDeadLetterFile() throws Exception {
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+        dynamoDB.createTable(TABLE, "missing", 100, 100);
+        List<Map<String, AttributeValue>> items = items(3);
+
+        try {
+            new DynamoDBConsumerWorker(batch(items), dynamoDB,
+                    RateLimiter.create(1000), TABLE).call();
+            fail("the batch should fail without a dead letter file");
+        } catch (AmazonServiceException e) {
+            assertEquals("ValidationException", e.getErrorCode());
+        }
+
+        File file = folder.newFile();
+        DeadLetterFile deadLetters = new DeadLetterFile(file);
+        new DynamoDBConsumerWorker(batch(items), dynamoDB,
+                RateLimiter.create(1000), TABLE, deadLetters).call();
+        new PutItemWorker(items.get(0), dynamoDB, RateLimiter.create(1000),
+                TABLE, deadLetters).call();
+        assertEquals(4, deadLetters.getItemCount());
+        deadLetters.close();
+
+        List<Map<String, AttributeValue>> read = new ArrayList<Map<String, AttributeValue>>();
+        JsonParser parser = DynamoDBJsonFormat.FACTORY
+                .createParser(new FileInputStream(file));
+        try {
+            Map<String, AttributeValue> item;
+            while ((item = DynamoDBJsonFormat.readItem(parser)) != null) {
+                read.add(item);
+            }
+        } finally {
+            parser.close();
+        }
+        assertEquals(4, read.size());
+        assertEquals(items, read.subList(0, 3));
+        assertEquals(items.get(0), read.get(3));
+    }
+}
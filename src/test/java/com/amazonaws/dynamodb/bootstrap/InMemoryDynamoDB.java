@@ -0,0 +1,508 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.amazonaws.util.Base64;
+import com.amazonaws.util.BinaryUtils;
+import com.google.common.hash.Hashing;
+
+/**
+ * An in-memory DynamoDB to test and benchmark whole copies without a real
+ * table. Supports describeTable, segmented scans paged with
+ * LastEvaluatedKey, batchWriteItem and putItem on tables with a string,
+ * number or binary hash key.
+ *
+ * Like DynamoDB, items are placed in segments by the hash of their key, so
+ * segment i of N holds the items of segments 2i and 2i+1 of 2N, and a scan
+ * whose ExclusiveStartKey lies outside its segment is rejected. Pages hold
+ * up to Limit items and 1 MB, and consume read capacity for every 4 KB.
+ *
+ * Requests can be made slow with setLatencyMillis, throttled with
+ * setThrottledFraction or, with setEnforceCapacity, whenever a table used
+ * more than its capacity in the current second. setUnprocessedFraction
+ * leaves some items of every batch unprocessed. Throttled requests and
+ * unprocessed items are picked by a random number generator with a fixed
+ * seed, so a run sending requests in the same order is reproduced exactly.
+ * Requests do not go through the request handlers and retries of the SDK,
+ * so a throttled request fails right away.
+ */
+public class InMemoryDynamoDB extends AmazonDynamoDBClient {
+
+    private static final long HASH_RANGE = 1L << 32;
+    private static final double READ_UNIT_BYTES = 4096;
+    private static final double WRITE_UNIT_BYTES = 1024;
+
+    private final ConcurrentMap<String, Table> tables;
+    private final Random random;
+    private volatile long latencyMillis;
+    private volatile double throttledFraction;
+    private volatile double unprocessedFraction;
+    private volatile boolean enforceCapacity;
+    private double consumedReadCapacity;
+    private double consumedWriteCapacity;
+    private long throttledRequests;
+    private long writeRequests;
+
+    // the client builder cannot build a subclass, and the only constructor
+    // of AmazonDynamoDBClient that is not deprecated is package private
+    @SuppressWarnings("deprecation")
+    public InMemoryDynamoDB() {
+        super(new BasicAWSCredentials("access", "secret"));
+        this.tables = new ConcurrentHashMap<String, Table>();
+        this.random = new Random(0);
+    }
+
+    /**
+     * Creates an empty table whose items are keyed by the given attribute.
+     */
+    public void createTable(String tableName, String hashKeyName,
+            long readCapacity, long writeCapacity) {
+        tables.put(tableName, new Table(tableName, hashKeyName, readCapacity,
+                writeCapacity));
+    }
+
+    /**
+     * Adds items to a table without consuming capacity.
+     */
+    public void putItems(String tableName,
+            Iterable<Map<String, AttributeValue>> items) {
+        Table table = getTable(tableName);
+        for (Map<String, AttributeValue> item : items) {
+            table.put(item);
+        }
+    }
+
+    /**
+     * returns the items of a table in the order they are scanned
+     */
+    public List<Map<String, AttributeValue>> getItems(String tableName) {
+        return new ArrayList<Map<String, AttributeValue>>(
+                getTable(tableName).items.values());
+    }
+
+    public int getItemCount(String tableName) {
+        return getTable(tableName).items.size();
+    }
+
+    /**
+     * Restarts the random number generator picking throttled requests and
+     * unprocessed items.
+     */
+    public void setSeed(long seed) {
+        synchronized (random) {
+            random.setSeed(seed);
+        }
+    }
+
+    /**
+     * Makes every request take at least the given time.
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Fails this fraction of the requests with a
+     * ProvisionedThroughputExceededException.
+     */
+    public void setThrottledFraction(double throttledFraction) {
+        this.throttledFraction = throttledFraction;
+    }
+
+    /**
+     * Leaves this fraction of the items of every batch write unprocessed.
+     */
+    public void setUnprocessedFraction(double unprocessedFraction) {
+        this.unprocessedFraction = unprocessedFraction;
+    }
+
+    /**
+     * Throttles the requests to a table that already consumed its
+     * provisioned capacity in the current second.
+     */
+    public void setEnforceCapacity(boolean enforceCapacity) {
+        this.enforceCapacity = enforceCapacity;
+    }
+
+    public synchronized double getConsumedReadCapacity() {
+        return consumedReadCapacity;
+    }
+
+    public synchronized double getConsumedWriteCapacity() {
+        return consumedWriteCapacity;
+    }
+
+    public synchronized long getThrottledRequests() {
+        return throttledRequests;
+    }
+
+    /**
+     * returns the number of batch write and put item requests, throttled or
+     * not
+     */
+    public synchronized long getWriteRequests() {
+        return writeRequests;
+    }
+
+    @Override
+    public DescribeTableResult describeTable(DescribeTableRequest request) {
+        Table table = getTable(request.getTableName());
+        long sizeBytes = 0;
+        for (Map<String, AttributeValue> item : table.items.values()) {
+            sizeBytes += ItemSizeCalculator.calculateItemSizeInBytes(item);
+        }
+        return new DescribeTableResult().withTable(new TableDescription()
+                .withTableName(table.name)
+                .withItemCount((long) table.items.size())
+                .withTableSizeBytes(sizeBytes)
+                .withProvisionedThroughput(new ProvisionedThroughputDescription()
+                        .withReadCapacityUnits(table.readCapacity)
+                        .withWriteCapacityUnits(table.writeCapacity)));
+    }
+
+    @Override
+    public ScanResult scan(ScanRequest request) {
+        Table table = getTable(request.getTableName());
+        beginRequest(table, true);
+        int totalSegments = request.getTotalSegments() == null ? 1 : request
+                .getTotalSegments();
+        int segment = request.getSegment() == null ? 0 : request.getSegment();
+        long start = segment * HASH_RANGE / totalSegments;
+        long end = (segment + 1) * HASH_RANGE / totalSegments;
+
+        NavigableMap<Position, Map<String, AttributeValue>> remaining;
+        Map<String, AttributeValue> startKey = request.getExclusiveStartKey();
+        if (startKey != null) {
+            Position after = table.position(startKey);
+            if (after.hash < start || after.hash >= end) {
+                throw error(new AmazonServiceException(
+                        "The provided Exclusive start key does not map to the provided segment"),
+                        "ValidationException");
+            }
+            remaining = table.items.subMap(after, false, new Position(end, ""),
+                    false);
+        } else {
+            remaining = table.items.subMap(new Position(start, ""), true,
+                    new Position(end, ""), false);
+        }
+
+        int limit = request.getLimit() == null ? Integer.MAX_VALUE : request
+                .getLimit();
+        List<Map<String, AttributeValue>> page = new ArrayList<Map<String, AttributeValue>>();
+        long bytes = 0;
+        Position last = null;
+        Iterator<Map.Entry<Position, Map<String, AttributeValue>>> it = remaining
+                .entrySet().iterator();
+        while (it.hasNext() && page.size() < limit
+                && bytes < BootstrapConstants.MAX_SCAN_PAGE_SIZE_BYTES) {
+            Map.Entry<Position, Map<String, AttributeValue>> entry = it.next();
+            page.add(entry.getValue());
+            bytes += ItemSizeCalculator.calculateItemSizeInBytes(entry
+                    .getValue());
+            last = entry.getKey();
+        }
+
+        double units = Math.ceil(bytes / READ_UNIT_BYTES);
+        if (!Boolean.TRUE.equals(request.getConsistentRead())) {
+            units /= 2;
+        }
+        table.consume(units, true);
+        ScanResult result = new ScanResult().withItems(page)
+                .withCount(page.size()).withScannedCount(page.size());
+        if (it.hasNext()) {
+            result.setLastEvaluatedKey(table.key(table.items.get(last)));
+        }
+        if (returnsCapacity(request.getReturnConsumedCapacity())) {
+            result.setConsumedCapacity(new ConsumedCapacity().withTableName(
+                    table.name).withCapacityUnits(units));
+        }
+        return result;
+    }
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+        synchronized (this) {
+            writeRequests++;
+        }
+        Map<String, List<WriteRequest>> unprocessed = new HashMap<String, List<WriteRequest>>();
+        List<ConsumedCapacity> capacities = new ArrayList<ConsumedCapacity>();
+        for (Map.Entry<String, List<WriteRequest>> entry : request
+                .getRequestItems().entrySet()) {
+            Table table = getTable(entry.getKey());
+            beginRequest(table, false);
+            double units = 0;
+            List<WriteRequest> left = new ArrayList<WriteRequest>();
+            for (WriteRequest write : entry.getValue()) {
+                if (unprocessedFraction > 0 && nextDouble() < unprocessedFraction) {
+                    left.add(write);
+                } else if (write.getPutRequest() != null) {
+                    units += table.put(write.getPutRequest().getItem());
+                } else {
+                    units += table.delete(write.getDeleteRequest().getKey());
+                }
+            }
+            table.consume(units, false);
+            if (!left.isEmpty()) {
+                unprocessed.put(table.name, left);
+            }
+            capacities.add(new ConsumedCapacity().withTableName(table.name)
+                    .withCapacityUnits(units));
+        }
+        // DynamoDB returns an empty map, not null, when every item was written
+        BatchWriteItemResult result = new BatchWriteItemResult()
+                .withUnprocessedItems(unprocessed);
+        if (returnsCapacity(request.getReturnConsumedCapacity())) {
+            result.setConsumedCapacity(capacities);
+        }
+        return result;
+    }
+
+    @Override
+    public PutItemResult putItem(PutItemRequest request) {
+        synchronized (this) {
+            writeRequests++;
+        }
+        Table table = getTable(request.getTableName());
+        beginRequest(table, false);
+        double units = table.put(request.getItem());
+        table.consume(units, false);
+        PutItemResult result = new PutItemResult();
+        if (returnsCapacity(request.getReturnConsumedCapacity())) {
+            result.setConsumedCapacity(new ConsumedCapacity().withTableName(
+                    table.name).withCapacityUnits(units));
+        }
+        return result;
+    }
+
+    private Table getTable(String tableName) {
+        Table table = tables.get(tableName);
+        if (table == null) {
+            throw error(new ResourceNotFoundException(
+                    "Requested resource not found: Table: " + tableName
+                            + " not found"), "ResourceNotFoundException");
+        }
+        return table;
+    }
+
+    /**
+     * Waits for the latency, then throttles the request if it is picked or
+     * the table used its capacity for the current second.
+     */
+    private void beginRequest(Table table, boolean read) {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if ((throttledFraction > 0 && nextDouble() < throttledFraction)
+                || (enforceCapacity && table.isOverCapacity(read))) {
+            synchronized (this) {
+                throttledRequests++;
+            }
+            throw error(new ProvisionedThroughputExceededException(
+                    "The level of configured provisioned throughput for the table was exceeded"),
+                    "ProvisionedThroughputExceededException");
+        }
+    }
+
+    private double nextDouble() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    private static boolean returnsCapacity(String returnConsumedCapacity) {
+        return returnConsumedCapacity != null
+                && !ReturnConsumedCapacity.NONE.toString().equals(
+                        returnConsumedCapacity);
+    }
+
+    private static AmazonServiceException error(AmazonServiceException e,
+            String errorCode) {
+        e.setErrorCode(errorCode);
+        e.setStatusCode(400);
+        e.setServiceName("AmazonDynamoDBv2");
+        return e;
+    }
+
+    /**
+     * Where an item lies in the scan order: the hash of its key, then its key.
+     */
+    private static class Position implements Comparable<Position> {
+        private final long hash;
+        private final String key;
+
+        Position(long hash, String key) {
+            this.hash = hash;
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            if (hash != other.hash) {
+                return hash < other.hash ? -1 : 1;
+            }
+            return key.compareTo(other.key);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Position
+                    && compareTo((Position) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) hash ^ key.hashCode();
+        }
+    }
+
+    private class Table {
+        private final String name;
+        private final String hashKeyName;
+        private final long readCapacity;
+        private final long writeCapacity;
+        private final ConcurrentSkipListMap<Position, Map<String, AttributeValue>> items;
+        private long second;
+        private double secondRead;
+        private double secondWrite;
+
+        Table(String name, String hashKeyName, long readCapacity,
+                long writeCapacity) {
+            this.name = name;
+            this.hashKeyName = hashKeyName;
+            this.readCapacity = readCapacity;
+            this.writeCapacity = writeCapacity;
+            this.items = new ConcurrentSkipListMap<Position, Map<String, AttributeValue>>();
+        }
+
+        Position position(Map<String, AttributeValue> item) {
+            AttributeValue value = item.get(hashKeyName);
+            if (value == null) {
+                throw error(new AmazonServiceException(
+                        "One of the required keys was not given a value"),
+                        "ValidationException");
+            }
+            String key;
+            if (value.getS() != null) {
+                key = "S" + value.getS();
+            } else if (value.getN() != null) {
+                key = "N" + value.getN();
+            } else if (value.getB() != null) {
+                key = "B" + Base64.encodeAsString(BinaryUtils
+                        .copyAllBytesFrom(value.getB()));
+            } else {
+                throw error(new AmazonServiceException(
+                        "Invalid key type for " + hashKeyName),
+                        "ValidationException");
+            }
+            long hash = Hashing.murmur3_32()
+                    .hashString(key, BootstrapConstants.UTF8).asInt()
+                    & (HASH_RANGE - 1);
+            return new Position(hash, key);
+        }
+
+        Map<String, AttributeValue> key(Map<String, AttributeValue> item) {
+            Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+            key.put(hashKeyName, item.get(hashKeyName));
+            return key;
+        }
+
+        /**
+         * returns the write capacity the put consumed
+         */
+        double put(Map<String, AttributeValue> item) {
+            int size = ItemSizeCalculator.calculateItemSizeInBytes(item);
+            if (size > BootstrapConstants.MAX_ITEM_SIZE_BYTES) {
+                throw error(new AmazonServiceException(
+                        "Item size has exceeded the maximum allowed size"),
+                        "ValidationException");
+            }
+            items.put(position(item), item);
+            return Math.max(1, Math.ceil(size / WRITE_UNIT_BYTES));
+        }
+
+        double delete(Map<String, AttributeValue> key) {
+            items.remove(position(key));
+            return 1;
+        }
+
+        synchronized boolean isOverCapacity(boolean read) {
+            rollSecond();
+            return read ? secondRead >= readCapacity
+                    : secondWrite >= writeCapacity;
+        }
+
+        void consume(double units, boolean read) {
+            synchronized (this) {
+                rollSecond();
+                if (read) {
+                    secondRead += units;
+                } else {
+                    secondWrite += units;
+                }
+            }
+            synchronized (InMemoryDynamoDB.this) {
+                if (read) {
+                    consumedReadCapacity += units;
+                } else {
+                    consumedWriteCapacity += units;
+                }
+            }
+        }
+
+        private void rollSecond() {
+            long now = System.currentTimeMillis() / 1000;
+            if (now != second) {
+                second = now;
+                secondRead = 0;
+                secondWrite = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Unit Tests for InMemoryDynamoDB, and copies of whole tables through it.
+ */
+public class InMemoryDynamoDBTest {
+
+    private static final String SOURCE = "source";
+    private static final String DESTINATION = "destination";
+
+    private static InMemoryDynamoDB createTables(int count) {
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+        dynamoDB.createTable(SOURCE, "key", 100, 100);
+        dynamoDB.createTable(DESTINATION, "key", 100, 100);
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < count; i++) {
+            items.add(BinaryFileConsumerTest.item(i));
+        }
+        dynamoDB.putItems(SOURCE, items);
+        return dynamoDB;
+    }
+
+    private static Set<String> scanSegment(InMemoryDynamoDB dynamoDB,
+            int segment, int totalSegments) {
+        Set<String> keys = new HashSet<String>();
+        ScanRequest request = new ScanRequest().withTableName(SOURCE)
+                .withSegment(segment).withTotalSegments(totalSegments)
+                .withLimit(7);
+        ScanResult result;
+        do {
+            result = dynamoDB.scan(request);
+            assertTrue(result.getItems().size() <= 7);
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                assertTrue(keys.add(item.get("key").getS()));
+            }
+            request.setExclusiveStartKey(result.getLastEvaluatedKey());
+        } while (result.getLastEvaluatedKey() != null);
+        return keys;
+    }
+
+    /**
+     * Test that the pages of the segments hold every item once, that a
+     * segment holds the items of its two halves when there are twice as many
+     * segments, and that a start key outside of the segment is rejected.
+     */
+    @Test
+    public void testSegmentsHoldEveryItemOnce() {
+        InMemoryDynamoDB dynamoDB = createTables(200);
+
+        Set<String> all = new HashSet<String>();
+        for (int segment = 0; segment < 4; segment++) {
+            Set<String> keys = scanSegment(dynamoDB, segment, 4);
+            Set<String> halves = scanSegment(dynamoDB, segment * 2, 8);
+            halves.addAll(scanSegment(dynamoDB, segment * 2 + 1, 8));
+            assertEquals(keys, halves);
+            all.addAll(keys);
+        }
+        assertEquals(200, all.size());
+
+        ScanResult first = dynamoDB.scan(new ScanRequest().withTableName(SOURCE)
+                .withSegment(0).withTotalSegments(2).withLimit(1));
+        try {
+            dynamoDB.scan(new ScanRequest().withTableName(SOURCE)
+                    .withSegment(1).withTotalSegments(2)
+                    .withExclusiveStartKey(first.getLastEvaluatedKey()));
+            fail();
+        } catch (AmazonServiceException e) {
+            assertEquals("ValidationException", e.getErrorCode());
+        }
+    }
+
+    /**
+     * Test that a scan ends right away when DynamoDB rejects its start key as
+     * outside of the segment, and fails for any other invalid start key.
+     */
+    @Test
+    public void testOnlyStartKeyOutsideSegmentEndsScan() {
+        InMemoryDynamoDB dynamoDB = createTables(200);
+        ScanResult first = dynamoDB.scan(new ScanRequest().withTableName(SOURCE)
+                .withSegment(0).withTotalSegments(2).withLimit(1));
+
+        ScanSegmentWorker outside = new ScanSegmentWorker(dynamoDB,
+                RateLimiter.create(1000), new ScanRequest()
+                        .withTableName(SOURCE).withSegment(1)
+                        .withTotalSegments(2)
+                        .withExclusiveStartKey(first.getLastEvaluatedKey()));
+        SegmentedScanResult result = outside.call();
+        assertTrue(result.getScanResult().getItems().isEmpty());
+        assertFalse(outside.hasNext());
+
+        Map<String, AttributeValue> invalidKey = new HashMap<String, AttributeValue>();
+        invalidKey.put("other", new AttributeValue("value"));
+        ScanSegmentWorker invalid = new ScanSegmentWorker(dynamoDB,
+                RateLimiter.create(1000), new ScanRequest()
+                        .withTableName(SOURCE).withSegment(1)
+                        .withTotalSegments(2).withExclusiveStartKey(invalidKey));
+        try {
+            invalid.call();
+            fail("the scan should fail");
+        } catch (AmazonServiceException e) {
+            assertEquals("ValidationException", e.getErrorCode());
+        }
+    }
+
+    /**
+     * Test that the same requests are throttled for the same seed, and that
+     * the capacity of the table is enforced within a second.
+     */
+    @Test
+    public void testThrottlingIsReproducible() {
+        InMemoryDynamoDB dynamoDB = createTables(10);
+        dynamoDB.setThrottledFraction(0.5);
+        List<Boolean> first = new ArrayList<Boolean>();
+        List<Boolean> second = new ArrayList<Boolean>();
+        for (List<Boolean> throttled : Arrays.asList(first, second)) {
+            dynamoDB.setSeed(42);
+            for (int i = 0; i < 20; i++) {
+                try {
+                    dynamoDB.scan(new ScanRequest().withTableName(SOURCE));
+                    throttled.add(false);
+                } catch (ProvisionedThroughputExceededException e) {
+                    throttled.add(true);
+                }
+            }
+        }
+        assertEquals(first, second);
+        assertTrue(first.contains(true) && first.contains(false));
+        assertEquals(2 * countThrottled(first), dynamoDB.getThrottledRequests());
+
+        dynamoDB.setThrottledFraction(0);
+        dynamoDB.setEnforceCapacity(true);
+        Map<String, AttributeValue> large = new HashMap<String, AttributeValue>();
+        large.put("key", new AttributeValue("large"));
+        large.put("payload", new AttributeValue(new String(new char[300 * 1024])));
+        try {
+            for (int i = 0; i < 1000; i++) {
+                dynamoDB.putItem(DESTINATION, large);
+            }
+            fail();
+        } catch (ProvisionedThroughputExceededException e) {
+            assertTrue(dynamoDB.getConsumedWriteCapacity() >= 100);
+        }
+    }
+
+    private static int countThrottled(List<Boolean> throttled) {
+        int count = 0;
+        for (Boolean value : throttled) {
+            if (value) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Test that a whole table is copied by DynamoDBBootstrapWorker and
+     * DynamoDBConsumer when some items of the batches are left unprocessed.
+     */
+    @Test
+    public void testPipeCopiesTableWithUnprocessedItems() throws Exception {
+        InMemoryDynamoDB dynamoDB = createTables(300);
+        dynamoDB.setUnprocessedFraction(0.2);
+
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(dynamoDB,
+                1000, SOURCE, Executors.newFixedThreadPool(4), 0, 1, 4, false);
+        DynamoDBConsumer consumer = new DynamoDBConsumer(dynamoDB,
+                DESTINATION, 1000, Executors.newFixedThreadPool(8));
+        worker.pipe(consumer);
+
+        assertEquals(dynamoDB.getItems(SOURCE), dynamoDB.getItems(DESTINATION));
+        assertTrue(dynamoDB.getConsumedReadCapacity() > 0);
+        assertTrue(dynamoDB.getConsumedWriteCapacity() >= 300);
+    }
+
+    /**
+     * Test that a whole table is copied when the pages are handed to the
+     * consumer by several threads.
+     */
+    @Test
+    public void testPipeWithDispatchThreads() throws Exception {
+        InMemoryDynamoDB dynamoDB = createTables(300);
+
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(dynamoDB,
+                1000, SOURCE, Executors.newFixedThreadPool(8), 0, 1, 8, false);
+        worker.setDispatchThreads(4);
+        DynamoDBConsumer consumer = new DynamoDBConsumer(dynamoDB,
+                DESTINATION, 1000, Executors.newFixedThreadPool(8));
+        worker.pipe(consumer);
+
+        assertEquals(dynamoDB.getItems(SOURCE), dynamoDB.getItems(DESTINATION));
+    }
+
+    /**
+     * Test that the progress counts every page of a segment when the first
+     * page is handed to the consumer after the last one.
+     */
+    @Test
+    public void testProgressWithPagesDispatchedOutOfOrder() throws Exception {
+        int items = 2500;
+        InMemoryDynamoDB dynamoDB = createTables(items);
+        final CountDownLatch lastPageHandedOver = new CountDownLatch(1);
+        final AtomicBoolean outOfOrder = new AtomicBoolean();
+        AbstractLogConsumer consumer = new AbstractLogConsumer() {
+            private final AtomicBoolean first = new AtomicBoolean(true);
+
+            {
+                threadPool = Executors.newSingleThreadExecutor();
+            }
+
+            @Override
+            public ListenableFuture<Void> writeResult(SegmentedScanResult result) {
+                if (result.isLastPage()) {
+                    lastPageHandedOver.countDown();
+                } else if (first.getAndSet(false)) {
+                    try {
+                        outOfOrder.set(lastPageHandedOver.await(10,
+                                TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return null;
+            }
+        };
+
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(dynamoDB,
+                1e9, SOURCE, Executors.newFixedThreadPool(1), 0, 1, 1, false);
+        worker.setDispatchThreads(2);
+        ProgressTracker progress = new ProgressTracker(items, 0);
+        worker.setProgressTracker(progress);
+        worker.pipe(consumer);
+
+        assertTrue(outOfOrder.get());
+        ProgressTracker.SegmentProgress segment = progress.getSegments().get(0);
+        assertTrue(segment.isDone());
+        assertEquals(items, segment.getItems());
+    }
+
+    /**
+     * Test that the copy fails with the cause of the first page that could
+     * not be written, instead of finishing without it.
+     */
+    @Test
+    public void testPipeFailsWhenPageIsNotWritten() throws Exception {
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+        dynamoDB.createTable(SOURCE, "key", 100, 100);
+        dynamoDB.createTable(DESTINATION, "other", 100, 100);
+        dynamoDB.putItems(SOURCE, Arrays.asList(BinaryFileConsumerTest.item(0)));
+
+        DynamoDBBootstrapWorker worker = new DynamoDBBootstrapWorker(dynamoDB,
+                1000, SOURCE, Executors.newFixedThreadPool(1), 0, 1, 1, false);
+        DynamoDBConsumer consumer = new DynamoDBConsumer(dynamoDB,
+                DESTINATION, 1000, Executors.newFixedThreadPool(1));
+        try {
+            worker.pipe(consumer);
+            fail("the copy should fail when a page is not written");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AmazonServiceException);
+        }
+        assertEquals(1, consumer.getWriteTracker().getFailed());
+        assertEquals(0, consumer.getWriteTracker().getInFlight());
+        assertEquals(1, consumer.getWriteTracker().getFailedItems().size());
+    }
+}
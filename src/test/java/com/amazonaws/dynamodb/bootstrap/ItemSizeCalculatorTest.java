@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+/**
+ * Unit Tests for ItemSizeCalculator
+ */
+public class ItemSizeCalculatorTest {
+
+    /**
+     * Test that the UTF-8 length matches the encoded length, including for
+     * surrogate pairs and unpaired surrogates.
+     */
+    @Test
+    public void testUtf8LengthMatchesEncoding() {
+        String[] strings = { "", "ascii", "\u00e9t\u00e9", "\u0800\uffff", "\u4f1a\u5458",
+                "\ud83d\ude00 smile", "\ud83d", "a\ude00b", "\ud83d\ud83d" };
+        for (String s : strings) {
+            assertEquals(s, s.getBytes(BootstrapConstants.UTF8).length,
+                    ItemSizeCalculator.utf8Length(s));
+        }
+    }
+
+    /**
+     * Test the size of an item with nested documents and names whose sizes
+     * are remembered.
+     */
+    @Test
+    public void testItemSize() {
+        Map<String, AttributeValue> nested = new HashMap<String, AttributeValue>();
+        nested.put("n", new AttributeValue().withN("1"));
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("cl\u00e9", new AttributeValue("\u00e9t\u00e9"));
+        item.put("list", new AttributeValue().withL(new AttributeValue()
+                .withM(nested), new AttributeValue().withBOOL(true)));
+
+        int nestedTypes = BootstrapConstants.BASE_LOGICAL_SIZE_OF_NESTED_TYPES;
+        int emptyDocument = BootstrapConstants.LOGICAL_SIZE_OF_EMPTY_DOCUMENT;
+        int map = 1 + BootstrapConstants.MAX_NUMBER_OF_BYTES_FOR_NUMBER
+                + nestedTypes + emptyDocument;
+        int list = map + nestedTypes + 1 + nestedTypes + emptyDocument;
+        int expected = 4 + 5 + 4 + list;
+        assertEquals(expected, ItemSizeCalculator.calculateItemSizeInBytes(item));
+        assertEquals(expected, ItemSizeCalculator.calculateItemSizeInBytes(item));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Unit Tests for JsonLinesFileConsumer, JsonLinesFileProvider and
+ * DynamoDBJsonFormat
+ */
+public class JsonLinesFileProviderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Map<String, AttributeValue>> export(File directory,
+            String compression) throws Exception {
+        JsonLinesFileConsumer consumer = new JsonLinesFileConsumer(directory,
+                compression, Executors.newFixedThreadPool(2));
+        List<Map<String, AttributeValue>> expected = new ArrayList<Map<String, AttributeValue>>();
+        for (int page = 0; page < 6; page++) {
+            List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+            for (int i = 0; i < 10; i++) {
+                items.add(BinaryFileConsumerTest.item(page * 10 + i));
+            }
+            expected.addAll(items);
+            consumer.writeResult(
+                    new SegmentedScanResult(new ScanResult().withItems(items),
+                            page % 2, 2, false)).get(10, TimeUnit.SECONDS);
+        }
+        consumer.shutdown(true);
+        return expected;
+    }
+
+    /**
+     * Test that every exported item is imported exactly once, whether the
+     * files are read in ranges split on line boundaries or, compressed,
+     * whole.
+     */
+    @Test
+    public void testExportedItemsAreImportedOnce() throws Exception {
+        for (String compression : new String[] {
+                BootstrapConstants.COMPRESSION_NONE,
+                BootstrapConstants.COMPRESSION_GZIP }) {
+            File directory = folder.newFolder();
+            List<Map<String, AttributeValue>> expected = export(directory,
+                    compression);
+            assertEquals(2, directory.listFiles().length);
+
+            BinaryFileProviderTest.CollectingConsumer consumer = new BinaryFileProviderTest.CollectingConsumer();
+            new JsonLinesFileProvider(directory, 101,
+                    Executors.newFixedThreadPool(3)).pipe(consumer);
+
+            assertEquals(expected.size(), consumer.items.size());
+            assertTrue(consumer.items.containsAll(expected));
+        }
+    }
+
+    /**
+     * Test that the lines of Data Pipeline exports and of DynamoDB exports to
+     * S3 are read.
+     */
+    @Test
+    public void testReadsDataPipelineAndS3ExportLines() throws Exception {
+        File file = folder.newFile("export");
+        OutputStream out = new FileOutputStream(file);
+        out.write(("{\"Id\":{\"n\":\"1\"},\"Tags\":{\"sS\":[\"a\"]},\"Flag\":{\"bOOL\":true}}\n"
+                + "{\"Item\":{\"Id\":{\"N\":\"2\"},\"Data\":{\"B\":\"AQI=\"}}}\n"
+                + "{\"Item\":{\"S\":\"key\"}}\n").getBytes(BootstrapConstants.UTF8));
+        out.close();
+
+        BinaryFileProviderTest.CollectingConsumer consumer = new BinaryFileProviderTest.CollectingConsumer();
+        new JsonLinesFileProvider(file, Executors.newSingleThreadExecutor())
+                .pipe(consumer);
+
+        assertEquals(3, consumer.items.size());
+        Map<String, AttributeValue> pipeline = consumer.items.get(0);
+        assertEquals("1", pipeline.get("Id").getN());
+        assertEquals("a", pipeline.get("Tags").getSS().get(0));
+        assertTrue(pipeline.get("Flag").getBOOL());
+        Map<String, AttributeValue> s3 = consumer.items.get(1);
+        assertEquals("2", s3.get("Id").getN());
+        assertEquals(2, s3.get("Data").getB().remaining());
+        assertEquals("key", consumer.items.get(2).get("Item").getS());
+    }
+}
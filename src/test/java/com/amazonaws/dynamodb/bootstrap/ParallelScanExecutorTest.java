@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.junit.Assert.*;
+import static org.powermock.api.easymock.PowerMock.createMock;
+import static org.powermock.api.easymock.PowerMock.replayAll;
+import static org.powermock.api.easymock.PowerMock.verifyAll;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.IAnswer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Unit Tests for ParallelScanExecutor
+ *
+ */
+@RunWith(PowerMockRunner.class)
+@PowerMockIgnore("javax.management.*")
+public class ParallelScanExecutorTest {
+
+    private static String tableName = "testTableName";
+
+    /**
+     * Test that a segment still being scanned when fewer segments than the
+     * split threshold remain is split into the two halves of a scan with
+     * twice as many segments, the lower half resuming where it stopped.
+     */
+    @Test
+    public void testSegmentIsSplitNearTheEndOfTheScan() throws Exception {
+        final Set<String> scanned = Collections.synchronizedSet(new HashSet<String>());
+        final Map<String, AttributeValue> lastKey = new HashMap<String, AttributeValue>();
+        lastKey.put("key", new AttributeValue("last"));
+
+        AmazonDynamoDBClient mockClient = createMock(AmazonDynamoDBClient.class);
+        expect(mockClient.scan(anyObject(ScanRequest.class))).andAnswer(
+                new IAnswer<ScanResult>() {
+                    @Override
+                    public ScanResult answer() {
+                        ScanRequest request = (ScanRequest) getCurrentArguments()[0];
+                        scanned.add(request.getSegment() + "/"
+                                + request.getTotalSegments() + "/"
+                                + (request.getExclusiveStartKey() != null));
+                        ScanResult result = new ScanResult()
+                                .withItems(Collections.<Map<String, AttributeValue>> emptyList())
+                                .withConsumedCapacity(new ConsumedCapacity().withCapacityUnits(1.0));
+                        if (request.getTotalSegments() == 1) {
+                            result.setLastEvaluatedKey(lastKey);
+                        }
+                        return result;
+                    }
+                }).times(3);
+
+        replayAll();
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        ParallelScanExecutor executor = new ParallelScanExecutor(exec, 1);
+        executor.addWorker(new ScanSegmentWorker(mockClient, RateLimiter
+                .create(1000.0), new ScanRequest().withTableName(tableName)
+                .withTotalSegments(1).withSegment(0)), 0);
+        executor.enableSegmentSplitting(2);
+
+        int pages = 0;
+        while (!executor.finished()) {
+            assertNotNull(executor.grab());
+            pages++;
+        }
+        exec.shutdown();
+
+        assertEquals(3, pages);
+        assertTrue(scanned.contains("0/1/false"));
+        assertTrue(scanned.contains("0/2/true"));
+        assertTrue(scanned.contains("1/2/false"));
+        verifyAll();
+    }
+
+    /**
+     * Test that the next pages of a segment are scanned before the previous
+     * ones are grabbed, up to the prefetch depth.
+     */
+    @Test
+    public void testPagesArePrefetchedBeforeTheyAreGrabbed() throws Exception {
+        final int numPages = 3;
+        final CountDownLatch scannedPages = new CountDownLatch(numPages);
+        final Map<String, AttributeValue> lastKey = new HashMap<String, AttributeValue>();
+        lastKey.put("key", new AttributeValue("last"));
+
+        AmazonDynamoDBClient mockClient = createMock(AmazonDynamoDBClient.class);
+        expect(mockClient.scan(anyObject(ScanRequest.class))).andAnswer(
+                new IAnswer<ScanResult>() {
+                    @Override
+                    public ScanResult answer() {
+                        scannedPages.countDown();
+                        ScanResult result = new ScanResult()
+                                .withItems(Collections.<Map<String, AttributeValue>> emptyList())
+                                .withConsumedCapacity(new ConsumedCapacity().withCapacityUnits(1.0));
+                        if (scannedPages.getCount() > 0) {
+                            result.setLastEvaluatedKey(lastKey);
+                        }
+                        return result;
+                    }
+                }).times(numPages);
+
+        replayAll();
+        ExecutorService exec = Executors.newFixedThreadPool(1);
+        ParallelScanExecutor executor = new ParallelScanExecutor(exec, 1);
+        executor.setPrefetchDepth(numPages - 1);
+        executor.addWorker(new ScanSegmentWorker(mockClient, RateLimiter
+                .create(1000.0), new ScanRequest().withTableName(tableName)
+                .withTotalSegments(1).withSegment(0)), 0);
+
+        assertTrue(scannedPages.await(10, TimeUnit.SECONDS));
+        int pages = 0;
+        while (!executor.finished()) {
+            assertNotNull(executor.grab());
+            pages++;
+        }
+        exec.shutdown();
+
+        assertEquals(numPages, pages);
+        verifyAll();
+    }
+}
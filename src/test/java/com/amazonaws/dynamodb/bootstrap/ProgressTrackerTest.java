@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Unit Tests for ProgressTracker
+ */
+public class ProgressTrackerTest {
+
+    private static final long SECOND = 1000000000L;
+
+    private static SegmentedScanResult page(int segment, int totalSegments,
+            int items, boolean lastPage) {
+        List<Map<String, AttributeValue>> pageItems = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < items; i++) {
+            pageItems.add(null);
+        }
+        return new SegmentedScanResult(new ScanResult().withItems(pageItems),
+                segment, totalSegments, lastPage);
+    }
+
+    private static ProgressTracker tracker(long items, long bytes,
+            int totalSegments) {
+        ProgressTracker tracker = new ProgressTracker(items, bytes, SECOND);
+        List<ScanRequest> requests = new ArrayList<ScanRequest>();
+        for (int i = 0; i < totalSegments; i++) {
+            requests.add(new ScanRequest().withSegment(i).withTotalSegments(
+                    totalSegments));
+        }
+        tracker.expectSegments(requests);
+        return tracker;
+    }
+
+    /**
+     * Test that the fraction scanned, the rate and the time left are measured
+     * in bytes against the size of the table.
+     */
+    @Test
+    public void testFractionRateAndEta() {
+        ProgressTracker tracker = tracker(400, 4000, 4);
+        tracker.pageScanned(page(0, 4, 100, true), 1000, 2 * SECOND);
+        tracker.pageScanned(page(1, 4, 50, false), 500, 2 * SECOND);
+
+        assertEquals(0.375, tracker.getFractionComplete(), 1e-9);
+        assertEquals(150, tracker.getItemsPerSecond(2 * SECOND), 1e-9);
+        assertEquals(1500, tracker.getBytesPerSecond(2 * SECOND), 1e-9);
+        assertEquals(2, tracker.getEtaSeconds(2 * SECOND));
+        assertTrue(tracker.report(2 * SECOND).contains("37.5%"));
+    }
+
+    /**
+     * Test that a segment that scanned more than expected is not shown as
+     * done before its last page, and is counted with what it scanned once
+     * done.
+     */
+    @Test
+    public void testSegmentLargerThanExpected() {
+        ProgressTracker tracker = tracker(20, 0, 2);
+        tracker.pageScanned(page(0, 2, 30, false), 0, 2 * SECOND);
+        assertEquals(0.495, tracker.getFractionComplete(), 1e-9);
+
+        tracker.pageScanned(page(0, 2, 0, true), 0, 2 * SECOND);
+        assertEquals(30.0 / 40, tracker.getFractionComplete(), 1e-9);
+    }
+
+    /**
+     * Test that the halves of a split segment are expected to hold half of
+     * what the segment had left to scan each.
+     */
+    @Test
+    public void testSplitSegment() {
+        ProgressTracker tracker = tracker(200, 0, 2);
+        SegmentedScanResult split = page(1, 2, 40, false);
+        split.setSplit();
+        tracker.pageScanned(split, 0, 2 * SECOND);
+
+        List<ProgressTracker.SegmentProgress> segments = tracker.getSegments();
+        assertEquals(4, segments.size());
+        assertTrue(segments.get(1).isDone());
+        assertEquals(Arrays.asList(2, 3), Arrays.asList(segments.get(2)
+                .getSegment(), segments.get(3).getSegment()));
+        assertEquals(4, segments.get(2).getTotalSegments());
+        // 100 + 40 + 30 + 30 items expected, 40 scanned
+        assertEquals(0.2, tracker.getFractionComplete(), 1e-9);
+    }
+
+    /**
+     * Test that the segments expected to finish much later than the others
+     * are reported as stragglers, the latest first.
+     */
+    @Test
+    public void testStragglers() {
+        ProgressTracker tracker = tracker(500, 0, 5);
+        tracker.pageScanned(page(0, 5, 50, false), 0, SECOND);
+        tracker.pageScanned(page(1, 5, 50, false), 0, SECOND);
+        tracker.pageScanned(page(2, 5, 50, false), 0, SECOND);
+        tracker.pageScanned(page(3, 5, 10, false), 0, SECOND);
+        tracker.pageScanned(page(4, 5, 5, false), 0, SECOND);
+
+        List<ProgressTracker.SegmentProgress> stragglers = tracker
+                .getStragglers(11 * SECOND);
+        assertEquals(2, stragglers.size());
+        assertEquals(4, stragglers.get(0).getSegment());
+        assertEquals(3, stragglers.get(1).getSegment());
+        assertTrue(tracker.report(11 * SECOND).contains("stragglers"));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+
+/**
+ * Unit Tests for ScanCheckpoint
+ */
+public class ScanCheckpointTest {
+
+    private static String tableName = "testTableName";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, AttributeValue> key(String value) {
+        Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+        key.put("hash", new AttributeValue(value));
+        key.put("range", new AttributeValue().withN("1"));
+        return key;
+    }
+
+    private static SegmentedScanResult page(int segment, int totalSegments,
+            Map<String, AttributeValue> lastEvaluatedKey) {
+        return new SegmentedScanResult(new ScanResult().withItems(
+                Collections.<Map<String, AttributeValue>> emptyList())
+                .withLastEvaluatedKey(lastEvaluatedKey), segment,
+                totalSegments, lastEvaluatedKey == null);
+    }
+
+    private static ScanRequest request(int segment, int totalSegments) {
+        return new ScanRequest().withTableName(tableName)
+                .withSegment(segment).withTotalSegments(totalSegments);
+    }
+
+    /**
+     * Test that a segment resumes after its last page written in order, that
+     * pages written ahead of an unwritten page are not taken into account,
+     * and that finished segments are left out.
+     */
+    @Test
+    public void testResumeAfterLastPageWrittenInOrder() throws Exception {
+        File file = folder.newFile();
+        ScanCheckpoint checkpoint = new ScanCheckpoint(file, 2);
+        ScanCheckpoint.Page first = checkpoint.pageGrabbed(page(0, 2, key("a")));
+        checkpoint.pageGrabbed(page(0, 2, key("b")));
+        ScanCheckpoint.Page third = checkpoint.pageGrabbed(page(0, 2, key("c")));
+        ScanCheckpoint.Page other = checkpoint.pageGrabbed(page(1, 2, null));
+        checkpoint.pageWritten(first);
+        checkpoint.pageWritten(third);
+        checkpoint.pageWritten(other);
+        checkpoint.close();
+
+        assertEquals(2, ScanCheckpoint.readNumSegments(file));
+        List<ScanRequest> resumed = ScanCheckpoint.resume(file,
+                Arrays.asList(request(0, 2), request(1, 2)));
+        assertEquals(1, resumed.size());
+        assertEquals(Integer.valueOf(0), resumed.get(0).getSegment());
+        assertEquals(key("a"), resumed.get(0).getExclusiveStartKey());
+        assertEquals(tableName, resumed.get(0).getTableName());
+
+        checkpoint = new ScanCheckpoint(file, 2);
+        checkpoint.pageWritten(checkpoint.pageGrabbed(page(0, 2, key("b"))));
+        checkpoint.close();
+        resumed = ScanCheckpoint.resume(file,
+                Arrays.asList(request(0, 2), request(1, 2)));
+        assertEquals(key("b"), resumed.get(0).getExclusiveStartKey());
+    }
+
+    /**
+     * Test that a split segment resumes as its two halves once its last page
+     * is written, and as itself before that.
+     */
+    @Test
+    public void testResumeSplitSegment() throws Exception {
+        SegmentedScanResult last = page(0, 1, key("a"));
+        last.setSplit();
+
+        File file = folder.newFile();
+        ScanCheckpoint checkpoint = new ScanCheckpoint(file, 1);
+        checkpoint.pageGrabbed(last);
+        checkpoint.pageWritten(checkpoint.pageGrabbed(page(0, 2, key("b"))));
+        checkpoint.close();
+
+        List<ScanRequest> resumed = ScanCheckpoint.resume(file,
+                Arrays.asList(request(0, 1)));
+        assertEquals(1, resumed.size());
+        assertEquals(Integer.valueOf(1), resumed.get(0).getTotalSegments());
+        assertNull(resumed.get(0).getExclusiveStartKey());
+
+        file = folder.newFile();
+        checkpoint = new ScanCheckpoint(file, 1);
+        ScanCheckpoint.Page parent = checkpoint.pageGrabbed(last);
+        checkpoint.pageWritten(checkpoint.pageGrabbed(page(0, 2, key("b"))));
+        checkpoint.pageWritten(parent);
+        checkpoint.close();
+
+        resumed = ScanCheckpoint.resume(file, Arrays.asList(request(0, 1)));
+        assertEquals(2, resumed.size());
+        assertEquals(Integer.valueOf(0), resumed.get(0).getSegment());
+        assertEquals(Integer.valueOf(2), resumed.get(0).getTotalSegments());
+        assertEquals(key("b"), resumed.get(0).getExclusiveStartKey());
+        assertEquals(Integer.valueOf(1), resumed.get(1).getSegment());
+        assertNull(resumed.get(1).getExclusiveStartKey());
+    }
+}
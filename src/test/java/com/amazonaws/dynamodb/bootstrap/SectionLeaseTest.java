@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+
+/**
+ * Unit Tests for SectionLease
+ */
+public class SectionLeaseTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that running sections share the capacity, that finished sections
+     * and sections whose lease expired are left out, and that the share is
+     * applied to the rate controllers.
+     */
+    @Test
+    public void testRunningSectionsShareCapacity() throws Exception {
+        File directory = folder.newFolder();
+        SectionLease first = new SectionLease(directory, 0);
+        SectionLease second = new SectionLease(directory, 1);
+        SectionLease third = new SectionLease(directory, 2);
+        AdaptiveRateController controller = new AdaptiveRateController(90);
+        first.addController(controller);
+
+        first.renew();
+        assertEquals(1, first.getShare(), 0.001);
+        second.renew();
+        third.renew();
+        first.renew();
+        assertEquals(1.0 / 3, first.getShare(), 0.001);
+        assertEquals(30, controller.getCeiling(), 0.001);
+        assertEquals(30, controller.getRate(), 0.001);
+
+        third.finish();
+        File secondLease = new File(directory, "section-1"
+                + BootstrapConstants.LEASE_FILE_EXTENSION);
+        assertTrue(secondLease.setLastModified(System.currentTimeMillis()
+                - BootstrapConstants.LEASE_TIMEOUT_MILLISECONDS * 2));
+        first.renew();
+        assertEquals(1, first.getShare(), 0.001);
+        assertEquals(90, controller.getRate(), 0.001);
+    }
+}
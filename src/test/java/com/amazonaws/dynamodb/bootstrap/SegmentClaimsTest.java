@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.dynamodb.bootstrap.constants.BootstrapConstants;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+
+/**
+ * Unit Tests for SegmentClaims
+ */
+public class SegmentClaimsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test that sections agree on the number of segments of the first one,
+     * and that a segment is claimed by one section only.
+     */
+    @Test
+    public void testSegmentsAreClaimedOnce() throws Exception {
+        File directory = folder.newFolder();
+        SegmentClaims first = new SegmentClaims(directory, 0);
+        SegmentClaims second = new SegmentClaims(directory, 1);
+
+        assertEquals(8, first.agreeOnNumSegments(8));
+        assertEquals(8, second.agreeOnNumSegments(12));
+
+        assertTrue(first.claim(3));
+        assertFalse(second.claim(3));
+        assertTrue(second.claim(4));
+        assertFalse(first.claim(4));
+        assertEquals(3, directory.list().length);
+    }
+
+    /**
+     * Test that a claim is kept while renewed, taken over once its section
+     * stops renewing it, and never taken over once its segment is done.
+     */
+    @Test
+    public void testExpiredClaimsAreTakenOver() throws Exception {
+        File directory = folder.newFolder();
+        SegmentClaims first = new SegmentClaims(directory, 0);
+        SegmentClaims second = new SegmentClaims(directory, 1);
+        assertEquals(4, first.agreeOnNumSegments(4));
+        assertEquals(4, second.agreeOnNumSegments(4));
+        assertTrue(first.claim(1));
+        assertTrue(first.claim(2));
+        first.partStarted(1, 4);
+        first.partStarted(2, 4);
+
+        // both claims are renewed, then the first section stops
+        expire(directory, 1);
+        expire(directory, 2);
+        first.renew();
+        assertFalse(second.claim(1));
+        assertFalse(second.claim(2));
+        expire(directory, 1);
+        assertTrue(second.claim(1));
+        assertFalse(first.claim(1));
+
+        // segment 2 is split, and done once both its halves are finished
+        first.partStarted(4, 8);
+        first.partStarted(5, 8);
+        first.partFinished(2, 4);
+        first.partFinished(4, 8);
+        first.partFinished(5, 8);
+        expire(directory, 2);
+        assertFalse(second.claim(2));
+    }
+
+    /**
+     * Test that a segment claimed by a section that dies after this section
+     * passed the segment is taken over once the claim expires, and that the
+     * scan only finishes once every segment is done.
+     */
+    @Test
+    public void testSegmentOfDeadSectionIsTakenOverLater() throws Exception {
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+        dynamoDB.createTable("table", "key", 100, 100);
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        for (int i = 0; i < 100; i++) {
+            items.add(BinaryFileConsumerTest.item(i));
+        }
+        dynamoDB.putItems("table", items);
+
+        File directory = folder.newFolder();
+        SegmentClaims dead = new SegmentClaims(directory, 0);
+        SegmentClaims alive = new SegmentClaims(directory, 1);
+        assertEquals(2, dead.agreeOnNumSegments(2));
+        assertEquals(2, alive.agreeOnNumSegments(2));
+        assertTrue(dead.claim(1));
+
+        List<ScanRequest> requests = new ArrayList<ScanRequest>();
+        for (int segment = 0; segment < 2; segment++) {
+            requests.add(new ScanRequest().withTableName("table")
+                    .withSegment(segment).withTotalSegments(2)
+                    .withConsistentRead(false));
+        }
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            ParallelScanExecutor executor = new DynamoDBTableScan(1000,
+                    dynamoDB).getParallelScanCompletionService(requests,
+                    exec, false, alive, 2);
+            int scanned = 0;
+            boolean expired = false;
+            while (!executor.finished()) {
+                SegmentedScanResult result = executor.grab();
+                if (result != null) {
+                    scanned += result.getScanResult().getItems().size();
+                }
+                // the section holding segment 1 dies once this section has
+                // nothing left but that segment
+                if (!expired && alive.isDone(0)) {
+                    expire(directory, 1);
+                    expired = true;
+                }
+            }
+            assertTrue(expired);
+            assertEquals(100, scanned);
+        } finally {
+            exec.shutdownNow();
+        }
+        assertTrue(alive.isDone(0));
+        assertTrue(alive.isDone(1));
+    }
+
+    private static void expire(File directory, int segment) {
+        File claim = new File(directory, "segment-" + segment
+                + BootstrapConstants.CLAIM_FILE_EXTENSION);
+        assertTrue(claim.setLastModified(System.currentTimeMillis()
+                - 2 * BootstrapConstants.LEASE_TIMEOUT_MILLISECONDS));
+    }
+
+    /**
+     * Test that a section scans its own segments first, then the others from
+     * the last one.
+     */
+    @Test
+    public void testOwnSegmentsComeFirst() {
+        DynamoDBTableScan scanner = new DynamoDBTableScan(100, null);
+        List<ScanRequest> requests = scanner.getAllSegmentRequests(
+                new ScanRequest().withTableName("table"), 6, 1, 3);
+
+        List<Integer> segments = new ArrayList<Integer>();
+        for (ScanRequest request : requests) {
+            assertEquals(Integer.valueOf(6), request.getTotalSegments());
+            segments.add(request.getSegment());
+        }
+        assertEquals(Arrays.asList(2, 3, 5, 4, 1, 0), segments);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.BillingMode;
+import com.amazonaws.services.dynamodbv2.model.BillingModeSummary;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+
+/**
+ * Unit Tests for SegmentPlanner
+ */
+public class SegmentPlannerTest {
+
+    private static final long GIGABYTE = 1024L * 1024L * 1024L;
+
+    private static TableDescription provisionedTable(long readCapacity,
+            long writeCapacity, long sizeBytes) {
+        return new TableDescription().withTableSizeBytes(sizeBytes)
+                .withProvisionedThroughput(new ProvisionedThroughputDescription()
+                        .withReadCapacityUnits(readCapacity)
+                        .withWriteCapacityUnits(writeCapacity));
+    }
+
+    private static TableDescription onDemandTable(long sizeBytes) {
+        return new TableDescription().withTableSizeBytes(sizeBytes)
+                .withBillingModeSummary(new BillingModeSummary()
+                        .withBillingMode(BillingMode.PAY_PER_REQUEST))
+                .withProvisionedThroughput(new ProvisionedThroughputDescription()
+                        .withReadCapacityUnits(0L).withWriteCapacityUnits(0L));
+    }
+
+    /**
+     * Test that a provisioned table gets at least the segments based on its
+     * provisioned capacity.
+     */
+    @Test
+    public void testProvisionedTable() throws Exception {
+        TableDescription description = provisionedTable(6000L, 1000L, GIGABYTE);
+
+        assertFalse(SegmentPlanner.isOnDemand(description));
+        assertEquals(30, SegmentPlanner.getNumberOfSegments(description, 0, 1));
+    }
+
+    /**
+     * Test that an on-demand table is planned from its size and the read rate
+     * limit instead of failing.
+     */
+    @Test
+    public void testOnDemandTable() {
+        TableDescription description = onDemandTable(50 * GIGABYTE);
+
+        assertTrue(SegmentPlanner.isOnDemand(description));
+        assertEquals(50, SegmentPlanner.getNumberOfSegments(description, 0, 1));
+        assertEquals(120, SegmentPlanner.getNumberOfSegments(description,
+                120000, 1));
+    }
+
+    /**
+     * Test that a small table still gets a segment per processor.
+     */
+    @Test
+    public void testAtLeastOneSegmentPerProcessor() {
+        assertEquals(16, SegmentPlanner.getNumberOfSegments(
+                onDemandTable(0), 0, 16));
+    }
+
+    /**
+     * Test the split threshold and the limit on the number of segments.
+     */
+    @Test
+    public void testSplitting() {
+        assertEquals(25, SegmentPlanner.getSplitThreshold(100));
+        assertEquals(2, SegmentPlanner.getSplitThreshold(1));
+        assertTrue(SegmentPlanner.canSplit(500000));
+        assertFalse(SegmentPlanner.canSplit(500001));
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Unit Tests for UnprocessedItemCoalescer
+ */
+public class UnprocessedItemCoalescerTest {
+
+    private static final String TABLE = "table";
+    private static final int BATCHES = 10;
+    private static final int BATCH_ITEMS = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes BATCHES batches of BATCH_ITEMS items with workers running at the
+     * same time, while DynamoDB leaves some items of every batch unprocessed.
+     *
+     * @return the number of write requests sent after the first request of
+     *         each batch
+     */
+    private static long writeBatches(boolean coalesce) throws Exception {
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+        dynamoDB.createTable(TABLE, "key", 100, 100);
+        dynamoDB.setSeed(1);
+        dynamoDB.setUnprocessedFraction(0.3);
+        UnprocessedItemCoalescer coalescer = coalesce ? new UnprocessedItemCoalescer(
+                dynamoDB, TABLE) : null;
+        RateLimiter rateLimiter = RateLimiter.create(10000);
+
+        ExecutorService exec = Executors.newFixedThreadPool(BATCHES);
+        try {
+            List<Future<Void>> writes = new ArrayList<Future<Void>>();
+            for (int b = 0; b < BATCHES; b++) {
+                WriteBatchBuilder builder = new WriteBatchBuilder(TABLE);
+                for (int i = 0; i < BATCH_ITEMS; i++) {
+                    Map<String, AttributeValue> item = BinaryFileConsumerTest
+                            .item(b * BATCH_ITEMS + i);
+                    builder.add(item,
+                            ItemSizeCalculator.calculateItemSizeInBytes(item));
+                }
+                BatchWriteItemRequest batch = builder.finish();
+                writes.add(exec.submit(new DynamoDBConsumerWorker(batch,
+                        dynamoDB, rateLimiter, TABLE, null, coalescer)));
+            }
+            for (Future<Void> write : writes) {
+                write.get();
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+
+        assertEquals(BATCHES * BATCH_ITEMS, dynamoDB.getItemCount(TABLE));
+        if (coalescer != null) {
+            assertEquals(dynamoDB.getWriteRequests() - BATCHES,
+                    coalescer.getRequestCount());
+        }
+        return dynamoDB.getWriteRequests() - BATCHES;
+    }
+
+    /**
+     * Test that every item is written, in several times fewer retries when
+     * the leftovers of the batches are coalesced than when each batch retries
+     * its own.
+     */
+    @Test
+    public void testLeftoversAreCoalesced() throws Exception {
+        long separate = writeBatches(false);
+        long coalesced = writeBatches(true);
+        assertTrue(coalesced + " retries coalesced, " + separate
+                + " separate", coalesced * 3 <= separate);
+    }
+
+    /**
+     * Test that a thread waiting for its writes to be sent by another thread
+     * stops waiting when interrupted, and fails with an AbortedException.
+     */
+    @Test
+    public void testInterruptedWaitIsAborted() throws Exception {
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+        dynamoDB.createTable(TABLE, "key", 100, 100);
+        dynamoDB.setLatencyMillis(2000);
+        final UnprocessedItemCoalescer coalescer = new UnprocessedItemCoalescer(
+                dynamoDB, TABLE);
+
+        // the first thread sends its write slowly, and the second waits for
+        // it since one write is not enough to fill another batch
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    coalescer.writeAll(writes(1));
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+                interrupted.set(isInterrupted());
+            }
+        };
+        try {
+            exec.submit(new Callable<List<ConsumedCapacity>>() {
+                @Override
+                public List<ConsumedCapacity> call() throws Exception {
+                    return coalescer.writeAll(writes(0));
+                }
+            });
+            Thread.sleep(50);
+            waiting.start();
+            Thread.sleep(200);
+            waiting.interrupt();
+            waiting.join(1000);
+        } finally {
+            exec.shutdownNow();
+        }
+        assertFalse(waiting.isAlive());
+        assertTrue(failure.get() instanceof AbortedException);
+        assertTrue(interrupted.get());
+    }
+
+    /**
+     * Test that when writing a rejected batch to the dead letter file fails,
+     * the thread sending it fails with the IOException and the other thread
+     * whose write was in the batch fails instead of waiting forever.
+     */
+    @Test
+    public void testFailedDeadLetterWriteFailsOwners() throws Exception {
+        final AtomicInteger batchSize = new AtomicInteger();
+        InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB() {
+            @Override
+            public BatchWriteItemResult batchWriteItem(
+                    BatchWriteItemRequest request) {
+                batchSize.set(request.getRequestItems().get(TABLE).size());
+                AmazonServiceException e = new AmazonServiceException(
+                        "Invalid item");
+                e.setStatusCode(400);
+                e.setErrorCode("ValidationException");
+                throw e;
+            }
+        };
+        dynamoDB.createTable(TABLE, "key", 100, 100);
+        final UnprocessedItemCoalescer coalescer = new UnprocessedItemCoalescer(
+                dynamoDB, TABLE);
+        coalescer.setDeadLetterFile(new DeadLetterFile(folder.newFile()) {
+            @Override
+            public synchronized void write(
+                    Collection<Map<String, AttributeValue>> items,
+                    String reason) throws IOException {
+                throw new IOException("Disk full");
+            }
+        });
+
+        // both writes are queued before the first thread takes them, during
+        // its back off, and the second thread waits for them to be sent
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<ConsumedCapacity>> first = exec
+                    .submit(write(coalescer, 0));
+            Future<List<ConsumedCapacity>> second = exec
+                    .submit(write(coalescer, 1));
+            Throwable[] failures = new Throwable[2];
+            int i = 0;
+            for (Future<List<ConsumedCapacity>> future : Arrays.asList(first,
+                    second)) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    failures[i] = e.getCause();
+                }
+                i++;
+            }
+            assertEquals(2, batchSize.get());
+            assertEquals(1, coalescer.getRequestCount());
+            // whichever thread sent the batch fails with the IOException
+            int sender = failures[0] instanceof IOException ? 0 : 1;
+            assertTrue(failures[sender] instanceof IOException);
+            assertTrue(failures[1 - sender] instanceof AmazonClientException);
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    private static Callable<List<ConsumedCapacity>> write(
+            final UnprocessedItemCoalescer coalescer, final int i) {
+        return new Callable<List<ConsumedCapacity>>() {
+            @Override
+            public List<ConsumedCapacity> call() throws Exception {
+                return coalescer.writeAll(writes(i));
+            }
+        };
+    }
+
+    private static List<WriteRequest> writes(int i) {
+        return Collections.singletonList(new WriteRequest()
+                .withPutRequest(new PutRequest().withItem(BinaryFileConsumerTest
+                        .item(i))));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Unit Tests for WriteTracker
+ */
+public class WriteTrackerTest {
+
+    private static SegmentedScanResult page(int segment, int items) {
+        return new SegmentedScanResult(new ScanResult().withItems(Collections
+                .nCopies(items, BinaryFileConsumerTest.item(segment))),
+                segment);
+    }
+
+    /**
+     * Test that the pages are counted until written, that waiting returns once
+     * none is in flight, and that the first failed page is kept with its cause.
+     */
+    @Test
+    public void testTrackWritesAndFailures() throws Exception {
+        WriteTracker tracker = new WriteTracker();
+        SettableFuture<Void> first = SettableFuture.create();
+        SettableFuture<Void> second = SettableFuture.create();
+        SettableFuture<Void> third = SettableFuture.create();
+        tracker.track(first, page(0, 1));
+        tracker.track(second, page(1, 3));
+        tracker.track(third, page(2, 2));
+        assertEquals(3, tracker.getInFlight());
+
+        first.set(null);
+        tracker.throwIfFailed();
+        IllegalStateException cause = new IllegalStateException("rejected");
+        second.setException(cause);
+        third.setException(new IllegalStateException("rejected too"));
+        tracker.awaitWritten();
+
+        assertEquals(0, tracker.getInFlight());
+        assertEquals(1, tracker.getWritten());
+        assertEquals(2, tracker.getFailed());
+        assertEquals(3, tracker.getFailedItems().size());
+        try {
+            tracker.throwIfFailed();
+            fail("the tracker should throw the first failure");
+        } catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+    }
+
+    /**
+     * Test that waiting returns right away when nothing was tracked, and that
+     * no items are reported without a failure.
+     */
+    @Test
+    public void testNothingTracked() throws Exception {
+        WriteTracker tracker = new WriteTracker();
+        tracker.awaitWritten();
+        tracker.throwIfFailed();
+        assertNull(tracker.getFailedItems());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for Histogram
+ */
+public class HistogramTest {
+
+    /**
+     * Test that every value falls in a bucket whose bounds hold it, within
+     * 25% of the value, and that the buckets follow each other.
+     */
+    @Test
+    public void testBucketsHoldTheirValues() {
+        long[] values = { 0, 1, 3, 4, 5, 7, 8, 9, 1000, 1023, 1024,
+                123456789, Long.MAX_VALUE };
+        for (long value : values) {
+            int index = Histogram.index(value);
+            long lower = index == 0 ? 0 : Histogram.upperBound(index - 1);
+            assertTrue(value + " below its bucket", lower <= value);
+            assertTrue(value + " above its bucket", value == Long.MAX_VALUE
+                    || value < Histogram.upperBound(index));
+            assertTrue(Histogram.upperBound(index) - lower <= Math.max(1,
+                    value / 4 + 1) || value == Long.MAX_VALUE);
+        }
+        for (int index = 1; index < 200; index++) {
+            assertEquals(index, Histogram.index(Histogram.upperBound(index - 1)));
+        }
+    }
+
+    /**
+     * Test the count, mean, percentiles and max of recorded durations, and
+     * their Prometheus samples.
+     */
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram("latency_seconds", "Latency");
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMeanMillis(), 0.001);
+        assertEquals(100, histogram.getMaxMillis(), 0.001);
+        assertEquals(50, histogram.get50thPercentileMillis(), 50 * 0.25);
+        assertEquals(99, histogram.get99thPercentileMillis(), 99 * 0.25);
+        assertTrue(histogram.get99thPercentileMillis() <= 100);
+
+        StringBuilder out = new StringBuilder();
+        histogram.writeSamples(out);
+        String text = out.toString();
+        assertTrue(text, text.contains("latency_seconds_bucket{le=\"+Inf\"} 100\n"));
+        assertTrue(text, text.contains("latency_seconds_count 100\n"));
+        assertTrue(text, text.contains("latency_seconds_sum 5.05\n"));
+        // 2^26 ns, about 67 ms
+        assertTrue(text, text.contains("latency_seconds_bucket{le=\"0.067108864\"} 67\n"));
+    }
+}
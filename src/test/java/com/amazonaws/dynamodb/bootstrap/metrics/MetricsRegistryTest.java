@@ -0,0 +1,128 @@
+/*
+ * Copyright 2015 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Amazon Software License (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/asl/
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.amazonaws.dynamodb.bootstrap.metrics;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Scanner;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+
+import org.junit.Test;
+
+/**
+ * Unit Tests for MetricsRegistry and PrometheusEndpoint
+ */
+public class MetricsRegistryTest {
+
+    /**
+     * Test that metrics are created once per name and labels, and that the
+     * metrics of a name are reported together in the Prometheus text format.
+     */
+    @Test
+    public void testPrometheusText() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("pages_total", "Pages", "segment", "1").add(3);
+        registry.counter("pages_total_x", "Other", "segment", "0").increment();
+        registry.counter("pages_total", "Pages", "segment", "0").increment();
+        registry.counter("pages_total", "Pages", "segment", "1").increment();
+        registry.timeCounter("wait_seconds_total", "Wait").add(1500000000L);
+        registry.register(new Gauge("queue_depth", "Queue",
+                "pool", "a\"b") {
+            @Override
+            public double getValue() {
+                return 7;
+            }
+        });
+
+        assertEquals(4, ((Counter) registry.get("pages_total", "segment", "1"))
+                .getCount());
+        assertEquals("# HELP pages_total Pages\n"
+                + "# TYPE pages_total counter\n"
+                + "pages_total{segment=\"0\"} 1\n"
+                + "pages_total{segment=\"1\"} 4\n"
+                + "# HELP pages_total_x Other\n"
+                + "# TYPE pages_total_x counter\n"
+                + "pages_total_x{segment=\"0\"} 1\n"
+                + "# HELP queue_depth Queue\n"
+                + "# TYPE queue_depth gauge\n"
+                + "queue_depth{pool=\"a\\\"b\"} 7\n"
+                + "# HELP wait_seconds_total Wait\n"
+                + "# TYPE wait_seconds_total counter\n"
+                + "wait_seconds_total 1.5\n", registry.toPrometheusText());
+
+        try {
+            registry.histogram("pages_total", "Pages", "segment", "1");
+            fail("a name cannot be both a counter and a histogram");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test that the metrics, those created after registration included, are
+     * readable over JMX.
+     */
+    @Test
+    public void testMBeans() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("before_total", "Before").add(2);
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        registry.registerMBeans(server);
+        registry.histogram("latency_seconds", "Latency", "segment", "3")
+                .record(2000000);
+
+        Metric before = registry.get("before_total");
+        assertEquals(2.0,
+                server.getAttribute(MetricsRegistry.objectName(before), "Value"));
+        Metric latency = registry.get("latency_seconds", "segment", "3");
+        assertEquals(1L, server.getAttribute(
+                MetricsRegistry.objectName(latency), "Count"));
+
+        registry.unregisterMBeans();
+        assertFalse(server.isRegistered(MetricsRegistry.objectName(latency)));
+    }
+
+    /**
+     * Test that the endpoint serves the metrics over HTTP.
+     */
+    @Test
+    public void testEndpoint() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("pages_total", "Pages").add(5);
+        PrometheusEndpoint endpoint = new PrometheusEndpoint(registry, 0);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://localhost:" + endpoint.getPort()
+                            + PrometheusEndpoint.PATH).openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain"));
+            InputStream in = connection.getInputStream();
+            try {
+                String body = new Scanner(in, "UTF-8").useDelimiter("\\A")
+                        .next();
+                assertEquals(registry.toPrometheusText(), body);
+            } finally {
+                in.close();
+            }
+        } finally {
+            endpoint.close();
+        }
+    }
+}